@@ -0,0 +1,279 @@
+package com.natebeckemeyer.turc.anac;
+
+import javafx.util.Pair;
+import negotiator.Bid;
+import negotiator.actions.Action;
+import negotiator.actions.Offer;
+import negotiator.issue.Objective;
+import negotiator.issue.Value;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimates both the value utilities and the issue weights of an opponent. The values of each issue follow a
+ * Dirichlet posterior: every offer adds one observation to the value offered, and the estimate of a value is its
+ * posterior mean. The weights follow the same idea over issues: an issue whose value the opponent keeps from one offer
+ * to the next gains weight, and more so when the opponent concedes meanwhile (since it gives in elsewhere first).
+ * When the opponent concedes, the values that it abandons also gain evidence, as it held on to them before.
+ * <p>
+ * An offer costs a constant amount of work per issue, however many values the issues have: the posterior is kept as
+ * pseudo-counts, and the normalized tables are only written back to the estimated utilities when the tables
+ * themselves are read (see {@link #publish}), and only for the issues that changed. Reading single estimates, as the
+ * welfare snapshots of every turn do, takes them straight from the pseudo-counts.
+ */
+class BayesianEstimation implements Updater
+{
+    /**
+     * The pseudo-count of every value before any offer, i.e. the strength of the uniform prior.
+     */
+    private static final double VALUE_PRIOR = 1;
+
+    /**
+     * The pseudo-count of every issue's weight before any offer.
+     */
+    private static final double WEIGHT_PRIOR = 1;
+
+    /**
+     * The weight evidence that an issue gains by keeping its value.
+     */
+    private static final double LEARNING_RATE = 0.2;
+
+    /**
+     * How much a concession amplifies the evidence of the issues kept and of the values abandoned.
+     */
+    private static final double CONCESSION_GAIN = 4;
+
+    /**
+     * The posterior of a single issue.
+     */
+    private static final class IssueState
+    {
+        /**
+         * The table that this state was last read from or written to; any other table was replaced from outside.
+         */
+        private HashMap<Value, Double> table;
+        private final HashMap<Value, Integer> indices = new HashMap<>();
+        private final double[] masses;
+        private double total;
+        private double max;
+        private double weightMass;
+        private boolean dirty;
+
+        private IssueState(HashMap<Value, Double> table, double strength, double weightMass)
+        {
+            this.table = table;
+            this.masses = new double[table.size()];
+            this.weightMass = weightMass;
+
+            double sum = 0;
+            for (double estimate : table.values())
+                sum += estimate;
+
+            int index = 0;
+            for (Map.Entry<Value, Double> entry : table.entrySet())
+            {
+                indices.put(entry.getKey(), index);
+                masses[index] = sum > 0 ? entry.getValue() / sum * strength : strength / table.size();
+                max = Math.max(max, masses[index]);
+                total += masses[index++];
+            }
+        }
+
+        /**
+         * @return The estimated utility of {@code value}, relative to the best value of the issue.
+         */
+        private double getRelative(Value value)
+        {
+            Integer index = indices.get(value);
+            return index == null || max <= 0 ? 0 : masses[index] / max;
+        }
+
+        private void observe(Value value, double mass)
+        {
+            Integer index = indices.get(value);
+            if (index == null)
+                return;
+
+            masses[index] += mass;
+            total += mass;
+            max = Math.max(max, masses[index]);
+            dirty = true;
+        }
+    }
+
+    private final HashMap<Objective, IssueState> states = new HashMap<>();
+    private double weightTotal;
+    private boolean weightsDirty;
+    private Bid previous;
+
+    /**
+     * @return The state of {@code issue}, (re)built from its table if the table was replaced from outside, as when
+     * the opponent is refined or resumed.
+     */
+    private IssueState getState(Objective issue, HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities,
+                                double strength)
+    {
+        Pair<Double, HashMap<Value, Double>> entry = utilities.get(issue);
+        IssueState state = states.get(issue);
+        if (state != null && state.table == entry.getValue())
+            return state;
+
+        double weightMass;
+        if (state == null)
+        {
+            weightMass = WEIGHT_PRIOR;
+            weightTotal += weightMass;
+        } else
+        {
+            weightMass = state.weightMass;
+            strength = Math.max(strength, state.total);
+        }
+
+        state = new IssueState(entry.getValue(), strength > 0 ? strength : VALUE_PRIOR * entry.getValue().size(),
+                weightMass);
+        states.put(issue, state);
+        return state;
+    }
+
+    @Override
+    public void updateUtilities(Action offer, HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+        if (!(offer instanceof Offer))
+            return;
+
+        Bid bid = ((Offer) offer).getBid();
+
+        // The concession of the opponent, as measured by the model so far.
+        double concession = 0;
+        if (previous != null)
+        {
+            for (Objective issue : utilities.keySet())
+            {
+                IssueState state = getState(issue, utilities, 0);
+                double weight = state.weightMass / weightTotal;
+                concession += weight * (state.getRelative(previous.getValue(issue.getNumber())) - state.getRelative(
+                        bid.getValue(issue.getNumber())));
+            }
+            concession = Math.max(0, concession);
+        }
+
+        for (Objective issue : utilities.keySet())
+        {
+            IssueState state = getState(issue, utilities, 0);
+            Value value = bid.getValue(issue.getNumber());
+            state.observe(value, 1);
+
+            if (previous == null)
+                continue;
+
+            Value before = previous.getValue(issue.getNumber());
+            if (value.equals(before))
+            {
+                double gain = LEARNING_RATE * (1 + CONCESSION_GAIN * concession);
+                state.weightMass += gain;
+                weightTotal += gain;
+                weightsDirty = true;
+            } else if (concession > 0)
+                state.observe(before, CONCESSION_GAIN * concession);
+        }
+
+        previous = bid;
+    }
+
+    @Override
+    public void publish(HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+        for (Map.Entry<Objective, Pair<Double, HashMap<Value, Double>>> entry : utilities.entrySet())
+        {
+            IssueState state = states.get(entry.getKey());
+            if (state == null || state.table != entry.getValue().getValue() || !state.dirty && !weightsDirty)
+                continue;
+
+            HashMap<Value, Double> table = state.table;
+            if (state.dirty)
+            {
+                table = new HashMap<>();
+                for (Map.Entry<Value, Integer> value : state.indices.entrySet())
+                    table.put(value.getKey(), state.masses[value.getValue()] / state.total);
+                state.table = table;
+                state.dirty = false;
+            }
+
+            entry.setValue(new Pair<>(state.weightMass / weightTotal, table));
+        }
+
+        weightsDirty = false;
+    }
+
+    /**
+     * The posterior mean, read from the pseudo-counts rather than from a published table.
+     */
+    @Override
+    public double getEstimate(Objective issue, Value value,
+                              HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+        IssueState state = states.get(issue);
+        Integer index = state == null ? null : state.indices.get(value);
+        if (index == null || state.table != utilities.get(issue).getValue())
+            return Updater.super.getEstimate(issue, value, utilities);
+
+        return state.masses[index] / state.total;
+    }
+
+    /**
+     * The pseudo-counts, which an offer only changes for the values that it bears on.
+     */
+    @Override
+    public double getUnnormalized(Objective issue, Value value,
+                                  HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+        IssueState state = states.get(issue);
+        Integer index = state == null ? null : state.indices.get(value);
+        if (index == null || state.table != utilities.get(issue).getValue())
+            return Updater.super.getUnnormalized(issue, value, utilities);
+
+        return state.masses[index];
+    }
+
+    /**
+     * The share of the issue in the weight pseudo-counts, which is what {@link #publish} would write.
+     */
+    @Override
+    public double getWeight(Objective issue, HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+        IssueState state = states.get(issue);
+        if (state == null)
+            return Updater.super.getWeight(issue, utilities);
+
+        return state.weightMass / weightTotal;
+    }
+
+    /**
+     * The restored utilities weigh as much as the offers that they were learned from, and so do the restored weights.
+     */
+    @Override
+    public void resume(HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities, int observations)
+    {
+        states.clear();
+        weightTotal = WEIGHT_PRIOR * utilities.size() + LEARNING_RATE * observations;
+        for (Map.Entry<Objective, Pair<Double, HashMap<Value, Double>>> entry : utilities.entrySet())
+        {
+            HashMap<Value, Double> table = entry.getValue().getValue();
+            states.put(entry.getKey(), new IssueState(table, VALUE_PRIOR * table.size() + observations,
+                    entry.getValue().getKey() * weightTotal));
+        }
+        previous = null;
+    }
+
+    @Override
+    public Updater newInstance()
+    {
+        return new BayesianEstimation();
+    }
+
+    @Override public String toString()
+    {
+        return "Bayesian";
+    }
+}
@@ -0,0 +1,741 @@
+package com.natebeckemeyer.turc.anac;
+
+import negotiator.Bid;
+import negotiator.Domain;
+import negotiator.issue.*;
+import negotiator.utility.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The encoded bid space of a domain. Every bid is identified by a mixed-radix code whose digits are the indices of
+ * its values, issue by issue (in order of issue number). Alongside the encoding, the space keeps the normalized
+ * evaluator tables of this agent and an index of every code sorted by descending own utility, so that bids above a
+ * threshold can be found with a binary search instead of a scan. Spaces of more than {@link #MAX_RANKED_SIZE} bids
+ * are not ranked; bids above a threshold are then found by sampling (see {@link #sampleAbove(double, Random, int)}).
+ * <p>
+ * Real and integer issues are discretized onto a grid of ascending positions. The grid starts out coarse and is
+ * only refined (see {@link #refine(int, int)}) around the values that turn out to matter, so that the space stays
+ * bounded; offers off the grid are snapped to the nearest grid value.
+ */
+final class BidSpace
+{
+    /**
+     * The number of grid points that a continuous issue starts out with.
+     */
+    private static final int INITIAL_GRID_POINTS = 5;
+
+    /**
+     * The most grid points that refinement gives a continuous issue.
+     */
+    private static final int MAX_GRID_POINTS = 33;
+
+    /**
+     * The finest spacing of a real grid, as a fraction of the range of its issue.
+     */
+    private static final double RESOLUTION = 1. / 1024;
+
+    /**
+     * The size beyond which refinement no longer grows the space.
+     */
+    private static final int MAX_REFINED_SIZE = 250_000;
+
+    /**
+     * The most bids that a space enumerates and ranks.
+     */
+    static final int MAX_RANKED_SIZE = 1 << 22;
+
+    /**
+     * The key identifying the domain and preference profile that this space was built from.
+     */
+    private final String key;
+
+    private final Domain domain;
+
+    /**
+     * The issues of the domain, in order of issue number.
+     */
+    private final Objective[] issues;
+
+    /**
+     * The evaluator of each issue.
+     */
+    private final Evaluator[] evaluators;
+
+    /**
+     * The possible values of each issue, in encoding order.
+     */
+    private final Value[][] values;
+
+    /**
+     * The position of each value of each issue: its index for discrete issues, its number for continuous ones.
+     */
+    private final double[][] positions;
+
+    /**
+     * The weight of each issue.
+     */
+    private final double[] weights;
+
+    /**
+     * The evaluation in [0, 1] of each value of each issue, as the utility space computes it.
+     */
+    private final double[][] evaluations;
+
+    /**
+     * The evaluation of each value of each issue, normalized so that the values of an issue sum to 1.
+     */
+    private final double[][] normalized;
+
+    /**
+     * The place value of each issue's digit in a bid code.
+     */
+    private final long[] strides;
+
+    /**
+     * The number of bids in the space, or {@link Long#MAX_VALUE} if there are more than a code can tell apart.
+     */
+    private final long size;
+
+    /**
+     * Every bid code, sorted by descending own utility; empty if the space is too large to rank.
+     */
+    private final int[] ranking;
+
+    /**
+     * The own utility of each bid in {@link #ranking}.
+     */
+    private final double[] rankedUtilities;
+
+    private final List<HashMap<Value, Integer>> indices;
+
+    BidSpace(String key, Domain domain, Objective[] issues, Evaluator[] evaluators, Value[][] values,
+             double[][] positions, double[] weights, double[][] evaluations, double[][] normalized, int[] ranking,
+             double[] rankedUtilities)
+    {
+        this.key = key;
+        this.domain = domain;
+        this.issues = issues;
+        this.evaluators = evaluators;
+        this.values = values;
+        this.positions = positions;
+        this.weights = weights;
+        this.evaluations = evaluations;
+        this.normalized = normalized;
+        this.ranking = ranking;
+        this.rankedUtilities = rankedUtilities;
+
+        this.strides = new long[issues.length];
+        long stride = 1;
+        for (int i = issues.length - 1; i >= 0; i--)
+        {
+            strides[i] = stride;
+            stride = multiply(stride, values[i].length);
+        }
+        this.size = stride;
+
+        this.indices = new ArrayList<>(issues.length);
+        for (Value[] issueValues : values)
+        {
+            HashMap<Value, Integer> index = new HashMap<>(issueValues.length * 2);
+            for (int v = 0; v < issueValues.length; v++)
+                index.put(issueValues[v], v);
+            indices.add(index);
+        }
+    }
+
+    /**
+     * Gets the bid space of {@code utilitySpace}, from the domain cache if an earlier session already built it.
+     *
+     * @param utilitySpace The utility space whose bids to encode.
+     * @return The encoded bid space.
+     */
+    static BidSpace of(AdditiveUtilitySpace utilitySpace)
+    {
+        Objective[] issues = getIssues(utilitySpace);
+        Evaluator[] evaluators = new Evaluator[issues.length];
+        Value[][] values = new Value[issues.length][];
+        double[][] positions = new double[issues.length][];
+        double[] weights = new double[issues.length];
+        double[][] evaluations = new double[issues.length][];
+
+        for (int i = 0; i < issues.length; i++)
+        {
+            evaluators[i] = utilitySpace.getEvaluator(issues[i].getNumber());
+            weights[i] = evaluators[i].getWeight();
+
+            switch (evaluators[i].getType())
+            {
+                case DISCRETE:
+                    EvaluatorDiscrete evaluatorDiscrete = (EvaluatorDiscrete) evaluators[i];
+                    values[i] = evaluatorDiscrete.getValues().toArray(new Value[0]);
+                    positions[i] = new double[values[i].length];
+                    evaluations[i] = new double[values[i].length];
+
+                    double max = 0;
+                    for (int v = 0; v < values[i].length; v++)
+                    {
+                        positions[i][v] = v;
+                        evaluations[i][v] = evaluatorDiscrete.getValue((ValueDiscrete) values[i][v]).doubleValue();
+                        max = Math.max(max, evaluations[i][v]);
+                    }
+                    if (max > 0)
+                        for (int v = 0; v < values[i].length; v++)
+                            evaluations[i][v] /= max;
+                    break;
+
+                case REAL:
+                    EvaluatorReal evaluatorReal = (EvaluatorReal) evaluators[i];
+                    positions[i] = getInitialGrid(evaluatorReal.getLowerBound(), evaluatorReal.getUpperBound(),
+                            false);
+                    values[i] = toValues(evaluators[i], positions[i]);
+                    evaluations[i] = evaluate(evaluators[i], positions[i]);
+                    break;
+
+                case INTEGER:
+                    EvaluatorInteger evaluatorInteger = (EvaluatorInteger) evaluators[i];
+                    positions[i] = getInitialGrid(evaluatorInteger.getLowerBound(), evaluatorInteger.getUpperBound(),
+                            true);
+                    values[i] = toValues(evaluators[i], positions[i]);
+                    evaluations[i] = evaluate(evaluators[i], positions[i]);
+                    break;
+
+                default:
+                    values[i] = new Value[0];
+                    positions[i] = new double[0];
+                    evaluations[i] = new double[0];
+                    break;
+            }
+        }
+
+        String key = computeKey(issues, values, weights, evaluations);
+        BidSpace cached = DomainCache.load(key, utilitySpace);
+        if (cached != null)
+            return cached;
+
+        BidSpace space = build(key, utilitySpace.getDomain(), issues, evaluators, values, positions, weights,
+                evaluations);
+        DomainCache.store(space);
+        return space;
+    }
+
+    /**
+     * @return The issues of {@code utilitySpace}, in order of issue number.
+     */
+    static Objective[] getIssues(AdditiveUtilitySpace utilitySpace)
+    {
+        return utilitySpace.getEvaluators().stream().map(Map.Entry::getKey)
+                .sorted(Comparator.comparingInt(Objective::getNumber)).toArray(Objective[]::new);
+    }
+
+    /**
+     * @return {@link #INITIAL_GRID_POINTS} evenly spaced positions from {@code lower} to {@code upper}; integer
+     * positions are rounded, dropping duplicates.
+     */
+    private static double[] getInitialGrid(double lower, double upper, boolean integer)
+    {
+        TreeSet<Double> grid = new TreeSet<>();
+        for (int p = 0; p < INITIAL_GRID_POINTS; p++)
+        {
+            double position = lower + (upper - lower) * p / (INITIAL_GRID_POINTS - 1);
+            grid.add(integer ? Math.rint(position) : position);
+        }
+
+        return grid.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    /**
+     * @return The value at each of the positions of a continuous issue.
+     */
+    static Value[] toValues(Evaluator evaluator, double[] positions)
+    {
+        Value[] values = new Value[positions.length];
+        for (int v = 0; v < positions.length; v++)
+            values[v] = toValue(evaluator, positions[v]);
+
+        return values;
+    }
+
+    /**
+     * @return The value at {@code position} of an issue evaluated by {@code evaluator}, which must be continuous.
+     */
+    static Value toValue(Evaluator evaluator, double position)
+    {
+        return evaluator.getType() == EVALUATORTYPE.INTEGER ? new ValueInteger((int) position) : new ValueReal(
+                position);
+    }
+
+    /**
+     * @return The position of {@code value}, which must be a real or integer value.
+     */
+    static double toPosition(Value value)
+    {
+        return value instanceof ValueInteger ? ((ValueInteger) value).getValue() : ((ValueReal) value).getValue();
+    }
+
+    /**
+     * @return The evaluation of each of the positions of a continuous issue.
+     */
+    private static double[] evaluate(Evaluator evaluator, double[] positions)
+    {
+        double[] evaluations = new double[positions.length];
+        for (int v = 0; v < positions.length; v++)
+            evaluations[v] = evaluator.getType() == EVALUATORTYPE.INTEGER ?
+                    ((EvaluatorInteger) evaluator).getEvaluation((int) positions[v]) :
+                    ((EvaluatorReal) evaluator).getEvaluation(positions[v]);
+
+        return evaluations;
+    }
+
+    /**
+     * Normalizes the tables and ranks every bid code by its own utility.
+     */
+    private static BidSpace build(String key, Domain domain, Objective[] issues, Evaluator[] evaluators,
+                                  Value[][] values, double[][] positions, double[] weights, double[][] evaluations)
+    {
+        double[][] normalized = new double[issues.length][];
+        for (int i = 0; i < issues.length; i++)
+        {
+            double sum = 0;
+            for (double evaluation : evaluations[i])
+                sum += evaluation;
+
+            normalized[i] = new double[evaluations[i].length];
+            for (int v = 0; v < evaluations[i].length; v++)
+                normalized[i][v] = sum != 0 ? evaluations[i][v] / sum : 1. / evaluations[i].length;
+        }
+
+        long count = 1;
+        for (Value[] issueValues : values)
+            count = multiply(count, issueValues.length);
+        if (count > MAX_RANKED_SIZE)
+            return new BidSpace(key, domain, issues, evaluators, values, positions, weights, evaluations, normalized,
+                    new int[0], new double[0]);
+
+        int size = (int) count;
+        double[] utilities = new double[size];
+        int[] digits = new int[issues.length];
+        for (int code = 0; code < size; code++)
+        {
+            double utility = 0;
+            for (int i = 0; i < issues.length; i++)
+                utility += weights[i] * evaluations[i][digits[i]];
+            utilities[code] = utility;
+
+            for (int i = issues.length - 1; i >= 0 && ++digits[i] == values[i].length; i--)
+                digits[i] = 0;
+        }
+
+        int[] ranking = rank(utilities);
+        double[] rankedUtilities = new double[size];
+        for (int r = 0; r < size; r++)
+            rankedUtilities[r] = utilities[ranking[r]];
+
+        return new BidSpace(key, domain, issues, evaluators, values, positions, weights, evaluations, normalized,
+                ranking, rankedUtilities);
+    }
+
+    /**
+     * @return {@code a * b}, or {@link Long#MAX_VALUE} if that overflows.
+     */
+    private static long multiply(long a, long b)
+    {
+        try
+        {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException e)
+        {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Sorts the codes by descending utility with a bottom-up merge sort, which is stable (ties stay in code order)
+     * and never boxes a code.
+     *
+     * @param utilities The utility of each code.
+     * @return The codes, by descending utility.
+     */
+    private static int[] rank(double[] utilities)
+    {
+        int[] ranking = new int[utilities.length];
+        int[] merged = new int[utilities.length];
+        for (int code = 0; code < ranking.length; code++)
+            ranking[code] = code;
+
+        for (int width = 1; width < ranking.length; width *= 2)
+        {
+            for (int low = 0; low < ranking.length; low += 2 * width)
+            {
+                int middle = Math.min(low + width, ranking.length), high = Math.min(low + 2 * width, ranking.length);
+                int left = low, right = middle, out = low;
+                while (left < middle && right < high)
+                    merged[out++] = utilities[ranking[right]] > utilities[ranking[left]] ? ranking[right++] :
+                            ranking[left++];
+                while (left < middle)
+                    merged[out++] = ranking[left++];
+                while (right < high)
+                    merged[out++] = ranking[right++];
+            }
+
+            int[] swap = ranking;
+            ranking = merged;
+            merged = swap;
+        }
+
+        return ranking;
+    }
+
+    /**
+     * Hashes everything that the tables and the ranking depend on, so that equal keys imply equal bid spaces.
+     */
+    private static String computeKey(Objective[] issues, Value[][] values, double[] weights, double[][] evaluations)
+    {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < issues.length; i++)
+        {
+            description.append(issues[i].getNumber()).append('\u0000').append(issues[i].getName()).append('\u0000')
+                    .append(Double.doubleToLongBits(weights[i])).append('\u0000');
+            for (int v = 0; v < values[i].length; v++)
+                description.append(values[i][v]).append('\u0000')
+                        .append(Double.doubleToLongBits(evaluations[i][v])).append('\u0000');
+            description.append('\n');
+        }
+
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(
+                    description.toString().getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e)
+        {
+            return Integer.toHexString(description.toString().hashCode());
+        }
+    }
+
+    /**
+     * Refines the grid of a continuous issue around one of its values, by inserting the midpoints between that value
+     * and its neighbours. Nothing is refined once the grid is as fine as {@link #RESOLUTION} there, once it holds
+     * {@link #MAX_GRID_POINTS}, or once the space would outgrow {@link #MAX_REFINED_SIZE}.
+     *
+     * @param issue The issue to refine.
+     * @param value The index of the value to refine around.
+     * @return The refined space, or this space if nothing was refined.
+     */
+    BidSpace refine(int issue, int value)
+    {
+        if (!isContinuous(issue) || value < 0 || values[issue].length >= MAX_GRID_POINTS)
+            return this;
+
+        double[] grid = positions[issue];
+        boolean integer = evaluators[issue].getType() == EVALUATORTYPE.INTEGER;
+        double spacing = (grid[grid.length - 1] - grid[0]) * RESOLUTION;
+
+        TreeSet<Double> refined = new TreeSet<>();
+        for (double position : grid)
+            refined.add(position);
+        for (int neighbour = value - 1; neighbour <= value + 1; neighbour += 2)
+        {
+            if (neighbour < 0 || neighbour >= grid.length || Math.abs(grid[neighbour] - grid[value]) <= spacing)
+                continue;
+
+            double midpoint = (grid[neighbour] + grid[value]) / 2;
+            refined.add(integer ? Math.floor(midpoint) : midpoint);
+        }
+
+        if (refined.size() == grid.length || size / grid.length > MAX_REFINED_SIZE / refined.size())
+            return this;
+
+        double[][] newPositions = positions.clone();
+        Value[][] newValues = values.clone();
+        double[][] newEvaluations = evaluations.clone();
+        newPositions[issue] = refined.stream().mapToDouble(Double::doubleValue).toArray();
+        newValues[issue] = new Value[newPositions[issue].length];
+        for (int v = 0, old = 0; v < newPositions[issue].length; v++)
+        {
+            while (old < grid.length && grid[old] < newPositions[issue][v])
+                old++;
+            newValues[issue][v] = old < grid.length && grid[old] == newPositions[issue][v] ? values[issue][old] :
+                    toValue(evaluators[issue], newPositions[issue][v]);
+        }
+        newEvaluations[issue] = evaluate(evaluators[issue], newPositions[issue]);
+
+        return build(key, domain, issues, evaluators, newValues, newPositions, weights, newEvaluations);
+    }
+
+    /**
+     * Refines the grid of every continuous issue around the value that the bid encoded by {@code code} takes for it.
+     *
+     * @param code The code of a bid of this space.
+     * @return The refined space, or this space if nothing was refined.
+     */
+    BidSpace refineAround(long code)
+    {
+        BidSpace refined = this;
+        for (int issue = 0; issue < issues.length; issue++)
+            if (isContinuous(issue))
+                refined = refined.refine(issue, getDigit(code, issue));
+
+        return refined;
+    }
+
+    String getKey()
+    {
+        return key;
+    }
+
+    Domain getDomain()
+    {
+        return domain;
+    }
+
+    int getIssueCount()
+    {
+        return issues.length;
+    }
+
+    Objective getIssue(int issue)
+    {
+        return issues[issue];
+    }
+
+    Evaluator getEvaluator(int issue)
+    {
+        return evaluators[issue];
+    }
+
+    /**
+     * @return Whether {@code issue} is a real or integer issue discretized onto a grid.
+     */
+    boolean isContinuous(int issue)
+    {
+        EVALUATORTYPE type = evaluators[issue].getType();
+        return type == EVALUATORTYPE.REAL || type == EVALUATORTYPE.INTEGER;
+    }
+
+    int getValueCount(int issue)
+    {
+        return values[issue].length;
+    }
+
+    Value getValue(int issue, int value)
+    {
+        return values[issue][value];
+    }
+
+    double getPosition(int issue, int value)
+    {
+        return positions[issue][value];
+    }
+
+    double getWeight(int issue)
+    {
+        return weights[issue];
+    }
+
+    double getEvaluation(int issue, int value)
+    {
+        return evaluations[issue][value];
+    }
+
+    double getNormalizedEvaluation(int issue, int value)
+    {
+        return normalized[issue][value];
+    }
+
+    /**
+     * @return The number of bids in the space, or {@link Long#MAX_VALUE} if there are more than a code can tell
+     * apart.
+     */
+    long size()
+    {
+        return size;
+    }
+
+    /**
+     * @return Whether the space is small enough that every bid is ranked; only then are {@link #getRanked(int)},
+     * {@link #getRankedUtility(int)} and {@link #countAbove(double)} meaningful.
+     */
+    boolean isRanked()
+    {
+        return ranking.length == size;
+    }
+
+    /**
+     * @param rank The position of a bid in the ranking, 0 being the bid of highest own utility.
+     * @return The code of the bid.
+     */
+    int getRanked(int rank)
+    {
+        return ranking[rank];
+    }
+
+    double getRankedUtility(int rank)
+    {
+        return rankedUtilities[rank];
+    }
+
+    /**
+     * @return The number of bids whose own utility is strictly greater than {@code threshold}; these are exactly the
+     * first bids of the ranking. An unranked space has none.
+     */
+    int countAbove(double threshold)
+    {
+        int low = 0, high = rankedUtilities.length;
+        while (low < high)
+        {
+            int middle = (low + high) >>> 1;
+            if (rankedUtilities[middle] > threshold)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    /**
+     * @return The index of the value that the bid encoded by {@code code} takes for {@code issue}.
+     */
+    int getDigit(long code, int issue)
+    {
+        return (int) (code / strides[issue] % values[issue].length);
+    }
+
+    /**
+     * @return {@code code} with the digit of {@code issue} replaced by {@code digit}.
+     */
+    long withDigit(long code, int issue, int digit)
+    {
+        return code + (digit - getDigit(code, issue)) * strides[issue];
+    }
+
+    /**
+     * @return This agent's utility for the bid encoded by {@code code}.
+     */
+    double getUtility(long code)
+    {
+        double utility = 0;
+        for (int i = 0; i < issues.length; i++)
+            utility += weights[i] * evaluations[i][getDigit(code, i)];
+
+        return utility;
+    }
+
+    /**
+     * Draws bids uniformly at random, digit by digit, until one has an own utility strictly greater than {@code
+     * threshold}. This is how bids above a threshold are found in a space too large to rank.
+     *
+     * @param attempts The most bids to draw.
+     * @return The code of the bid found, or -1 if none of the bids drawn was above the threshold.
+     */
+    long sampleAbove(double threshold, Random random, int attempts)
+    {
+        for (int attempt = 0; attempt < attempts; attempt++)
+        {
+            long code = 0;
+            double utility = 0;
+            for (int i = 0; i < issues.length; i++)
+            {
+                int digit = random.nextInt(values[i].length);
+                code += digit * strides[i];
+                utility += weights[i] * evaluations[i][digit];
+            }
+            if (utility > threshold)
+                return code;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The index of {@code value} among the values of {@code issue}, snapped to the nearest grid value if the
+     * issue is continuous, or -1 if a discrete issue has no such value.
+     */
+    int indexOf(int issue, Value value)
+    {
+        Integer index = indices.get(issue).get(value);
+        if (index != null)
+            return index;
+        if (!isContinuous(issue) || values[issue].length == 0)
+            return -1;
+
+        double position = toPosition(value);
+        int insertion = Arrays.binarySearch(positions[issue], position);
+        if (insertion >= 0)
+            return insertion;
+
+        int above = Math.min(-insertion - 1, values[issue].length - 1), below = Math.max(above - 1, 0);
+        return position - positions[issue][below] <= positions[issue][above] - position ? below : above;
+    }
+
+    /**
+     * @return The code of {@code bid} (snapped to the grids), or -1 if one of its values is not part of this space.
+     */
+    long encode(Bid bid)
+    {
+        long code = 0;
+        for (int i = 0; i < issues.length; i++)
+        {
+            int digit = indexOf(i, bid.getValue(issues[i].getNumber()));
+            if (digit < 0)
+                return -1;
+            code += digit * strides[i];
+        }
+        return code;
+    }
+
+    /**
+     * @return The bid encoded by {@code code}.
+     */
+    Bid decode(long code)
+    {
+        HashMap<Integer, Value> bidMap = new HashMap<>();
+        for (int i = 0; i < issues.length; i++)
+            bidMap.put(issues[i].getNumber(), values[i][getDigit(code, i)]);
+
+        return new Bid(domain, bidMap);
+    }
+
+    /**
+     * @return {@code bid} with each of its continuous values replaced by the nearest grid value, so that it can be
+     * looked up in tables over this space.
+     */
+    Bid snap(Bid bid)
+    {
+        HashMap<Integer, Value> bidMap = null;
+        for (int i = 0; i < issues.length; i++)
+        {
+            if (!isContinuous(i))
+                continue;
+
+            Value value = bid.getValue(issues[i].getNumber());
+            int index = indexOf(i, value);
+            if (index >= 0 && !values[i][index].equals(value))
+            {
+                if (bidMap == null)
+                    bidMap = new HashMap<>(bid.getValues());
+                bidMap.put(issues[i].getNumber(), values[i][index]);
+            }
+        }
+
+        return bidMap == null ? bid : new Bid(domain, bidMap);
+    }
+
+    /**
+     * @return The ranking, for persisting it.
+     */
+    int[] getRanking()
+    {
+        return ranking;
+    }
+
+    double[] getRankedUtilities()
+    {
+        return rankedUtilities;
+    }
+}
@@ -0,0 +1,86 @@
+package com.natebeckemeyer.turc.anac;
+
+/**
+ * The latencies that {@link NateAgent} measured for each {@link DecisionPhase} of its turns, in nanoseconds.
+ */
+public final class DecisionMetrics
+{
+    private final long[] counts = new long[DecisionPhase.values().length];
+    private final long[] totals = new long[DecisionPhase.values().length];
+    private final long[] maxima = new long[DecisionPhase.values().length];
+    private final long[] last = new long[DecisionPhase.values().length];
+
+    /**
+     * The number of turns in which the search stopped because the budget ran out.
+     */
+    private long exhaustedTurns;
+
+    /**
+     * Records that {@code phase} took {@code latency} nanoseconds.
+     */
+    void record(DecisionPhase phase, long latency)
+    {
+        int p = phase.ordinal();
+        counts[p]++;
+        totals[p] += latency;
+        maxima[p] = Math.max(maxima[p], latency);
+        last[p] = latency;
+    }
+
+    void recordExhausted()
+    {
+        exhaustedTurns++;
+    }
+
+    /**
+     * @return The number of times that {@code phase} was measured.
+     */
+    public long getCount(DecisionPhase phase)
+    {
+        return counts[phase.ordinal()];
+    }
+
+    /**
+     * @return The mean latency of {@code phase}, or 0 if it was never measured.
+     */
+    public double getMeanLatency(DecisionPhase phase)
+    {
+        int p = phase.ordinal();
+        return counts[p] > 0 ? (double) totals[p] / counts[p] : 0;
+    }
+
+    /**
+     * @return The greatest latency of {@code phase}.
+     */
+    public long getMaxLatency(DecisionPhase phase)
+    {
+        return maxima[phase.ordinal()];
+    }
+
+    /**
+     * @return The latency of the last measurement of {@code phase}.
+     */
+    public long getLastLatency(DecisionPhase phase)
+    {
+        return last[phase.ordinal()];
+    }
+
+    /**
+     * @return The number of turns whose search was cut short by the turn budget.
+     */
+    public long getExhaustedTurns()
+    {
+        return exhaustedTurns;
+    }
+
+    @Override public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (DecisionPhase phase : DecisionPhase.values())
+            builder.append(String.format("%-8s count %6d, mean %10.3f ms, max %10.3f ms%n", phase,
+                    getCount(phase), getMeanLatency(phase) / 1e6, getMaxLatency(phase) / 1e6));
+        builder.append(String.format("Turns cut short by the budget: %d", exhaustedTurns));
+
+        return builder.toString();
+    }
+}
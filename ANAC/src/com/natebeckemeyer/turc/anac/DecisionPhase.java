@@ -0,0 +1,27 @@
+package com.natebeckemeyer.turc.anac;
+
+/**
+ * The phases of a turn of {@link NateAgent#chooseAction(java.util.List)}, as measured by {@link DecisionMetrics}.
+ */
+public enum DecisionPhase
+{
+    /**
+     * Estimating the upper bounds of the current and the next deal.
+     */
+    ESTIMATE,
+
+    /**
+     * Evaluating the last offer of the partner.
+     */
+    RESPOND,
+
+    /**
+     * Searching the bid space for the offer to make.
+     */
+    SEARCH,
+
+    /**
+     * The whole turn.
+     */
+    TURN
+}
@@ -0,0 +1,268 @@
+package com.natebeckemeyer.turc.anac;
+
+import negotiator.issue.Objective;
+import negotiator.issue.Value;
+import negotiator.utility.AdditiveUtilitySpace;
+import negotiator.utility.Evaluator;
+import negotiator.utility.EvaluatorDiscrete;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Persists {@link BidSpace}s across sessions in memory-mapped files, one per domain and preference profile, so that
+ * a session against a known domain loads its bid space instead of enumerating and ranking it again.
+ * <p>
+ * The layout of a cache file is as follows:
+ * <pre>
+ * {@code File   --> MAGIC VERSION Key IssueCount Issue* BidCount Code* Utility*}
+ * {@code Key    --> Length Byte*}
+ * {@code Issue  --> Number Weight ValueCount (Name Position Evaluation Normalized)*}
+ * {@code Name   --> Length Byte*}
+ * </pre>
+ * where the codes and utilities form the ranking of the bid space. Values of continuous issues are restored from their
+ * positions, and values of discrete issues from their names.
+ * <p>
+ * Loading a bid space marks its file as used by touching its modification time, and storing one evicts the least
+ * recently used files until the directory fits within {@link #MAX_BYTES} again. Spaces too large to rank are not
+ * cached, since there is nothing expensive to save.
+ */
+final class DomainCache
+{
+    /**
+     * The directory holding the cache files.
+     */
+    static final Path DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "turc-anac", "domains");
+
+    private static final int MAGIC = 0x54555243;
+
+    private static final int VERSION = 2;
+
+    /**
+     * The most bytes that the cache files may take.
+     */
+    static final long MAX_BYTES = 256L << 20;
+
+    private static final String SUFFIX = ".bin";
+
+    private DomainCache()
+    {
+    }
+
+    private static Path getFile(String key)
+    {
+        return DIRECTORY.resolve(key + SUFFIX);
+    }
+
+    /**
+     * Loads the bid space cached under {@code key}, binding its issues and values to those of {@code utilitySpace}.
+     *
+     * @param key          The key of the bid space.
+     * @param utilitySpace The utility space that the bid space was built from.
+     * @return The cached bid space, or null if there is none (or it is unreadable).
+     */
+    static BidSpace load(String key, AdditiveUtilitySpace utilitySpace)
+    {
+        Path file = getFile(key);
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || !key.equals(getString(buffer)))
+                return null;
+
+            HashMap<Integer, Objective> objectives = new HashMap<>();
+            utilitySpace.getEvaluators().forEach(entry -> objectives.put(entry.getKey().getNumber(), entry.getKey()));
+
+            int issueCount = buffer.getInt();
+            Objective[] issues = new Objective[issueCount];
+            Evaluator[] evaluators = new Evaluator[issueCount];
+            Value[][] values = new Value[issueCount][];
+            double[][] positions = new double[issueCount][];
+            double[] weights = new double[issueCount];
+            double[][] evaluations = new double[issueCount][];
+            double[][] normalized = new double[issueCount][];
+
+            for (int i = 0; i < issueCount; i++)
+            {
+                issues[i] = objectives.get(buffer.getInt());
+                if (issues[i] == null)
+                    return null;
+                evaluators[i] = utilitySpace.getEvaluator(issues[i].getNumber());
+                HashMap<String, Value> known = getKnownValues(evaluators[i]);
+
+                weights[i] = buffer.getDouble();
+                int valueCount = buffer.getInt();
+                values[i] = new Value[valueCount];
+                positions[i] = new double[valueCount];
+                evaluations[i] = new double[valueCount];
+                normalized[i] = new double[valueCount];
+                for (int v = 0; v < valueCount; v++)
+                {
+                    String name = getString(buffer);
+                    positions[i][v] = buffer.getDouble();
+                    values[i][v] = evaluators[i] instanceof EvaluatorDiscrete ? known.get(name) : BidSpace.toValue(
+                            evaluators[i], positions[i][v]);
+                    if (values[i][v] == null)
+                        return null;
+                    evaluations[i][v] = buffer.getDouble();
+                    normalized[i][v] = buffer.getDouble();
+                }
+            }
+
+            int size = buffer.getInt();
+            int[] ranking = new int[size];
+            double[] rankedUtilities = new double[size];
+            buffer.slice().asIntBuffer().get(ranking);
+            buffer.position(buffer.position() + size * Integer.BYTES);
+            buffer.slice().asDoubleBuffer().get(rankedUtilities);
+
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new BidSpace(key, utilitySpace.getDomain(), issues, evaluators, values, positions, weights,
+                    evaluations, normalized, ranking, rankedUtilities);
+        } catch (IOException | RuntimeException e)
+        {
+            System.err.println("Could not load the cached bid space " + file + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes {@code space} to the cache. The file is written beside its final location and then moved into place,
+     * so that a concurrent session never maps a partially written file.
+     *
+     * @param space The bid space to cache.
+     */
+    static void store(BidSpace space)
+    {
+        if (!space.isRanked())
+            return;
+
+        byte[] key = space.getKey().getBytes(StandardCharsets.UTF_8);
+        byte[][][] names = new byte[space.getIssueCount()][][];
+
+        long length = 5 * Integer.BYTES + key.length;
+        for (int i = 0; i < space.getIssueCount(); i++)
+        {
+            length += 2 * Integer.BYTES + Double.BYTES;
+            names[i] = new byte[space.getValueCount(i)][];
+            for (int v = 0; v < space.getValueCount(i); v++)
+            {
+                names[i][v] = space.getValue(i, v).toString().getBytes(StandardCharsets.UTF_8);
+                length += Integer.BYTES + names[i][v].length + 3 * Double.BYTES;
+            }
+        }
+        length += space.size() * (Integer.BYTES + Double.BYTES);
+
+        Path file = getFile(space.getKey());
+        Path temporary = null;
+        try
+        {
+            Files.createDirectories(DIRECTORY);
+            temporary = Files.createTempFile(DIRECTORY, space.getKey(), ".tmp");
+
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE))
+            {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(key.length).put(key);
+                buffer.putInt(space.getIssueCount());
+                for (int i = 0; i < space.getIssueCount(); i++)
+                {
+                    buffer.putInt(space.getIssue(i).getNumber()).putDouble(space.getWeight(i));
+                    buffer.putInt(space.getValueCount(i));
+                    for (int v = 0; v < space.getValueCount(i); v++)
+                        buffer.putInt(names[i][v].length).put(names[i][v]).putDouble(space.getPosition(i, v))
+                                .putDouble(space.getEvaluation(i, v)).putDouble(space.getNormalizedEvaluation(i, v));
+                }
+
+                buffer.putInt((int) space.size());
+                buffer.slice().asIntBuffer().put(space.getRanking());
+                buffer.position(buffer.position() + (int) space.size() * Integer.BYTES);
+                buffer.slice().asDoubleBuffer().put(space.getRankedUtilities());
+                buffer.force();
+            }
+
+            try
+            {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            evict();
+        } catch (IOException | RuntimeException e)
+        {
+            System.err.println("Could not cache the bid space " + file + ": " + e);
+            try
+            {
+                if (temporary != null)
+                    Files.deleteIfExists(temporary);
+            } catch (IOException ignored)
+            {
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used cache files until the rest fit within {@link #MAX_BYTES}. A file that another
+     * session deletes first is skipped.
+     */
+    private static void evict() throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        HashMap<Path, FileTime> used = new HashMap<>();
+        HashMap<Path, Long> sizes = new HashMap<>();
+        long total = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(DIRECTORY, "*" + SUFFIX))
+        {
+            for (Path file : entries)
+                try
+                {
+                    used.put(file, Files.getLastModifiedTime(file));
+                    sizes.put(file, Files.size(file));
+                    files.add(file);
+                    total += sizes.get(file);
+                } catch (NoSuchFileException ignored)
+                {
+                }
+        }
+
+        files.sort(Comparator.comparing(used::get));
+        for (int i = 0; total > MAX_BYTES && i < files.size(); i++)
+        {
+            total -= sizes.get(files.get(i));
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    /**
+     * @return The values that {@code evaluator} can take, by name.
+     */
+    private static HashMap<String, Value> getKnownValues(Evaluator evaluator)
+    {
+        HashMap<String, Value> known = new HashMap<>();
+        if (evaluator instanceof EvaluatorDiscrete)
+            ((EvaluatorDiscrete) evaluator).getValues().forEach(value -> known.put(value.toString(), value));
+
+        return known;
+    }
+
+    private static String getString(ByteBuffer buffer)
+    {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
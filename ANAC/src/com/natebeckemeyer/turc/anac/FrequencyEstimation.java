@@ -18,6 +18,44 @@ class FrequencyEstimation implements Updater
 {
     private int interactionLength = 0;
 
+    /**
+     * The estimates of an issue before normalization, which only change for the value offered.
+     */
+    private static final class Counts
+    {
+        /**
+         * The table that the counts were last normalized into; any other table was replaced from outside.
+         */
+        private HashMap<Value, Double> table;
+        private final HashMap<Value, Double> counts;
+        private double total;
+
+        private Counts(HashMap<Value, Double> table)
+        {
+            this.table = table;
+            this.counts = new HashMap<>(table);
+            for (double count : counts.values())
+                total += count;
+        }
+    }
+
+    private final HashMap<Objective, Counts> counts = new HashMap<>();
+
+    /**
+     * @return The counts of {@code issue}, (re)started from its table if the table was replaced from outside.
+     */
+    private Counts getCounts(Objective issue, HashMap<Value, Double> table)
+    {
+        Counts issueCounts = counts.get(issue);
+        if (issueCounts == null || issueCounts.table != table)
+        {
+            issueCounts = new Counts(table);
+            counts.put(issue, issueCounts);
+        }
+
+        return issueCounts;
+    }
+
     @Override
     public void updateUtilities(Action offer, HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
     {
@@ -29,13 +67,51 @@ class FrequencyEstimation implements Updater
             {
                 HashMap<Value, Double> issueMap = utilities.get(entry).getValue();
                 Value number = bid.getValue(entry.getNumber());
+                Counts issueCounts = getCounts(entry, issueMap);
+
+                double sum = 0;
+                for (double estimate : issueMap.values())
+                    sum += estimate;
 
-                issueMap.put(number, issueMap.get(number) + 1. / (++interactionLength));
-                utilities.put(entry, new Pair<>(utilities.get(entry).getKey(), NateAgent.normalize(issueMap)));
+                // The counts are the table scaled by total / sum, so the increment is scaled likewise.
+                double increment = 1. / (++interactionLength);
+                double scaled = sum > 0 ? increment * issueCounts.total / sum : increment;
+                issueCounts.counts.merge(number, scaled, Double::sum);
+                issueCounts.total += scaled;
+
+                issueMap.put(number, issueMap.get(number) + increment);
+                issueCounts.table = NateAgent.normalize(issueMap);
+                utilities.put(entry, new Pair<>(utilities.get(entry).getKey(), issueCounts.table));
             }
         }
     }
 
+    @Override
+    public double getUnnormalized(Objective issue, Value value,
+                                  HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+        Counts issueCounts = counts.get(issue);
+        if (issueCounts == null || issueCounts.table != utilities.get(issue).getValue())
+            return Updater.super.getUnnormalized(issue, value, utilities);
+
+        return issueCounts.counts.getOrDefault(value, 0.);
+    }
+
+    /**
+     * Every offer advances the interaction length once per issue, so resuming advances it likewise.
+     */
+    @Override
+    public void resume(HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities, int observations)
+    {
+        interactionLength = observations * utilities.size();
+    }
+
+    @Override
+    public Updater newInstance()
+    {
+        return new FrequencyEstimation();
+    }
+
     @Override public String toString()
     {
         return "Frequency-based";
@@ -15,11 +15,8 @@ import negotiator.parties.AbstractNegotiationParty;
 import negotiator.session.TimeLineInfo;
 import negotiator.utility.AbstractUtilitySpace;
 import negotiator.utility.AdditiveUtilitySpace;
-import negotiator.utility.Evaluator;
-import negotiator.utility.EvaluatorDiscrete;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * @author Nate Beckemeyer
@@ -39,6 +36,53 @@ public class NateAgent extends AbstractNegotiationParty
      */
     private static final BidStrategy thisStrategy = BidStrategy.PRODUCT;
 
+    /**
+     * This flag determines whether the agent searches for its offers in anytime mode: instead of offering a random
+     * acceptable bid, it evaluates acceptable bids until the turn budget runs out and offers the best one found.
+     */
+    private static final boolean anytime = true;
+
+    /**
+     * The most candidates that a single search evaluates, however much budget is left.
+     */
+    private static final int maxCandidates = 256;
+
+    /**
+     * The most bids drawn when looking for a random bid of high enough utility value in a bid space too large to
+     * rank.
+     */
+    private static final int maxSamples = 4096;
+
+    /**
+     * This flag determines whether opponent models are persisted across sessions, so that opponents met before are
+     * modelled from what was learned about them.
+     */
+    private static final boolean persistOpponents = true;
+
+    /**
+     * The number of offers from an opponent between two saves of its model. Whatever is left unsaved is saved when
+     * the session ends (see {@link #endSession()}).
+     */
+    private static final int saveInterval = 10;
+
+    /**
+     * This flag determines whether the answers of the next turn are precomputed in the background while the other
+     * parties deliberate.
+     */
+    private static final boolean speculate = true;
+
+    /**
+     * This flag determines whether every session is recorded to a trace that can be replayed offline. Recording is
+     * off unless the system property {@code turc.anac.traces} is set to {@code true}.
+     */
+    private static final boolean recordTraces = Boolean.getBoolean("turc.anac.traces");
+
+    /**
+     * This flag determines whether opponents are modelled by {@link BayesianEstimation}, which learns issue weights,
+     * rather than by {@link FrequencyEstimation}.
+     */
+    private static final boolean learnIssueWeights = true;
+
     /**
      * The history of each partner's agent coded to its ID.
      */
@@ -80,7 +124,61 @@ public class NateAgent extends AbstractNegotiationParty
      */
     private double minUtilityRandom = 0.0;
 
-    private ArrayList<Bid> bidList;
+    /**
+     * The encoded bid space of the domain, ranked by this agent's utility.
+     */
+    private BidSpace bidSpace;
+
+    /**
+     * The compute budget of the current turn.
+     */
+    private final TurnBudget budget = new TurnBudget();
+
+    /**
+     * The welfare model of the last turn, which a turn that starts with its budget spent reuses rather than rebuilds.
+     */
+    private WelfareModel lastModel;
+
+    /**
+     * The code of the welfare-maximizing bid of {@link #lastModel}.
+     */
+    private long lastWelfareCode;
+
+    /**
+     * The latencies measured for each phase of the turns.
+     */
+    private final DecisionMetrics metrics = new DecisionMetrics();
+
+    /**
+     * The store of the opponent models of this domain.
+     */
+    private OpponentStore opponentStore;
+
+    /**
+     * The number of observations of each opponent that its stored model includes.
+     */
+    private final HashMap<AgentID, Integer> savedObservations = new HashMap<>();
+
+    /**
+     * The background precomputation of the answers of the next turn.
+     */
+    private final Speculator speculator = new Speculator();
+
+    /**
+     * The number of messages received, which identifies the state of the opponent models that a forecast is for.
+     */
+    private int messages;
+
+    /**
+     * The recorder of this session, or null if it is not recorded.
+     */
+    private TraceRecorder trace;
+
+    /**
+     * Whether this agent is replaying a trace, and so must not depend on the wall clock, on other threads or on
+     * earlier sessions.
+     */
+    private boolean deterministic;
 
     public int getNumberOfParties()
     {
@@ -92,40 +190,23 @@ public class NateAgent extends AbstractNegotiationParty
 
     private void initializeUtilities()
     {
-        HashMap<Objective, Evaluator> itemUtilities = new HashMap<>();
         mainUtilitySpace = ((AdditiveUtilitySpace) utilitySpace);
 
-        if (mainUtilitySpace != null && mainUtilitySpace.getNrOfEvaluators() > 0)
-            mainUtilitySpace.getEvaluators().forEach(entry -> itemUtilities.put(entry.getKey(), entry.getValue()));
-        else
+        if (mainUtilitySpace == null || mainUtilitySpace.getNrOfEvaluators() <= 0)
         {
             System.err.println("Cannot use " + getName() + getVersion() + " with non-linear utility space.");
             System.exit(16);
         }
 
-        for (Map.Entry<Objective, Evaluator> entryVal : itemUtilities.entrySet())
+        bidSpace = BidSpace.of(mainUtilitySpace);
+        if (isPersisting())
+            opponentStore = new OpponentStore(bidSpace);
+        for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
         {
-            Objective issue = entryVal.getKey();
-            Evaluator issueEval = entryVal.getValue();
-            utilities.put(issue, new Pair<>(issueEval.getWeight(), new HashMap<>()));
-
-            switch (issueEval.getType())
-            {
+            if (bidSpace.getValueCount(issue) == 0)
+                System.err.println(getName() + getVersion() + " requires discrete, real or integer evaluators.");
 
-                case DISCRETE:
-                    EvaluatorDiscrete evaluatorDiscrete = ((EvaluatorDiscrete) issueEval);
-                    evaluatorDiscrete.getValues().forEach(valueDiscrete -> utilities.get(issue).getValue()
-                            .put(valueDiscrete, evaluatorDiscrete.getValue(valueDiscrete).doubleValue()));
-                    break;
-
-                case REAL:
-                case INTEGER:
-                default:
-                    System.err.println(getName() + getVersion() + " requires exclusively discrete evaluators.");
-                    break;
-            }
-            for (HashMap.Entry<Objective, Pair<Double, HashMap<Value, Double>>> map : utilities.entrySet())
-                utilities.put(map.getKey(), new Pair<>(map.getValue().getKey(), normalize(map.getValue().getValue())));
+            utilities.put(bidSpace.getIssue(issue), getUtilityTable(issue));
         }
 
         if (verbose)
@@ -140,44 +221,92 @@ public class NateAgent extends AbstractNegotiationParty
             }
     }
 
+    /**
+     * @return The weight of {@code issue} paired with the normalized utility of each of its values in the bid space.
+     */
+    private Pair<Double, HashMap<Value, Double>> getUtilityTable(int issue)
+    {
+        HashMap<Value, Double> values = new HashMap<>();
+        for (int value = 0; value < bidSpace.getValueCount(issue); value++)
+            values.put(bidSpace.getValue(issue, value), bidSpace.getNormalizedEvaluation(issue, value));
+
+        return new Pair<>(bidSpace.getWeight(issue), values);
+    }
+
+    /**
+     * Adopts a refinement of the bid space, carrying the utilities and the opponent models over to it.
+     *
+     * @param refined The refined bid space.
+     * @return Whether anything was refined.
+     */
+    private boolean adoptBidSpace(BidSpace refined)
+    {
+        if (refined == bidSpace)
+            return false;
+
+        BidSpace previous = bidSpace;
+        bidSpace = refined;
+        for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
+        {
+            if (refined.getValueCount(issue) == previous.getValueCount(issue))
+                continue;
+
+            utilities.put(bidSpace.getIssue(issue), getUtilityTable(issue));
+            for (Opponent opponent : opponents.values())
+                opponent.refine(refined, issue);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return A snapshot of the social welfare as currently estimated.
+     */
+    private WelfareModel getWelfareModel()
+    {
+        return WelfareModel.of(bidSpace, opponents.values(), getNumberOfParties(), thisStrategy);
+    }
+
     /**
      * init is called when a next session starts with the same opponent.
-     * In the case of this agent, init calculates the utilities of all of the
+     * In the case of this agent, init calculates the utilities of all of the issues and loads the bid space, which is
+     * only enumerated when no earlier session has cached it.
      */
     public void init(AbstractUtilitySpace util, Deadline deadline, TimeLineInfo info, long randomSeed, AgentID id)
     {
         super.init(util, deadline, info, randomSeed, id);
         initializeUtilities();
-        initializeBidList();
+
+        if (recordTraces && !deterministic)
+            trace = TraceRecorder.open(bidSpace, randomSeed, info);
     }
 
-    private void initializeBidList()
+    /**
+     * Makes this agent choose its actions deterministically, for replaying traces; must be called before
+     * {@link #init}. The turn budget is lifted, and neither speculation, persistence nor recording take place.
+     */
+    void setDeterministic()
     {
-        bidList = new ArrayList<>();
-        bidList.addAll(performPermutations());
+        deterministic = true;
+        budget.setUnlimited();
     }
 
-    private List<Bid> performPermutations()
+    private boolean isSpeculating()
     {
-        return performPermutations(new HashMap<Integer, Value>(), new LinkedList<>(), 1);
+        return speculate && !deterministic;
     }
 
-    private List<Bid> performPermutations(HashMap<Integer, Value> progress, List<Bid> others, Integer issue)
+    private boolean isPersisting()
     {
-        if (issue > utilities.keySet().size())
-        {
-            others.add(new Bid(utilitySpace.getDomain(), progress));
-            return others;
-        }
-
-        EvaluatorDiscrete evaluator = (EvaluatorDiscrete) mainUtilitySpace.getEvaluator(issue);
-        for (Value valueDiscrete : evaluator.getValues())
-        {
-            progress.put(issue, valueDiscrete);
-            others = performPermutations(new HashMap<>(progress), others, issue + 1);
-        }
+        return persistOpponents && !deterministic;
+    }
 
-        return others;
+    /**
+     * @return The latencies measured for each phase of this agent's turns.
+     */
+    public DecisionMetrics getDecisionMetrics()
+    {
+        return metrics;
     }
 
     public String getVersion()
@@ -199,15 +328,77 @@ public class NateAgent extends AbstractNegotiationParty
      */
     private Bid getRandomBid() throws Exception
     {
-        List<Bid> plausibleBids = bidList.stream().filter(
-                bid -> getUtility(bid) > minUtilityRandom).collect(
-                Collectors.toList());
+        if (!bidSpace.isRanked())
+        {
+            long code = bidSpace.sampleAbove(minUtilityRandom, rand, maxSamples);
+            return code >= 0 ? bidSpace.decode(code) : utilitySpace.getMaxUtilityBid();
+        }
 
-        return plausibleBids.size() > 0 ? plausibleBids.get(rand.nextInt(plausibleBids.size())) : utilitySpace
+        int plausibleBids = bidSpace.countAbove(minUtilityRandom);
+
+        return plausibleBids > 0 ? bidSpace.decode(bidSpace.getRanked(rand.nextInt(plausibleBids))) : utilitySpace
                 .getMaxUtilityBid();
 
     }
 
+    /**
+     * In anytime mode, evaluates random bids of high enough utility value and keeps the one of greatest social
+     * welfare, until either the turn budget or {@link #maxCandidates} runs out. Otherwise, or if the bid space is too
+     * large to rank, this is {@link #getRandomBid()}.
+     *
+     * @param model The social welfare to maximize.
+     * @return The bid to offer.
+     * @throws Exception if the maximum utility bid cannot be computed.
+     */
+    private Bid searchBid(WelfareModel model) throws Exception
+    {
+        long phaseStart = System.nanoTime();
+        try
+        {
+            int plausibleBids = bidSpace.countAbove(minUtilityRandom);
+            if (!anytime || plausibleBids == 0)
+                return getRandomBid();
+
+            long best = bidSpace.getRanked(rand.nextInt(plausibleBids));
+            double bestWelfare = model.getWelfare(best);
+            for (int evaluated = 1; evaluated < Math.min(plausibleBids, maxCandidates); evaluated++)
+            {
+                if (budget.isExhausted())
+                {
+                    metrics.recordExhausted();
+                    break;
+                }
+
+                long candidate = bidSpace.getRanked(rand.nextInt(plausibleBids));
+                double welfare = model.getWelfare(candidate);
+                if (welfare > bestWelfare)
+                {
+                    best = candidate;
+                    bestWelfare = welfare;
+                }
+            }
+
+            return bidSpace.decode(best);
+        } finally
+        {
+            metrics.record(DecisionPhase.SEARCH, System.nanoTime() - phaseStart);
+        }
+    }
+
+    /**
+     * Offers the candidate of greatest social welfare that a forecast precomputed, as long as it is still of high
+     * enough utility value; otherwise, searches as usual.
+     */
+    private Bid searchBid(WelfareModel model, Speculator.Forecast forecast) throws Exception
+    {
+        if (forecast != null)
+            for (long candidate : forecast.getCandidates())
+                if (bidSpace.getUtility(candidate) > minUtilityRandom)
+                    return bidSpace.decode(candidate);
+
+        return searchBid(model);
+    }
+
     static <K> HashMap<K, Double> normalize(Map<K, Double> doubleMap)
     {
         double sum = 0;
@@ -245,178 +436,238 @@ public class NateAgent extends AbstractNegotiationParty
     /**
      * Calculates utility of a bid as a function of social welfare. Returns a number in the range [0,1].
      *
+     * @param model The social welfare to evaluate the bid in.
      * @return The best known utility for the current timestep.
      */
-    private double calculateActualUtility(Bid bid)
+    private double calculateActualUtility(WelfareModel model, Bid bid)
     {
-        // Get my utility
-        double util = getUtility(bid);
-        try
-        {
-            HashMap<Objective, Value> valueMapping = new HashMap<>();
-            mainUtilitySpace.getEvaluators().forEach(
-                    entry -> valueMapping.put(entry.getKey(), bid.getValue(entry.getKey().getNumber())));
-
-            for (Objective issue : valueMapping.keySet())
-                for (Opponent opponent : opponents.values())
-                {
-                    double opponentUtil = opponent.getEstimatedUtilities().get(issue).getValue().get(
-                            valueMapping.get(issue));
-                    switch (thisStrategy)
-                    {
-                        case PRODUCT:
-                            util *= opponentUtil;
-                            break;
-
-                        case SUM:
-                            util += opponentUtil;
-                            break;
-                    }
-                }
-        } catch (NullPointerException e)
+        long code = bidSpace.encode(bid);
+        if (code < 0)
         {
             System.err.println("Could not get utility at time " + timeline.getTime());
             return 0;
         }
 
-        // Average social welfare
-        switch (thisStrategy)
+        return model.getWelfare(code, getUtility(bid));
+    }
+
+    /**
+     * @param upperUtility The social welfare of the welfare-maximizing bid.
+     */
+    private double getUpperDealValue(double upperUtility)
+    {
+        double probability = getDealProbability();
+
+        return upperUtility * probability;
+    }
+
+    /**
+     * @return Whether the timeline leaves no room for a next deal.
+     */
+    private boolean isNextDealClosed()
+    {
+        switch (timeline.getType())
         {
-            case SUM:
-                return util / getNumberOfParties();
+            case Time:
+                return timeline.getCurrentTime() >= .99;
 
-            case PRODUCT:
-                double newUtil = Math.pow(util, 1. / getNumberOfParties());
-                return newUtil;
+            case Rounds:
+                return ((DiscreteTimeline) timeline).getOwnRoundsLeft() <= 0;
 
             default:
-                System.err.printf("%s could not handle strategy of type %s.%n", getName() + getVersion(), thisStrategy);
-                return 0;
+                System.err.println(
+                        getName() + getVersion() + " is not compatible with a timeline of type " + timeline.getType());
+                System.exit(16);
+                return true;
         }
     }
 
-    private HashMap<Objective, Value> maximizeSocialWelfare()
+    /**
+     * @return The decay of the upper bound of the next deal.
+     */
+    private double getNextDealDecay()
     {
+        return getDecay((timeline.getCurrentTime() + 1) / timeline.getTotalTime());
+    }
 
-        HashMap<Objective, Value> mapping = new HashMap<>();
-
-        for (Objective issue : utilities.keySet())
-        {
-            Value argmax = null;
-            double soWel = 0;
+    /**
+     * @param upperUtility The social welfare of the welfare-maximizing bid.
+     */
+    private double getUpperNextDeal(double upperUtility)
+    {
+        if (isNextDealClosed())
+            return 0;
 
-            for (Value current : utilities.get(issue).getValue().keySet())
-            {
-                // My utility for this value of this issue.
-                double welfare = utilities.get(issue).getValue().get(current);
+        return utilitySpace.getDiscountFactor() * (upperUtility + getNextDealDecay());
+    }
 
-                for (Opponent opponent : opponents.values())
-                {
-                    double opponentUtil = opponent.getEstimatedUtilities().get(issue).getValue().getOrDefault(current,
-                            0.);
-                    switch (thisStrategy)
-                    {
-                        case PRODUCT:
-                            welfare *= opponentUtil;
-                            break;
-
-                        case SUM:
-                            welfare += opponentUtil;
-                            break;
-                    }
-                }
+    @Override
+    public void receiveMessage(AgentID sender, Action arguments)
+    {
+        if (trace != null)
+            trace.receive(timeline, sender, arguments);
 
-                if (welfare > soWel || argmax == null)
-                {
-                    argmax = current;
-                    soWel = welfare;
-                }
-            }
+        receive(sender, arguments, arguments instanceof Inform ? (int) ((Inform) arguments).getValue() : 0);
+    }
 
-            mapping.put(issue, argmax);
+    /**
+     * Saves what this session learned and closes its trace. This agent calls it after its last turn; calling it again
+     * does no harm.
+     */
+    public void endSession()
+    {
+        flush();
+        if (trace != null)
+        {
+            trace.close();
+            trace = null;
         }
-
-        return mapping;
     }
 
-    private double getUpperDealValue()
+    /**
+     * Saves the models of the opponents that learned something since they were last saved, and writes out the trace
+     * so far.
+     */
+    private void flush()
     {
-        double probability = getDealProbability();
-        double upperUtility = calculateActualUtility(maximizeSocialWelfareBid());
+        if (trace != null)
+            trace.flush();
+        if (!isPersisting())
+            return;
 
-        return upperUtility * probability;
+        for (Opponent opponent : opponents.values())
+            if (opponent.getObservations() != savedObservations.getOrDefault(opponent.getID(), 0))
+                save(opponent);
     }
 
-    private double getUpperNextDeal()
+    private void save(Opponent opponent)
     {
-        double difference = getDecay((timeline.getCurrentTime() + 1) / timeline.getTotalTime());
-
-        double upperBoundValue = calculateActualUtility(maximizeSocialWelfareBid()) + difference;
-        double discount = utilitySpace.getDiscountFactor();
+        opponentStore.save(opponent);
+        savedObservations.put(opponent.getID(), opponent.getObservations());
+    }
 
-        switch (timeline.getType())
+    /**
+     * Takes in a message.
+     *
+     * @param sender    The sender of the message, or null if there is none.
+     * @param arguments The action of the sender; null for actions that only matter as the sender's latest.
+     * @param parties   The number of parties that the message announces, or 0 if it announces none.
+     */
+    void receive(AgentID sender, Action arguments, int parties)
+    {
+        messages++;
+        try
         {
-            case Time:
-                if (timeline.getCurrentTime() >= .99)
-                    return 0;
-                break;
+            if (parties > 0)
+                this.numberOfParties = parties;
+            if (sender == null)
+                return;
 
-            case Rounds:
-                if (((DiscreteTimeline) timeline).getOwnRoundsLeft() <= 0)
-                    return 0;
-                break;
+            lastAgent = sender;
 
-            default:
-                System.err.println(
-                        getName() + getVersion() + " is not compatible with a timeline of type " + timeline.getType());
-                System.exit(16);
-                return 0;
-        }
+            Opponent opponent = opponents.computeIfAbsent(sender, this::meetOpponent);
+            opponent.addAction(arguments);
 
-        return discount * upperBoundValue;
+            if (isPersisting() && arguments instanceof Offer && opponent.getObservations() % saveInterval == 0)
+                save(opponent);
+        } finally
+        {
+            if (isSpeculating() && bidSpace != null)
+                requestForecast();
+        }
     }
 
-    private Bid maximizeSocialWelfareBid()
+    /**
+     * Hands the speculator a snapshot of the negotiation as it stands after the message just received.
+     */
+    private void requestForecast()
     {
-        HashMap<Objective, Value> soWelMap = maximizeSocialWelfare();
+        Bid partnerBid = getPartnerBid();
+        speculator.request(new Speculator.Request(messages, getWelfareModel(),
+                partnerBid == null ? -1 : bidSpace.encode(partnerBid), partnerBid == null ? 0 : getUtility(partnerBid),
+                isNextDealClosed(), utilitySpace.getDiscountFactor(), getNextDealDecay(), true));
+    }
 
-        HashMap<Integer, Value> bidMap = new HashMap<>();
-        soWelMap.forEach((objective, value) -> bidMap.put(objective.getNumber(), value));
+    /**
+     * @return The last offer of the agent that this agent interacted with most recently, or null if its last action
+     * was not an offer.
+     */
+    private Bid getPartnerBid()
+    {
+        if (lastAgent != null && opponents.get(lastAgent).getLastAction() != null &&
+                opponents.get(lastAgent).getLastAction() instanceof Offer)
+            return ((Offer) opponents.get(lastAgent).getLastAction()).getBid();
 
-        return new Bid(utilitySpace.getDomain(), bidMap);
+        return null;
     }
 
-    @Override
-    public void receiveMessage(AgentID sender, Action arguments)
+    /**
+     * @return The model of an opponent met for the first time in this session, warm-started from the model
+     * persisted by earlier sessions if there is one.
+     */
+    private Opponent meetOpponent(AgentID id)
     {
-        if (arguments instanceof Inform)
-            this.numberOfParties = (int) ((Inform) arguments).getValue();
-        if (sender == null)
-            return;
-
-        lastAgent = sender;
+        Opponent opponent = new Opponent(id, bidSpace, new ArrayList<>(),
+                learnIssueWeights ? new BayesianEstimation() : new FrequencyEstimation());
+        if (isPersisting())
+        {
+            opponentStore.restore(opponent);
+            savedObservations.put(id, opponent.getObservations());
+        }
 
-        opponents.putIfAbsent(sender, new Opponent(sender, mainUtilitySpace));
-        opponents.get(sender).addAction(arguments);
+        return opponent;
     }
 
     @Override
     public Action chooseAction(List<Class<? extends Action>> list)
     {
-        double EUDeal = getUpperDealValue();
-        double EUNeal = getUpperNextDeal();
-        minUtilityRandom = EUNeal;
+        budget.startTurn(timeline);
+        long turnStart = System.nanoTime();
+        boolean lastTurn = isLastTurn();
+        Action action = null;
+        try
+        {
+            action = lastTurn ? new Accept() : decide();
+            return action;
+        } finally
+        {
+            metrics.record(DecisionPhase.TURN, System.nanoTime() - turnStart);
+            if (trace != null)
+                trace.choose(timeline, action);
+            if (lastTurn)
+                endSession();
+        }
+    }
 
+    /**
+     * @return Whether the deadline leaves this agent no turn after this one.
+     */
+    private boolean isLastTurn()
+    {
         switch (timeline.getType())
         {
             case Time:
-                if (timeline.getTime() >= .99)
-                    return new Accept();
-                break;
+                return timeline.getTime() >= .99;
+
+            case Rounds:
+                return ((DiscreteTimeline) timeline).getOwnRoundsLeft() <= 0;
 
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Decides upon the action of a turn before the last. The deadline is checked before anything is estimated (see
+     * {@link #chooseAction(List)}), so that a slow estimate cannot make the agent miss it; without a forecast, a turn
+     * that has already spent its budget reuses the welfare model and bid of the last turn.
+     */
+    private Action decide()
+    {
+        switch (timeline.getType())
+        {
+            case Time:
             case Rounds:
-                if (((DiscreteTimeline) timeline).getOwnRoundsLeft() <= 0)
-                    return new Accept();
                 break;
 
             default:
@@ -426,15 +677,58 @@ public class NateAgent extends AbstractNegotiationParty
                 return new Accept();
         }
 
+        long phaseStart = System.nanoTime();
+        Speculator.Forecast forecast = isSpeculating() ? speculator.getForecast(messages, bidSpace) : null;
+        if (forecast != null && forecast.getRefined() != null)
+        {
+            adoptBidSpace(forecast.getRefined());
+            forecast = null;
+        }
+
+        WelfareModel model;
+        long welfareCode;
+        double upperUtility;
+        if (forecast != null)
+        {
+            model = forecast.getModel();
+            welfareCode = forecast.getWelfareCode();
+            upperUtility = forecast.getUpperUtility();
+        } else if (budget.isExhausted() && lastModel != null && lastModel.getBidSpace() == bidSpace)
+        {
+            model = lastModel;
+            welfareCode = lastWelfareCode;
+            upperUtility = model.getWelfare(welfareCode);
+        } else
+        {
+            model = getWelfareModel();
+            welfareCode = model.getWelfareMaximizingCode();
+            if (!budget.isExhausted() && adoptBidSpace(bidSpace.refineAround(welfareCode)))
+            {
+                model = getWelfareModel();
+                welfareCode = model.getWelfareMaximizingCode();
+            }
+            upperUtility = model.getWelfare(welfareCode);
+        }
+        lastModel = model;
+        lastWelfareCode = welfareCode;
+
+        Bid welfareBid = bidSpace.decode(welfareCode);
+        double EUDeal = getUpperDealValue(upperUtility);
+        double EUNeal = getUpperNextDeal(upperUtility);
+        minUtilityRandom = EUNeal;
+        metrics.record(DecisionPhase.ESTIMATE, System.nanoTime() - phaseStart);
+
         try
         {
-            if (lastAgent != null && opponents.get(lastAgent).getLastAction() != null &&
-                    opponents.get(lastAgent).getLastAction() instanceof Offer)
+            Bid partnerBid = getPartnerBid();
+            if (partnerBid != null)
             {
-                Bid partnerBid = ((Offer) opponents.get(lastAgent).getLastAction()).getBid();
-                double offeredUtilFromOpponent = calculateActualUtility(partnerBid);
+                phaseStart = System.nanoTime();
+                double offeredUtilFromOpponent = forecast != null && !Double.isNaN(forecast.getPartnerWelfare()) ?
+                        forecast.getPartnerWelfare() : calculateActualUtility(model, partnerBid);
+                metrics.record(DecisionPhase.RESPOND, System.nanoTime() - phaseStart);
 
-                return (offeredUtilFromOpponent > EUNeal) ? new Accept() : new Offer(getRandomBid());
+                return (offeredUtilFromOpponent > EUNeal) ? new Accept() : new Offer(searchBid(model, forecast));
             }
 
         } catch (Exception e)
@@ -444,7 +738,7 @@ public class NateAgent extends AbstractNegotiationParty
 
         try
         {
-            return new Offer((EUDeal > EUNeal) ? maximizeSocialWelfareBid() : getRandomBid());
+            return new Offer((EUDeal > EUNeal) ? welfareBid : searchBid(model, forecast));
         } catch (Exception e)
         {
             return new Accept();
@@ -2,16 +2,14 @@ package com.natebeckemeyer.turc.anac;
 
 import javafx.util.Pair;
 import negotiator.AgentID;
+import negotiator.Bid;
 import negotiator.actions.Action;
+import negotiator.actions.Offer;
 import negotiator.issue.Objective;
 import negotiator.issue.Value;
-import negotiator.utility.AdditiveUtilitySpace;
-import negotiator.utility.Evaluator;
-import negotiator.utility.EvaluatorDiscrete;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Created for TURC by @author Nate Beckemeyer on 2016-06-30.
@@ -47,14 +45,19 @@ class Opponent
     private final HashMap<Objective, Pair<Double, HashMap<Value, Double>>> estimatedUtilities = new HashMap<>();
 
     /**
-     * The actual utilitySpace of the agent.
+     * The bid space over which the utilities are estimated.
      */
-    private final AdditiveUtilitySpace utilitySpace;
+    private BidSpace bidSpace;
 
     /**
      * The strategy used to estimate the utilities of "Opponent."
      */
-    private final Updater estimationStrategy = new FrequencyEstimation();
+    private final Updater estimationStrategy;
+
+    /**
+     * The number of offers that the estimated utilities were learned from, including those of earlier sessions.
+     */
+    private int observations;
 
     /**
      * @return The ID of the agent.
@@ -64,6 +67,22 @@ class Opponent
         return id;
     }
 
+    /**
+     * @return The bid space over which the utilities are estimated.
+     */
+    BidSpace getBidSpace()
+    {
+        return bidSpace;
+    }
+
+    /**
+     * @return The number of offers that the estimated utilities were learned from.
+     */
+    int getObservations()
+    {
+        return observations;
+    }
+
     /**
      * @return All of the actions performed by this opponent.
      */
@@ -75,37 +94,53 @@ class Opponent
     /**
      * Construct a new agent opponent with an empty history.
      *
-     * @param id The ID of the new agent.
+     * @param id       The ID of the new agent.
+     * @param bidSpace The bid space of the domain.
      */
-    Opponent(AgentID id, AdditiveUtilitySpace utilitySpace)
+    Opponent(AgentID id, BidSpace bidSpace)
     {
-        this(id, utilitySpace, new ArrayList<>());
+        this(id, bidSpace, new ArrayList<>());
     }
 
     /**
      * Construct a new agent opponent with a copy of {@code possibleHistory}
      *
      * @param id              The ID of this agent
-     * @param utilitySpace    The utilitySpace of the utility space
+     * @param bidSpace        The bid space of the domain
      * @param possibleHistory The history to copy.
      */
-    Opponent(AgentID id, AdditiveUtilitySpace utilitySpace, ArrayList<Action> possibleHistory)
+    Opponent(AgentID id, BidSpace bidSpace, ArrayList<Action> possibleHistory)
+    {
+        this(id, bidSpace, possibleHistory, new FrequencyEstimation());
+    }
+
+    /**
+     * Construct a new agent opponent with a copy of {@code possibleHistory}, estimated by {@code estimationStrategy}
+     *
+     * @param id                 The ID of this agent
+     * @param bidSpace           The bid space of the domain
+     * @param possibleHistory    The history to copy.
+     * @param estimationStrategy The strategy used to estimate the utilities of the agent.
+     */
+    Opponent(AgentID id, BidSpace bidSpace, ArrayList<Action> possibleHistory, Updater estimationStrategy)
     {
         this.id = id;
-        this.utilitySpace = utilitySpace;
+        this.bidSpace = bidSpace;
         this.history = new ArrayList<>(possibleHistory);
+        this.estimationStrategy = estimationStrategy;
 
         initializeEstimatedUtilities();
     }
 
     /**
-     * The copy constructor for opponents.
+     * The copy constructor for opponents. The copy is estimated from its history alone, by a new strategy of the same
+     * kind as that of {@code opponent}.
      *
      * @param opponent The opponent's fields to copy.
      */
     Opponent(Opponent opponent)
     {
-        this(opponent.id, opponent.utilitySpace, opponent.history);
+        this(opponent.id, opponent.bidSpace, opponent.history, opponent.estimationStrategy.newInstance());
     }
 
     /**
@@ -116,9 +151,77 @@ class Opponent
     public void addAction(Action offer)
     {
         history.add(offer);
+        if (offer instanceof Offer)
+        {
+            observations++;
+            Bid snapped = bidSpace.snap(((Offer) offer).getBid());
+            if (snapped != ((Offer) offer).getBid())
+                offer = new Offer(snapped);
+        }
         estimationStrategy.updateUtilities(offer, estimatedUtilities);
     }
 
+    /**
+     * Resumes the estimation from utilities learned in earlier sessions.
+     *
+     * @param restored     The estimated utilities to start from, over the current bid space.
+     * @param observations The number of offers that they were learned from.
+     */
+    void resume(HashMap<Objective, Pair<Double, HashMap<Value, Double>>> restored, int observations)
+    {
+        estimatedUtilities.putAll(restored);
+        this.observations = observations;
+        estimationStrategy.resume(estimatedUtilities, observations);
+    }
+
+    /**
+     * Carries the estimates of {@code issue} over to a bid space whose grid for that issue was refined. Each new grid
+     * value is estimated as the mean of the estimates of the grid values on either side of it.
+     *
+     * @param refined The refined bid space.
+     * @param issue   The index of the refined issue.
+     */
+    void refine(BidSpace refined, int issue)
+    {
+        estimationStrategy.publish(estimatedUtilities);
+        Objective objective = refined.getIssue(issue);
+        HashMap<Value, Double> old = estimatedUtilities.get(objective).getValue();
+        HashMap<Value, Double> estimates = new HashMap<>();
+
+        for (int v = 0, below = -1; v < refined.getValueCount(issue); v++)
+        {
+            Value value = refined.getValue(issue, v);
+            if (old.containsKey(value))
+            {
+                estimates.put(value, old.get(value));
+                below = v;
+                continue;
+            }
+
+            int above = v + 1;
+            while (above < refined.getValueCount(issue) && !old.containsKey(refined.getValue(issue, above)))
+                above++;
+
+            double sum = 0;
+            int known = 0;
+            if (below >= 0)
+            {
+                sum += old.get(refined.getValue(issue, below));
+                known++;
+            }
+            if (above < refined.getValueCount(issue))
+            {
+                sum += old.get(refined.getValue(issue, above));
+                known++;
+            }
+            estimates.put(value, known > 0 ? sum / known : 1.);
+        }
+
+        bidSpace = refined;
+        estimatedUtilities.put(objective, new Pair<>(estimatedUtilities.get(objective).getKey(),
+                NateAgent.normalize(estimates)));
+    }
+
     /**
      * @return The last action performed by this opponent.
      */
@@ -132,22 +235,48 @@ class Opponent
      */
     public HashMap<Objective, Pair<Double, HashMap<Value, Double>>> getEstimatedUtilities()
     {
+        estimationStrategy.publish(estimatedUtilities);
         return estimatedUtilities;
     }
 
     /**
-     * Populates the estimated utilities field, with 0 for everything.
+     * @return The estimated utility of {@code value} of {@code issue}, without publishing the estimates of every
+     * issue as {@link #getEstimatedUtilities()} does.
+     */
+    double getEstimate(Objective issue, Value value)
+    {
+        return estimationStrategy.getEstimate(issue, value, estimatedUtilities);
+    }
+
+    /**
+     * @return The estimate of {@code value} of {@code issue} up to a factor common to every value of the issue, which
+     * unlike the estimated utilities only changes for the values that an offer bears on.
+     */
+    double getUnnormalizedEstimate(Objective issue, Value value)
+    {
+        return estimationStrategy.getUnnormalized(issue, value, estimatedUtilities);
+    }
+
+    /**
+     * @return The estimated weight of {@code issue}, without publishing the estimates of every issue.
+     */
+    double getWeight(Objective issue)
+    {
+        return estimationStrategy.getWeight(issue, estimatedUtilities);
+    }
+
+    /**
+     * Populates the estimated utilities field, with the same utility for every value of the bid space.
      */
     private void initializeEstimatedUtilities()
     {
-        for (Map.Entry<Objective, Evaluator> entry : utilitySpace.getEvaluators())
+        for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
         {
-            Objective key = entry.getKey();
-            EvaluatorDiscrete evaluatorDiscrete = (EvaluatorDiscrete) entry.getValue();
+            Objective key = bidSpace.getIssue(issue);
 
-            estimatedUtilities.put(key, new Pair<>(1. / utilitySpace.getEvaluators().size(), new HashMap<>()));
-            evaluatorDiscrete.getValues().forEach(discreteVal -> estimatedUtilities.get(key).getValue()
-                    .put(discreteVal, 1.));
+            estimatedUtilities.put(key, new Pair<>(1. / bidSpace.getIssueCount(), new HashMap<>()));
+            for (int value = 0; value < bidSpace.getValueCount(issue); value++)
+                estimatedUtilities.get(key).getValue().put(bidSpace.getValue(issue, value), 1.);
         }
 
 
@@ -0,0 +1,377 @@
+package com.natebeckemeyer.turc.anac;
+
+import javafx.util.Pair;
+import negotiator.AgentID;
+import negotiator.issue.Objective;
+import negotiator.issue.Value;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Persists the estimated utilities of opponents across sessions, one file per opponent identity and domain, so that
+ * an opponent met before is modelled from what was learned about it instead of from uniform estimates. A domain is
+ * identified by its issues and their values only, so that the model of an opponent is shared by every preference
+ * profile of this agent in the domain.
+ * <p>
+ * The models of the domain are read in the background as soon as the store is created, so that first contact with an
+ * opponent does not wait on the disk; writes are handed to the same thread, and a write that is still pending when a
+ * newer snapshot of the same opponent arrives is replaced by it. Writes still pending when the
+ * virtual machine shuts down are finished by a shutdown hook. The layout of a file is:
+ * <pre>
+ * {@code File  --> MAGIC VERSION Identity Observations IssueCount Issue*}
+ * {@code Issue --> Number Weight ValueCount (Name Estimate)*}
+ * </pre>
+ */
+final class OpponentStore
+{
+    /**
+     * The directory holding a directory of opponent files per domain.
+     */
+    static final Path DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "turc-anac", "opponents");
+
+    private static final int MAGIC = 0x54555243;
+
+    private static final int VERSION = 1;
+
+    /**
+     * The thread reading and writing the files, shared by every store of the virtual machine. Reads queue behind the
+     * writes handed over before them, and so see the latest models.
+     */
+    private static final ExecutorService writer = Executors.newSingleThreadExecutor(runnable ->
+    {
+        Thread thread = new Thread(runnable, "OpponentStore writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The snapshots waiting to be written, by file.
+     */
+    private static final ConcurrentHashMap<Path, Model> pending = new ConcurrentHashMap<>();
+
+    static
+    {
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+        {
+            for (Path file : pending.keySet())
+                write(file, pending.remove(file));
+        }, "OpponentStore flush"));
+    }
+
+    /**
+     * The directory of the domain of this store.
+     */
+    private final Path directory;
+
+    /**
+     * The models of the domain as they were when this store was created, by file.
+     */
+    private final Future<HashMap<Path, Model>> preloaded;
+
+    /**
+     * A stored opponent model, with values identified by name so that it outlives the session's value objects.
+     */
+    private static final class Model
+    {
+        private final String identity;
+        private final int observations;
+        private final int[] issues;
+        private final double[] weights;
+        private final String[][] names;
+        private final double[][] estimates;
+
+        private Model(String identity, int observations, int[] issues, double[] weights, String[][] names,
+                      double[][] estimates)
+        {
+            this.identity = identity;
+            this.observations = observations;
+            this.issues = issues;
+            this.weights = weights;
+            this.names = names;
+            this.estimates = estimates;
+        }
+    }
+
+    /**
+     * @param bidSpace The bid space of the domain, before any refinement.
+     */
+    OpponentStore(BidSpace bidSpace)
+    {
+        this.directory = DIRECTORY.resolve(getDomainKey(bidSpace));
+        this.preloaded = writer.submit(() -> readAll(directory));
+    }
+
+    /**
+     * @return A hash of the issues of the domain of {@code bidSpace} and of their values, which unlike {@link
+     * BidSpace#getKey()} leaves out this agent's preferences.
+     */
+    static String getDomainKey(BidSpace bidSpace)
+    {
+        StringBuilder description = new StringBuilder();
+        for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
+        {
+            description.append(bidSpace.getIssue(issue).getNumber()).append('\u0000')
+                    .append(bidSpace.getIssue(issue).getName()).append('\u0000');
+            for (int value = 0; value < bidSpace.getValueCount(issue); value++)
+                description.append(bidSpace.getValue(issue, value)).append('\u0000');
+            description.append('\n');
+        }
+
+        return hash(description.toString());
+    }
+
+    /**
+     * @return The identity of the agent behind {@code id}, which is its ID without the instance number that the
+     * negotiation environment appends.
+     */
+    static String getIdentity(AgentID id)
+    {
+        return id.toString().replaceFirst("@\\d+$", "");
+    }
+
+    private Path getFile(String identity)
+    {
+        return directory.resolve(hash(identity) + ".bin");
+    }
+
+    private static String hash(String text)
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest)
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e)
+        {
+            return Integer.toHexString(text.hashCode());
+        }
+    }
+
+    /**
+     * Warm-starts {@code opponent} from its stored model, if there is one. Values of the bid space that the model
+     * does not know start from the mean of the stored estimates of their issue.
+     *
+     * @param opponent The opponent just met.
+     */
+    void restore(Opponent opponent)
+    {
+        String identity = getIdentity(opponent.getID());
+        Path file = getFile(identity);
+        Model model = pending.get(file);
+        if (model == null)
+            model = getPreloaded(file);
+        if (model == null || !model.identity.equals(identity))
+            return;
+
+        BidSpace bidSpace = opponent.getBidSpace();
+        HashMap<Integer, Integer> stored = new HashMap<>();
+        for (int i = 0; i < model.issues.length; i++)
+            stored.put(model.issues[i], i);
+
+        HashMap<Objective, Pair<Double, HashMap<Value, Double>>> restored = new HashMap<>();
+        for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
+        {
+            Objective objective = bidSpace.getIssue(issue);
+            Integer i = stored.get(objective.getNumber());
+            if (i == null)
+                return;
+
+            HashMap<String, Double> byName = new HashMap<>();
+            double mean = 0;
+            for (int v = 0; v < model.names[i].length; v++)
+            {
+                byName.put(model.names[i][v], model.estimates[i][v]);
+                mean += model.estimates[i][v] / model.names[i].length;
+            }
+
+            HashMap<Value, Double> estimates = new HashMap<>();
+            for (int v = 0; v < bidSpace.getValueCount(issue); v++)
+                estimates.put(bidSpace.getValue(issue, v),
+                        byName.getOrDefault(bidSpace.getValue(issue, v).toString(), mean));
+            restored.put(objective, new Pair<>(model.weights[i], NateAgent.normalize(estimates)));
+        }
+
+        opponent.resume(restored, model.observations);
+    }
+
+    /**
+     * Snapshots the estimates of {@code opponent} and writes them in the background.
+     *
+     * @param opponent The opponent to save.
+     */
+    void save(Opponent opponent)
+    {
+        BidSpace bidSpace = opponent.getBidSpace();
+        HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities = opponent.getEstimatedUtilities();
+
+        int issueCount = bidSpace.getIssueCount();
+        int[] issues = new int[issueCount];
+        double[] weights = new double[issueCount];
+        String[][] names = new String[issueCount][];
+        double[][] estimates = new double[issueCount][];
+        for (int issue = 0; issue < issueCount; issue++)
+        {
+            Pair<Double, HashMap<Value, Double>> entry = utilities.get(bidSpace.getIssue(issue));
+            issues[issue] = bidSpace.getIssue(issue).getNumber();
+            weights[issue] = entry.getKey();
+            names[issue] = new String[bidSpace.getValueCount(issue)];
+            estimates[issue] = new double[bidSpace.getValueCount(issue)];
+            for (int v = 0; v < bidSpace.getValueCount(issue); v++)
+            {
+                names[issue][v] = bidSpace.getValue(issue, v).toString();
+                estimates[issue][v] = entry.getValue().getOrDefault(bidSpace.getValue(issue, v), 0.);
+            }
+        }
+
+        String identity = getIdentity(opponent.getID());
+        Path file = getFile(identity);
+        Model model = new Model(identity, opponent.getObservations(), issues, weights, names, estimates);
+        if (pending.put(file, model) == null)
+            writer.execute(() -> write(file, pending.remove(file)));
+    }
+
+    /**
+     * @return The model of {@code file} read when this store was created, waiting for the read to finish if need be,
+     * or null if there was none.
+     */
+    private Model getPreloaded(Path file)
+    {
+        try
+        {
+            return preloaded.get().get(file);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            return read(file);
+        } catch (ExecutionException e)
+        {
+            return read(file);
+        }
+    }
+
+    /**
+     * @return The model of every file of {@code directory}, by file.
+     */
+    private static HashMap<Path, Model> readAll(Path directory)
+    {
+        HashMap<Path, Model> models = new HashMap<>();
+        if (!Files.isDirectory(directory))
+            return models;
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.bin"))
+        {
+            for (Path file : files)
+            {
+                Model model = read(file);
+                if (model != null)
+                    models.put(file, model);
+            }
+        } catch (IOException | RuntimeException e)
+        {
+            System.err.println("Could not list the opponent models " + directory + ": " + e);
+        }
+
+        return models;
+    }
+
+    private static Model read(Path file)
+    {
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+
+            String identity = in.readUTF();
+            int observations = in.readInt();
+            int issueCount = in.readInt();
+            int[] issues = new int[issueCount];
+            double[] weights = new double[issueCount];
+            String[][] names = new String[issueCount][];
+            double[][] estimates = new double[issueCount][];
+            for (int i = 0; i < issueCount; i++)
+            {
+                issues[i] = in.readInt();
+                weights[i] = in.readDouble();
+                names[i] = new String[in.readInt()];
+                estimates[i] = new double[names[i].length];
+                for (int v = 0; v < names[i].length; v++)
+                {
+                    names[i][v] = in.readUTF();
+                    estimates[i][v] = in.readDouble();
+                }
+            }
+
+            return new Model(identity, observations, issues, weights, names, estimates);
+        } catch (IOException | RuntimeException e)
+        {
+            System.err.println("Could not read the opponent model " + file + ": " + e);
+            return null;
+        }
+    }
+
+    private static void write(Path file, Model model)
+    {
+        if (model == null)
+            return;
+
+        Path temporary = null;
+        try
+        {
+            Files.createDirectories(file.getParent());
+            temporary = Files.createTempFile(file.getParent(), "opponent", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(model.identity);
+                out.writeInt(model.observations);
+                out.writeInt(model.issues.length);
+                for (int i = 0; i < model.issues.length; i++)
+                {
+                    out.writeInt(model.issues[i]);
+                    out.writeDouble(model.weights[i]);
+                    out.writeInt(model.names[i].length);
+                    for (int v = 0; v < model.names[i].length; v++)
+                    {
+                        out.writeUTF(model.names[i][v]);
+                        out.writeDouble(model.estimates[i][v]);
+                    }
+                }
+            }
+
+            try
+            {
+                Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e)
+            {
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e)
+        {
+            System.err.println("Could not write the opponent model " + file + ": " + e);
+            try
+            {
+                if (temporary != null)
+                    Files.deleteIfExists(temporary);
+            } catch (IOException ignored)
+            {
+            }
+        }
+    }
+}
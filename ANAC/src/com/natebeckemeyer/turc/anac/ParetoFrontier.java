@@ -0,0 +1,321 @@
+package com.natebeckemeyer.turc.anac;
+
+import java.util.Arrays;
+
+/**
+ * The Pareto frontier of a bid space between this agent's utility and the opponents' contribution to the social
+ * welfare (see {@link WelfareModel#getOpponentScores()}). Since the ranking of the bid space orders the bids by
+ * descending own utility, a bid is Pareto-optimal exactly when no bid ranked before it has as high an opponent score;
+ * a tree of the argmaxes of the opponent scores over ranges of the ranking answers "the best bid with own utility
+ * above x" in logarithmic time.
+ * <p>
+ * The contributions of all the opponents are summed into one score, so the frontier is two-dimensional: it trades
+ * this agent's utility against the opponents as a whole, and a bid that is Pareto-optimal among all the parties may
+ * still be dominated here when it favours one opponent at the expense of another.
+ * <p>
+ * When the opponent models learn, only the bids holding a value whose score changed are rescored, through an index of
+ * the ranks holding each value, and only the nodes above them are recomputed; since the scores of a product come from
+ * unnormalized estimates, an offer changes the score of one value per issue and opponent. If the changed values are
+ * held by as many bids as there are, or if the index would take more than {@link #INDEX_LIMIT} entries, the tree is
+ * rebuilt instead.
+ * <p>
+ * The scores weigh the issues by the weights that the opponent models had when the frontier last adopted them, and
+ * the frontier adopts the current weights only once one of them has drifted by more than {@link #WEIGHT_TOLERANCE}:
+ * every weight moves with every offer, and adopting them each time would rescore every bid. The bids taken from the
+ * frontier are rescored exactly by the caller.
+ */
+final class ParetoFrontier
+{
+    /**
+     * The relative drift of an issue weight beyond which the frontier adopts the current weights.
+     */
+    private static final double WEIGHT_TOLERANCE = 0.01;
+
+    /**
+     * The greatest number of ranks that the index of the holders of each value may take, counted over every issue;
+     * it takes one int per bid and issue.
+     */
+    private static final long INDEX_LIMIT = 1 << 24;
+
+    private final BidSpace bidSpace;
+
+    /**
+     * The issue weights that the scores were computed with, by opponent and issue.
+     */
+    private double[][] weights;
+
+    /**
+     * The opponent score of each value of each issue that the tree currently reflects.
+     */
+    private final double[][] scores;
+
+    /**
+     * The opponent score of each bid, by rank.
+     */
+    private final double[] rankedScores;
+
+    /**
+     * The ranks of the bids holding each value of each issue; built on the first incremental update.
+     */
+    private int[][][] holders;
+
+    /**
+     * The tree of argmaxes: the leaves at {@code [leaves, leaves + size)} are the ranks, those after them are -1, and
+     * every inner node holds the rank
+     * of the greatest score below it (the lowest rank on ties, which has the highest own utility).
+     */
+    private final int[] tree;
+
+    /**
+     * The nodes of the tree already queued for recomputation during an incremental update.
+     */
+    private boolean[] stale;
+
+    private final int size;
+
+    /**
+     * The number of leaves of the tree: the least power of two of at least {@link #size}, so that every leaf is as
+     * deep as the others and an update can recompute the tree a level at a time.
+     */
+    private final int leaves;
+
+    /**
+     * @param model The social welfare whose frontier to build, over a ranked bid space (see {@link
+     *              BidSpace#isRanked()}).
+     */
+    ParetoFrontier(WelfareModel model)
+    {
+        this.bidSpace = model.getBidSpace();
+        this.weights = model.getWeights();
+        this.scores = model.getOpponentScores(weights);
+        this.size = (int) bidSpace.size();
+        this.rankedScores = new double[size];
+        this.leaves = Integer.highestOneBit(Math.max(size, 1) * 2 - 1);
+        this.tree = new int[2 * leaves];
+        rebuild();
+    }
+
+    BidSpace getBidSpace()
+    {
+        return bidSpace;
+    }
+
+    /**
+     * Brings the frontier up to date with {@code model}, which must be over the same bid space.
+     *
+     * @param model The current social welfare.
+     */
+    void update(WelfareModel model)
+    {
+        double[][] current = model.getWeights();
+        if (hasDrifted(current))
+            weights = current;
+        double[][] updated = model.getOpponentScores(weights);
+
+        // The number of bids holding a changed value, counted with multiplicity.
+        long touched = 0;
+        boolean[][] changed = new boolean[scores.length][];
+        for (int issue = 0; issue < scores.length; issue++)
+        {
+            changed[issue] = new boolean[scores[issue].length];
+            for (int value = 0; value < scores[issue].length; value++)
+                if (Double.compare(scores[issue][value], updated[issue][value]) != 0)
+                {
+                    changed[issue][value] = true;
+                    touched += size / scores[issue].length;
+                }
+        }
+
+        if (touched == 0)
+            return;
+
+        for (int issue = 0; issue < scores.length; issue++)
+            System.arraycopy(updated[issue], 0, scores[issue], 0, scores[issue].length);
+
+        // Rescoring the touched bids and the nodes above them costs at least what a rebuild costs for every bid.
+        if (touched >= size || (long) size * scores.length > INDEX_LIMIT)
+        {
+            rebuild();
+            return;
+        }
+
+        if (holders == null)
+        {
+            holders = indexHolders();
+            stale = new boolean[tree.length];
+        }
+
+        // The touched leaves, each once.
+        int[] level = new int[(int) touched];
+        int count = 0;
+        for (int issue = 0; issue < scores.length; issue++)
+            for (int value = 0; value < scores[issue].length; value++)
+                if (changed[issue][value])
+                    for (int rank : holders[issue][value])
+                        if (!stale[rank + leaves])
+                        {
+                            stale[rank + leaves] = true;
+                            level[count++] = rank + leaves;
+                        }
+        for (int q = 0; q < count; q++)
+        {
+            int rank = level[q] - leaves;
+            rankedScores[rank] = score(bidSpace.getRanked(rank));
+            stale[rank + leaves] = false;
+        }
+
+        // Only the nodes above the touched leaves are recomputed, a level at a time; every level has at most as many
+        // of them as the level below, so the level below is overwritten in place.
+        while (level[0] > 1)
+        {
+            int parents = 0;
+            for (int q = 0; q < count; q++)
+            {
+                int parent = level[q] >> 1;
+                if (!stale[parent])
+                {
+                    stale[parent] = true;
+                    level[parents++] = parent;
+                }
+            }
+            for (int q = 0; q < parents; q++)
+            {
+                int node = level[q];
+                tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+                stale[node] = false;
+            }
+            count = parents;
+        }
+    }
+
+    /**
+     * @return Whether any of {@code current} differs from the weight that the scores were computed with by more than
+     * {@link #WEIGHT_TOLERANCE} of it, or whether opponents were met since.
+     */
+    private boolean hasDrifted(double[][] current)
+    {
+        if (current.length != weights.length)
+            return true;
+        for (int o = 0; o < weights.length; o++)
+            for (int issue = 0; issue < weights[o].length; issue++)
+                if (Math.abs(current[o][issue] - weights[o][issue]) > WEIGHT_TOLERANCE * weights[o][issue])
+                    return true;
+
+        return false;
+    }
+
+    /**
+     * @return The opponent score of the bid ranked at {@code rank}.
+     */
+    double getScore(int rank)
+    {
+        return rankedScores[rank];
+    }
+
+    /**
+     * @param threshold The own utility that the bid must exceed.
+     * @return The rank of the Pareto-optimal bid of greatest opponent score among those of own utility above
+     * {@code threshold}, or -1 if there is no such bid.
+     */
+    int getBest(double threshold)
+    {
+        return getBest(bidSpace.countAbove(threshold));
+    }
+
+    /**
+     * @param threshold The own utility that the bids must exceed.
+     * @param limit     The greatest number of bids to return.
+     * @return The ranks of the Pareto-optimal bids of own utility above {@code threshold}, by strictly descending
+     * opponent score (and so strictly ascending own utility), at most {@code limit} of them.
+     */
+    int[] getFrontier(double threshold, int limit)
+    {
+        int[] frontier = new int[Math.min(limit, 16)];
+        int count = 0;
+        // Each next bid must beat the own utility of the last one, not just its rank: of the bids that tie on own
+        // utility, the tree already picked the one of greatest opponent score, and the others are dominated by it.
+        for (int rank = getBest(bidSpace.countAbove(threshold)); rank >= 0 && count < limit;
+             rank = getBest(bidSpace.countAbove(bidSpace.getRankedUtility(rank))))
+        {
+            if (count == frontier.length)
+                frontier = Arrays.copyOf(frontier, Math.min(limit, 2 * count));
+            frontier[count++] = rank;
+        }
+
+        return Arrays.copyOf(frontier, count);
+    }
+
+    /**
+     * @return The rank of the greatest score among the first {@code end} ranks, or -1 if {@code end} is 0.
+     */
+    private int getBest(int end)
+    {
+        int best = -1;
+        for (int low = leaves, high = end + leaves; low < high; low >>= 1, high >>= 1)
+        {
+            if ((low & 1) == 1)
+                best = better(best, tree[low++]);
+            if ((high & 1) == 1)
+                best = better(best, tree[--high]);
+        }
+
+        return best;
+    }
+
+    private int better(int a, int b)
+    {
+        if (a < 0)
+            return b;
+        if (b < 0)
+            return a;
+
+        int comparison = Double.compare(rankedScores[a], rankedScores[b]);
+        return comparison > 0 || comparison == 0 && a < b ? a : b;
+    }
+
+    /**
+     * @return The opponent score of the bid encoded by {@code code}.
+     */
+    private double score(long code)
+    {
+        double score = 0;
+        for (int issue = 0; issue < scores.length; issue++)
+            score += scores[issue][bidSpace.getDigit(code, issue)];
+
+        return score;
+    }
+
+    private void rebuild()
+    {
+        for (int rank = 0; rank < size; rank++)
+            rankedScores[rank] = score(bidSpace.getRanked(rank));
+        for (int rank = 0; rank < leaves; rank++)
+            tree[rank + leaves] = rank < size ? rank : -1;
+        for (int node = leaves - 1; node > 0; node--)
+            tree[node] = better(tree[2 * node], tree[2 * node + 1]);
+    }
+
+    private int[][][] indexHolders()
+    {
+        int[][][] index = new int[scores.length][][];
+        for (int issue = 0; issue < scores.length; issue++)
+        {
+            int[] counts = new int[scores[issue].length];
+            for (int rank = 0; rank < size; rank++)
+                counts[bidSpace.getDigit(bidSpace.getRanked(rank), issue)]++;
+
+            index[issue] = new int[counts.length][];
+            for (int value = 0; value < counts.length; value++)
+                index[issue][value] = new int[counts[value]];
+
+            Arrays.fill(counts, 0);
+            for (int rank = 0; rank < size; rank++)
+            {
+                int value = bidSpace.getDigit(bidSpace.getRanked(rank), issue);
+                index[issue][value][counts[value]++] = rank;
+            }
+        }
+
+        return index;
+    }
+}
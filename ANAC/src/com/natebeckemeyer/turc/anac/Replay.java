@@ -0,0 +1,329 @@
+package com.natebeckemeyer.turc.anac;
+
+import negotiator.AgentID;
+import negotiator.Bid;
+import negotiator.Deadline;
+import negotiator.DiscreteTimeline;
+import negotiator.DomainImpl;
+import negotiator.Timeline;
+import negotiator.actions.Accept;
+import negotiator.actions.Action;
+import negotiator.actions.Offer;
+import negotiator.utility.AdditiveUtilitySpace;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Feeds recorded sessions (see {@link TraceRecorder}) back into the agent or into opponent models, at full speed and
+ * deterministically: the timeline reports the recorded values, the agent is seeded as it was, and everything that
+ * depends on the wall clock or on other threads (the turn budget, speculation, persistence) is switched off. Replaying
+ * the same trace twice therefore chooses the same actions, which makes traces usable as regression tests and
+ * benchmarks of estimation changes.
+ * <p>
+ * Run as a program, it replays every trace of a directory (see {@link #main}).
+ */
+final class Replay
+{
+    private Replay()
+    {
+    }
+
+    /**
+     * The outcome of replaying a session into the agent.
+     */
+    static final class Result
+    {
+        private final List<Action> actions;
+        private final List<Integer> divergences;
+        private final long nanos;
+
+        private Result(List<Action> actions, List<Integer> divergences, long nanos)
+        {
+            this.actions = actions;
+            this.divergences = divergences;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return The actions chosen in the replay, one per recorded turn.
+         */
+        List<Action> getActions()
+        {
+            return actions;
+        }
+
+        /**
+         * @return The number of turns in which the replay chose the recorded action.
+         */
+        int getAgreements()
+        {
+            return actions.size() - divergences.size();
+        }
+
+        /**
+         * @return The turns, counted from 1, in which the replay did not choose the recorded action.
+         */
+        List<Integer> getDivergences()
+        {
+            return divergences;
+        }
+
+        /**
+         * @return The time spent replaying, in nanoseconds.
+         */
+        long getNanos()
+        {
+            return nanos;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%d of %d turns as recorded, replayed in %.3f ms", getAgreements(), actions.size(),
+                    nanos / 1e6);
+        }
+    }
+
+    /**
+     * A timeline that reports the values recorded with the event being replayed.
+     */
+    private static final class ReplayTimeline extends DiscreteTimeline
+    {
+        private final Timeline.Type type;
+        private final double totalTime;
+        private Trace.Event event;
+
+        private ReplayTimeline(Trace trace)
+        {
+            super(0);
+            this.type = trace.getType();
+            this.totalTime = trace.getTotalTime();
+        }
+
+        @Override
+        public Type getType()
+        {
+            return type;
+        }
+
+        @Override
+        public double getTime()
+        {
+            return event == null ? 0 : event.getTime();
+        }
+
+        @Override
+        public double getCurrentTime()
+        {
+            return event == null ? 0 : event.getCurrentTime();
+        }
+
+        @Override
+        public double getTotalTime()
+        {
+            return totalTime;
+        }
+
+        @Override
+        public int getOwnRoundsLeft()
+        {
+            return event == null ? 0 : event.getRoundsLeft();
+        }
+    }
+
+    /**
+     * @return The bid space that the session of {@code trace} started with.
+     * @throws IllegalArgumentException if {@code utilitySpace} is not the one that the trace was recorded with.
+     */
+    private static BidSpace getBidSpace(Trace trace, AdditiveUtilitySpace utilitySpace)
+    {
+        BidSpace bidSpace = BidSpace.of(utilitySpace);
+        if (!bidSpace.getKey().equals(trace.getDomainKey()) || bidSpace.getIssueCount() != trace.getIssueCount())
+            throw new IllegalArgumentException("The trace was recorded in domain " + trace.getDomainKey() +
+                    ", not " + bidSpace.getKey() + ".");
+
+        return bidSpace;
+    }
+
+    /**
+     * @return The action of {@code event}, or null if it only matters as the sender's latest (as does an offer of a
+     * value that the bid space does not know).
+     */
+    private static Action toAction(Trace.Event event, BidSpace bidSpace)
+    {
+        switch (event.getAction())
+        {
+            case TraceRecorder.OFFER:
+                Bid bid = event.getBid(bidSpace);
+                return bid == null ? null : new Offer(bid);
+
+            case TraceRecorder.ACCEPT:
+                return new Accept();
+
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Replays a session into a fresh agent, which receives the recorded messages and chooses an action at every
+     * recorded turn.
+     *
+     * @param trace        The session.
+     * @param utilitySpace The utility space that the session was negotiated in.
+     * @return The actions chosen, and how many of them are the recorded ones.
+     */
+    static Result replay(Trace trace, AdditiveUtilitySpace utilitySpace)
+    {
+        BidSpace bidSpace = getBidSpace(trace, utilitySpace);
+        ReplayTimeline timeline = new ReplayTimeline(trace);
+        AgentID[] senders = trace.getSenders().stream().map(AgentID::new).toArray(AgentID[]::new);
+
+        long start = System.nanoTime();
+        NateAgent agent = new NateAgent();
+        agent.setDeterministic();
+        agent.init(utilitySpace, new Deadline(), timeline, trace.getSeed(), new AgentID("replay"));
+
+        List<Action> actions = new ArrayList<>();
+        List<Integer> divergences = new ArrayList<>();
+        for (Trace.Event event : trace.getEvents())
+        {
+            timeline.event = event;
+            if (event.isReceived())
+            {
+                AgentID sender = event.getSender() < 0 ? null : senders[event.getSender()];
+                agent.receive(sender, toAction(event, bidSpace), event.getParties());
+            } else
+            {
+                Action action = agent.chooseAction(null);
+                actions.add(action);
+                if (!event.matches(action, bidSpace))
+                    divergences.add(actions.size());
+            }
+        }
+
+        return new Result(actions, divergences, System.nanoTime() - start);
+    }
+
+    /**
+     * Replays the offers of a session into fresh opponent models, one per sender.
+     *
+     * @param trace        The session.
+     * @param utilitySpace The utility space that the session was negotiated in.
+     * @param updater      The estimation strategy of the models.
+     * @return The models, by sender ID, in order of appearance.
+     */
+    static LinkedHashMap<String, Opponent> estimate(Trace trace, AdditiveUtilitySpace utilitySpace,
+                                                    Supplier<Updater> updater)
+    {
+        BidSpace bidSpace = getBidSpace(trace, utilitySpace);
+        Opponent[] opponents = new Opponent[trace.getSenders().size()];
+        for (int sender = 0; sender < opponents.length; sender++)
+            opponents[sender] = new Opponent(new AgentID(trace.getSenders().get(sender)), bidSpace,
+                    new ArrayList<>(), updater.get());
+
+        for (Trace.Event event : trace.getEvents())
+            if (event.isReceived() && event.getSender() >= 0 && event.getAction() == TraceRecorder.OFFER)
+            {
+                Action offer = toAction(event, bidSpace);
+                if (offer != null)
+                    opponents[event.getSender()].addAction(offer);
+            }
+
+        LinkedHashMap<String, Opponent> models = new LinkedHashMap<>();
+        for (Opponent opponent : opponents)
+            models.put(opponent.getID().toString(), opponent);
+
+        return models;
+    }
+
+    /**
+     * Replays every trace of {@code directory} into the agent, in the order of their names, and reports for each how
+     * many turns chose the recorded action and which did not.
+     *
+     * @param directory    The directory of the traces.
+     * @param utilitySpace The utility space that the sessions were negotiated in.
+     * @param out          The stream to report to.
+     * @return Whether every trace was read and replayed as recorded.
+     * @throws IOException if the directory cannot be listed.
+     */
+    static boolean replayAll(Path directory, AdditiveUtilitySpace utilitySpace, PrintStream out) throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + TraceRecorder.SUFFIX))
+        {
+            entries.forEach(files::add);
+        }
+        Collections.sort(files);
+
+        int traces = 0, turns = 0, agreements = 0;
+        boolean identical = true;
+        for (Path file : files)
+        {
+            Result result;
+            try
+            {
+                result = replay(Trace.read(file), utilitySpace);
+            } catch (IOException | IllegalArgumentException e)
+            {
+                out.println(file.getFileName() + ": " + e);
+                identical = false;
+                continue;
+            }
+
+            out.println(file.getFileName() + ": " + result);
+            if (!result.getDivergences().isEmpty())
+                out.println("    diverged at turns " + result.getDivergences().stream().map(String::valueOf)
+                        .collect(Collectors.joining(", ")));
+
+            traces++;
+            turns += result.getActions().size();
+            agreements += result.getAgreements();
+            identical &= result.getDivergences().isEmpty();
+        }
+
+        out.printf("%d of %d traces replayed, %d of %d turns as recorded%n", traces, files.size(), agreements, turns);
+        return identical;
+    }
+
+    /**
+     * Replays every trace of a directory. The arguments are the domain and the preference profile that the sessions
+     * were negotiated in and, optionally, the directory, which defaults to the one that the traces of the profile are
+     * recorded in. Exits with 1 if any trace could not be replayed or diverged, and with 10 on bad arguments.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 2 || args.length > 3)
+        {
+            System.err.println("Usage: Replay <domain file> <profile file> [<trace directory>]");
+            System.exit(10);
+        }
+
+        AdditiveUtilitySpace utilitySpace;
+        try
+        {
+            utilitySpace = new AdditiveUtilitySpace(new DomainImpl(args[0]), args[1]);
+        } catch (Exception e)
+        {
+            System.err.println("Could not load the profile " + args[1] + ": " + e);
+            System.exit(10);
+            return;
+        }
+
+        Path directory = args.length > 2 ? Paths.get(args[2]) :
+                TraceRecorder.DIRECTORY.resolve(BidSpace.of(utilitySpace).getKey());
+        if (!replayAll(directory, utilitySpace, System.out))
+            System.exit(1);
+    }
+}
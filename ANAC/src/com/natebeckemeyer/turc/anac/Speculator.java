@@ -0,0 +1,249 @@
+package com.natebeckemeyer.turc.anac;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+/**
+ * Precomputes the answers of the next turn while the other parties deliberate. Every message received hands the
+ * speculator a {@link Request} holding a snapshot of the opponent models; a background thread works through the
+ * latest request only (older ones are superseded) and publishes a {@link Forecast} atomically. A forecast is only
+ * used if no message arrived since its snapshot was taken.
+ * <p>
+ * The candidate offers of a forecast come from a {@link ParetoFrontier} that the background thread keeps up to date
+ * from one snapshot to the next.
+ */
+final class Speculator
+{
+    /**
+     * The greatest number of Pareto-optimal bids that a forecast evaluates.
+     */
+    private static final int FRONTIER = 512;
+
+    /**
+     * The number of candidate offers that a forecast keeps.
+     */
+    private static final int CANDIDATES = 16;
+
+    /**
+     * The threads running the speculators of the virtual machine. They are daemons, and idle ones die, so that
+     * finished sessions leave nothing behind.
+     */
+    private static final ExecutorService workers = Executors.newCachedThreadPool(runnable ->
+    {
+        Thread thread = new Thread(runnable, "Speculator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicReference<Request> requested = new AtomicReference<>();
+    private final AtomicReference<Forecast> published = new AtomicReference<>();
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * The frontier of the latest snapshot. Only the worker draining the requests touches it, and workers never
+     * overlap.
+     */
+    private ParetoFrontier frontier;
+
+    /**
+     * What a forecast is computed from. Everything that depends on the timeline is captured when the request is
+     * made, so that the background thread never touches the negotiation's state.
+     */
+    static final class Request
+    {
+        private final int version;
+        private final WelfareModel model;
+        private final long partnerCode;
+        private final double partnerUtility;
+        private final boolean closing;
+        private final double discount;
+        private final double decay;
+        private final boolean refine;
+
+        /**
+         * @param version        The number of messages received when the snapshot was taken.
+         * @param model          The snapshot of the social welfare.
+         * @param partnerCode    The code of the partner's last offer, or -1 if there is none.
+         * @param partnerUtility This agent's utility for the partner's last offer.
+         * @param closing        Whether the next deal is out of reach of the timeline.
+         * @param discount       The discount factor of the utility space.
+         * @param decay          The decay of the upper bound of the next deal.
+         * @param refine         Whether the continuous issues may be refined.
+         */
+        Request(int version, WelfareModel model, long partnerCode, double partnerUtility, boolean closing,
+                double discount, double decay, boolean refine)
+        {
+            this.version = version;
+            this.model = model;
+            this.partnerCode = partnerCode;
+            this.partnerUtility = partnerUtility;
+            this.closing = closing;
+            this.discount = discount;
+            this.decay = decay;
+            this.refine = refine;
+        }
+    }
+
+    /**
+     * The precomputed answers of a turn.
+     */
+    static final class Forecast
+    {
+        private final int version;
+        private final WelfareModel model;
+        private final BidSpace refined;
+        private final long welfareCode;
+        private final double upperUtility;
+        private final double partnerWelfare;
+        private final long[] candidates;
+
+        private Forecast(int version, WelfareModel model, BidSpace refined, long welfareCode, double upperUtility,
+                         double partnerWelfare, long[] candidates)
+        {
+            this.version = version;
+            this.model = model;
+            this.refined = refined;
+            this.welfareCode = welfareCode;
+            this.upperUtility = upperUtility;
+            this.partnerWelfare = partnerWelfare;
+            this.candidates = candidates;
+        }
+
+        WelfareModel getModel()
+        {
+            return model;
+        }
+
+        /**
+         * @return A refinement of the bid space to adopt, or null if there is none. A forecast carrying a refinement
+         * carries nothing else, since its answers would be for the unrefined space.
+         */
+        BidSpace getRefined()
+        {
+            return refined;
+        }
+
+        /**
+         * @return The code of the welfare-maximizing bid.
+         */
+        long getWelfareCode()
+        {
+            return welfareCode;
+        }
+
+        /**
+         * @return The social welfare of the welfare-maximizing bid.
+         */
+        double getUpperUtility()
+        {
+            return upperUtility;
+        }
+
+        /**
+         * @return The social welfare of the partner's last offer, or NaN if there was none.
+         */
+        double getPartnerWelfare()
+        {
+            return partnerWelfare;
+        }
+
+        /**
+         * @return The codes of the candidate offers, by descending social welfare.
+         */
+        long[] getCandidates()
+        {
+            return candidates;
+        }
+    }
+
+    /**
+     * Supersedes any pending request with {@code request} and makes sure that a worker will compute it.
+     */
+    void request(Request request)
+    {
+        requested.set(request);
+        schedule();
+    }
+
+    private void schedule()
+    {
+        if (running.compareAndSet(false, true))
+            workers.execute(this::drain);
+    }
+
+    private void drain()
+    {
+        try
+        {
+            Request request;
+            while ((request = requested.getAndSet(null)) != null)
+                published.set(compute(request));
+        } catch (RuntimeException e)
+        {
+            System.err.println("Speculation failed: " + e);
+        } finally
+        {
+            running.set(false);
+            if (requested.get() != null)
+                schedule();
+        }
+    }
+
+    /**
+     * @param version  The number of messages received so far.
+     * @param bidSpace The current bid space.
+     * @return The forecast for the current state of the negotiation, or null if none is ready.
+     */
+    Forecast getForecast(int version, BidSpace bidSpace)
+    {
+        Forecast forecast = published.get();
+        return forecast != null && forecast.version == version && forecast.model.getBidSpace() == bidSpace ?
+                forecast : null;
+    }
+
+    private Forecast compute(Request request)
+    {
+        WelfareModel model = request.model;
+        BidSpace bidSpace = model.getBidSpace();
+        long welfareCode = model.getWelfareMaximizingCode();
+
+        if (request.refine)
+        {
+            BidSpace refined = bidSpace.refineAround(welfareCode);
+            if (refined != bidSpace)
+                return new Forecast(request.version, model, refined, -1, 0, Double.NaN, new long[0]);
+        }
+
+        double upperUtility = model.getWelfare(welfareCode);
+        double partnerWelfare = request.partnerCode >= 0 ? model.getWelfare(request.partnerCode,
+                request.partnerUtility) : Double.NaN;
+
+        // The threshold only falls as time passes, so bids above it now are still acceptable at the next turn.
+        double threshold = request.closing ? 0 : request.discount * (upperUtility + request.decay);
+        if (!bidSpace.isRanked())
+            return new Forecast(request.version, model, null, welfareCode, upperUtility, partnerWelfare,
+                    new long[0]);
+        if (frontier == null || frontier.getBidSpace() != bidSpace)
+            frontier = new ParetoFrontier(model);
+        else
+            frontier.update(model);
+
+        // The welfare rises with both utilities, so the best acceptable bids are on the frontier.
+        int[] ranks = frontier.getFrontier(threshold, FRONTIER);
+        long[] codes = new long[ranks.length];
+        double[] welfare = new double[ranks.length];
+        for (int f = 0; f < ranks.length; f++)
+        {
+            codes[f] = bidSpace.getRanked(ranks[f]);
+            welfare[f] = model.getWelfare(codes[f]);
+        }
+
+        long[] candidates = IntStream.range(0, ranks.length).boxed()
+                .sorted((a, b) -> Double.compare(welfare[b], welfare[a]))
+                .mapToLong(f -> codes[f]).limit(CANDIDATES).toArray();
+        return new Forecast(request.version, model, null, welfareCode, upperUtility, partnerWelfare, candidates);
+    }
+}
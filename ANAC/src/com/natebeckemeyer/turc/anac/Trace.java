@@ -0,0 +1,284 @@
+package com.natebeckemeyer.turc.anac;
+
+import negotiator.Bid;
+import negotiator.Timeline;
+import negotiator.actions.Accept;
+import negotiator.actions.Action;
+import negotiator.actions.Inform;
+import negotiator.actions.Offer;
+import negotiator.issue.Value;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A session trace read back into memory, as written by {@link TraceRecorder}. Traces are read whole, so that a replay
+ * runs at full speed without touching the disk.
+ */
+final class Trace
+{
+    private final String domainKey;
+    private final long seed;
+    private final Timeline.Type type;
+    private final double totalTime;
+    private final boolean[] continuous;
+    private final List<String> senders;
+    private final List<Event> events;
+
+    /**
+     * A message received or an action chosen, with the state of the timeline at the time.
+     */
+    static final class Event
+    {
+        private final byte kind;
+        private final double time;
+        private final double currentTime;
+        private final int roundsLeft;
+        private final int sender;
+        private final byte action;
+        private final int parties;
+        private final double[] bid;
+
+        private Event(byte kind, double time, double currentTime, int roundsLeft, int sender, byte action,
+                      int parties, double[] bid)
+        {
+            this.kind = kind;
+            this.time = time;
+            this.currentTime = currentTime;
+            this.roundsLeft = roundsLeft;
+            this.sender = sender;
+            this.action = action;
+            this.parties = parties;
+            this.bid = bid;
+        }
+
+        /**
+         * @return Whether this is a message received (rather than an action chosen).
+         */
+        boolean isReceived()
+        {
+            return kind == TraceRecorder.RECEIVE;
+        }
+
+        double getTime()
+        {
+            return time;
+        }
+
+        double getCurrentTime()
+        {
+            return currentTime;
+        }
+
+        int getRoundsLeft()
+        {
+            return roundsLeft;
+        }
+
+        /**
+         * @return The index of the sender among the senders of the trace, or -1 if there was none.
+         */
+        int getSender()
+        {
+            return sender;
+        }
+
+        /**
+         * @return One of {@link TraceRecorder#OFFER}, {@link TraceRecorder#ACCEPT}, {@link TraceRecorder#INFORM} or
+         * {@link TraceRecorder#OTHER}.
+         */
+        byte getAction()
+        {
+            return action;
+        }
+
+        /**
+         * @return The number of parties that an inform announced.
+         */
+        int getParties()
+        {
+            return parties;
+        }
+
+        /**
+         * @param bidSpace The bid space that the session started with.
+         * @return The bid offered, or null if the action is not an offer or the offer held a discrete value that the
+         * bid space does not know (recorded as -1).
+         */
+        Bid getBid(BidSpace bidSpace)
+        {
+            if (bid == null)
+                return null;
+
+            HashMap<Integer, Value> bidMap = new HashMap<>();
+            for (int issue = 0; issue < bid.length; issue++)
+            {
+                if (!bidSpace.isContinuous(issue) && (bid[issue] < 0 || bid[issue] >= bidSpace.getValueCount(issue)))
+                    return null;
+
+                bidMap.put(bidSpace.getIssue(issue).getNumber(), bidSpace.isContinuous(issue) ? BidSpace.toValue(
+                        bidSpace.getEvaluator(issue), bid[issue]) : bidSpace.getValue(issue, (int) bid[issue]));
+            }
+
+            return new Bid(bidSpace.getDomain(), bidMap);
+        }
+
+        /**
+         * @param action   An action taken in a replay of this event.
+         * @param bidSpace The bid space that the session started with.
+         * @return Whether {@code action} is the action recorded, down to the bid.
+         */
+        boolean matches(Action action, BidSpace bidSpace)
+        {
+            switch (this.action)
+            {
+                case TraceRecorder.OFFER:
+                    if (!(action instanceof Offer))
+                        return false;
+
+                    Bid offered = ((Offer) action).getBid();
+                    for (int issue = 0; issue < bid.length; issue++)
+                    {
+                        Value value = offered.getValue(bidSpace.getIssue(issue).getNumber());
+                        if ((bidSpace.isContinuous(issue) ? BidSpace.toPosition(value) : bidSpace.indexOf(issue,
+                                value)) != bid[issue])
+                            return false;
+                    }
+                    return true;
+
+                case TraceRecorder.ACCEPT:
+                    return action instanceof Accept;
+
+                case TraceRecorder.INFORM:
+                    return action instanceof Inform;
+
+                default:
+                    return !(action instanceof Offer || action instanceof Accept || action instanceof Inform);
+            }
+        }
+    }
+
+    private Trace(String domainKey, long seed, Timeline.Type type, double totalTime, boolean[] continuous,
+                  List<String> senders, List<Event> events)
+    {
+        this.domainKey = domainKey;
+        this.seed = seed;
+        this.type = type;
+        this.totalTime = totalTime;
+        this.continuous = continuous;
+        this.senders = senders;
+        this.events = events;
+    }
+
+    /**
+     * Reads a trace. A trace cut short (by a session that ended mid-write) is read up to its last complete event.
+     *
+     * @param file The trace file.
+     * @return The trace.
+     * @throws IOException if the file cannot be read or is not a trace.
+     */
+    static Trace read(Path file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != TraceRecorder.MAGIC || in.readInt() != TraceRecorder.VERSION)
+                throw new IOException(file + " is not a trace of this version.");
+
+            String domainKey = in.readUTF();
+            long seed = in.readLong();
+            Timeline.Type type = Timeline.Type.values()[in.readByte()];
+            double totalTime = in.readDouble();
+            boolean[] continuous = new boolean[in.readInt()];
+            for (int issue = 0; issue < continuous.length; issue++)
+                continuous[issue] = in.readBoolean();
+
+            List<String> senders = new ArrayList<>();
+            List<Event> events = new ArrayList<>();
+            try
+            {
+                while (true)
+                {
+                    int kind = in.read();
+                    if (kind < 0)
+                        break;
+
+                    double time = in.readDouble();
+                    double currentTime = in.readDouble();
+                    int roundsLeft = in.readInt();
+
+                    int sender = -1;
+                    if (kind == TraceRecorder.RECEIVE)
+                    {
+                        sender = in.readInt();
+                        if (sender == senders.size())
+                            senders.add(in.readUTF());
+                    }
+
+                    byte action = in.readByte();
+                    int parties = action == TraceRecorder.INFORM ? in.readInt() : 0;
+                    double[] bid = null;
+                    if (action == TraceRecorder.OFFER)
+                    {
+                        bid = new double[continuous.length];
+                        for (int issue = 0; issue < continuous.length; issue++)
+                            bid[issue] = continuous[issue] ? in.readDouble() : in.readInt();
+                    }
+
+                    events.add(new Event((byte) kind, time, currentTime, roundsLeft, sender, action, parties, bid));
+                }
+            } catch (EOFException e)
+            {
+                // The session ended mid-write; everything before is intact.
+            }
+
+            return new Trace(domainKey, seed, type, totalTime, continuous, Collections.unmodifiableList(senders),
+                    Collections.unmodifiableList(events));
+        }
+    }
+
+    /**
+     * @return The key of the bid space that the session started with.
+     */
+    String getDomainKey()
+    {
+        return domainKey;
+    }
+
+    long getSeed()
+    {
+        return seed;
+    }
+
+    Timeline.Type getType()
+    {
+        return type;
+    }
+
+    double getTotalTime()
+    {
+        return totalTime;
+    }
+
+    int getIssueCount()
+    {
+        return continuous.length;
+    }
+
+    /**
+     * @return The IDs of the senders, by index.
+     */
+    List<String> getSenders()
+    {
+        return senders;
+    }
+
+    List<Event> getEvents()
+    {
+        return events;
+    }
+}
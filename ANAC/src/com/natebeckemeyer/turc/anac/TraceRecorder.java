@@ -0,0 +1,301 @@
+package com.natebeckemeyer.turc.anac;
+
+import negotiator.AgentID;
+import negotiator.Bid;
+import negotiator.DiscreteTimeline;
+import negotiator.Timeline;
+import negotiator.actions.Accept;
+import negotiator.actions.Action;
+import negotiator.actions.Inform;
+import negotiator.actions.Offer;
+import negotiator.session.TimeLineInfo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Records the messages that an agent receives and the actions that it chooses to a compact binary trace, so that
+ * the session can be replayed offline (see {@link Replay}). Bids are recorded against the bid space that the session
+ * started with: discrete values by index, continuous values by position. The layout of a trace is:
+ * <pre>
+ * {@code File    --> MAGIC VERSION DomainKey Seed Type TotalTime IssueCount Continuous* Event*}
+ * {@code Event   --> RECEIVE Clock Sender Action | CHOOSE Clock Action}
+ * {@code Clock   --> Time CurrentTime RoundsLeft}
+ * {@code Sender  --> Index Name?}
+ * {@code Action  --> OFFER Bid | ACCEPT | INFORM Parties | OTHER}
+ * {@code Bid     --> (Index | Position)*}
+ * </pre>
+ * where a sender is named the first time that it appears and is -1 if there is none, and RoundsLeft is -1 under a
+ * time-based timeline.
+ * <p>
+ * Events are buffered in memory and only written out when the agent flushes the trace (see {@link #flush()}), when
+ * the session ends, or when the virtual machine shuts down, so that recording costs a turn no disk access. Each domain
+ * keeps the latest {@link #MAX_TRACES} traces; opening a trace deletes the oldest beyond them.
+ */
+final class TraceRecorder
+{
+    /**
+     * The directory holding a directory of traces per domain.
+     */
+    static final Path DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "turc-anac", "traces");
+
+    static final int MAGIC = 0x54555243;
+
+    static final int VERSION = 1;
+
+    /**
+     * The most traces kept per domain.
+     */
+    static final int MAX_TRACES = 64;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The extension of trace files.
+     */
+    static final String SUFFIX = ".trace";
+
+    /**
+     * The recorders not yet closed, which a shutdown hook closes.
+     */
+    private static final Set<TraceRecorder> open = ConcurrentHashMap.newKeySet();
+
+    static
+    {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> open.forEach(TraceRecorder::close),
+                "TraceRecorder flush"));
+    }
+
+    static final byte RECEIVE = 0;
+    static final byte CHOOSE = 1;
+
+    static final byte OFFER = 0;
+    static final byte ACCEPT = 1;
+    static final byte INFORM = 2;
+    static final byte OTHER = 3;
+
+    private final BidSpace bidSpace;
+    private final Path file;
+    private final HashMap<AgentID, Integer> senders = new HashMap<>();
+    private DataOutputStream out;
+
+    private TraceRecorder(BidSpace bidSpace, Path file, DataOutputStream out)
+    {
+        this.bidSpace = bidSpace;
+        this.file = file;
+        this.out = out;
+    }
+
+    /**
+     * Starts the trace of a session.
+     *
+     * @param bidSpace The bid space that the session starts with.
+     * @param seed     The random seed of the agent.
+     * @param timeline The timeline of the session.
+     * @return The recorder, or null if the trace cannot be created.
+     */
+    static TraceRecorder open(BidSpace bidSpace, long seed, TimeLineInfo timeline)
+    {
+        Path file = null;
+        try
+        {
+            Path directory = DIRECTORY.resolve(bidSpace.getKey());
+            Files.createDirectories(directory);
+            evict(directory);
+            file = Files.createTempFile(directory, "session", SUFFIX);
+
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file),
+                    BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(bidSpace.getKey());
+            out.writeLong(seed);
+            out.writeByte(timeline.getType().ordinal());
+            out.writeDouble(timeline.getTotalTime());
+            out.writeInt(bidSpace.getIssueCount());
+            for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
+                out.writeBoolean(bidSpace.isContinuous(issue));
+
+            TraceRecorder recorder = new TraceRecorder(bidSpace, file, out);
+            open.add(recorder);
+            return recorder;
+        } catch (IOException | RuntimeException e)
+        {
+            System.err.println("Could not record the trace " + file + ": " + e);
+            return null;
+        }
+    }
+
+    Path getFile()
+    {
+        return file;
+    }
+
+    /**
+     * Records a message received.
+     */
+    synchronized void receive(TimeLineInfo timeline, AgentID sender, Action action)
+    {
+        if (out == null)
+            return;
+
+        try
+        {
+            out.writeByte(RECEIVE);
+            writeClock(timeline);
+            if (sender == null)
+                out.writeInt(-1);
+            else
+            {
+                Integer index = senders.get(sender);
+                if (index != null)
+                    out.writeInt(index);
+                else
+                {
+                    senders.put(sender, senders.size());
+                    out.writeInt(senders.size() - 1);
+                    out.writeUTF(sender.toString());
+                }
+            }
+            writeAction(action);
+        } catch (IOException | RuntimeException e)
+        {
+            fail(e);
+        }
+    }
+
+    /**
+     * Records an action chosen.
+     */
+    synchronized void choose(TimeLineInfo timeline, Action action)
+    {
+        if (out == null)
+            return;
+
+        try
+        {
+            out.writeByte(CHOOSE);
+            writeClock(timeline);
+            writeAction(action);
+        } catch (IOException | RuntimeException e)
+        {
+            fail(e);
+        }
+    }
+
+    /**
+     * Writes out the events buffered so far, so that the trace is complete up to the latest of them.
+     */
+    synchronized void flush()
+    {
+        if (out == null)
+            return;
+
+        try
+        {
+            out.flush();
+        } catch (IOException | RuntimeException e)
+        {
+            fail(e);
+        }
+    }
+
+    /**
+     * Writes out the events buffered so far and closes the trace; nothing is recorded after.
+     */
+    synchronized void close()
+    {
+        open.remove(this);
+        if (out == null)
+            return;
+
+        try
+        {
+            out.close();
+        } catch (IOException | RuntimeException e)
+        {
+            System.err.println("Could not record the trace " + file + ": " + e);
+        }
+        out = null;
+    }
+
+    /**
+     * Deletes the oldest traces of {@code directory} beyond the {@link #MAX_TRACES} - 1 latest, to make room for a new
+     * one. A trace that another session deletes first is skipped.
+     */
+    private static void evict(Path directory) throws IOException
+    {
+        List<Path> traces = new ArrayList<>();
+        HashMap<Path, FileTime> modified = new HashMap<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + SUFFIX))
+        {
+            for (Path trace : entries)
+                try
+                {
+                    modified.put(trace, Files.getLastModifiedTime(trace));
+                    traces.add(trace);
+                } catch (NoSuchFileException ignored)
+                {
+                }
+        }
+
+        traces.sort(Comparator.comparing(modified::get));
+        for (int i = 0; i < traces.size() - (MAX_TRACES - 1); i++)
+            Files.deleteIfExists(traces.get(i));
+    }
+
+    private void writeClock(TimeLineInfo timeline) throws IOException
+    {
+        out.writeDouble(timeline.getTime());
+        out.writeDouble(timeline.getCurrentTime());
+        out.writeInt(timeline.getType() == Timeline.Type.Rounds ? ((DiscreteTimeline) timeline).getOwnRoundsLeft() :
+                -1);
+    }
+
+    private void writeAction(Action action) throws IOException
+    {
+        if (action instanceof Offer)
+        {
+            out.writeByte(OFFER);
+            Bid bid = ((Offer) action).getBid();
+            for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
+                if (bidSpace.isContinuous(issue))
+                    out.writeDouble(BidSpace.toPosition(bid.getValue(bidSpace.getIssue(issue).getNumber())));
+                else
+                    out.writeInt(bidSpace.indexOf(issue, bid.getValue(bidSpace.getIssue(issue).getNumber())));
+        } else if (action instanceof Accept)
+            out.writeByte(ACCEPT);
+        else if (action instanceof Inform)
+        {
+            out.writeByte(INFORM);
+            out.writeInt((int) ((Inform) action).getValue());
+        } else
+            out.writeByte(OTHER);
+    }
+
+    private void fail(Exception e)
+    {
+        System.err.println("Could not record the trace " + file + ": " + e);
+        open.remove(this);
+        try
+        {
+            out.close();
+        } catch (IOException ignored)
+        {
+        }
+        out = null;
+    }
+}
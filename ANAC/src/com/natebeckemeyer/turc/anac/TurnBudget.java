@@ -0,0 +1,89 @@
+package com.natebeckemeyer.turc.anac;
+
+import negotiator.session.TimeLineInfo;
+
+/**
+ * The compute budget of a single turn. Under a time-based timeline, the budget is a share of the time that passes
+ * between two of this agent's turns (as observed so far), and never more than a share of the time remaining; under
+ * a round-based timeline no negotiation time is at stake, so the budget is a constant.
+ */
+final class TurnBudget
+{
+    /**
+     * The share of the observed time per round that a turn may spend searching.
+     */
+    private static final double ROUND_SHARE = 0.25;
+
+    /**
+     * The share of the remaining negotiation time that a single turn may spend.
+     */
+    private static final double REMAINING_SHARE = 0.01;
+
+    /**
+     * The budget used before any round has been observed, and under round-based timelines.
+     */
+    private static final long DEFAULT_BUDGET = 50_000_000L;
+
+    /**
+     * The smallest budget ever granted, so that a turn can always evaluate a few candidates.
+     */
+    private static final long MINIMUM_BUDGET = 1_000_000L;
+
+    private int turns;
+    private long turnStart;
+    private long budget = DEFAULT_BUDGET;
+    private boolean unlimited;
+
+    /**
+     * Lifts the budget, so that a turn does the same work however long it takes; replays rely on this to be
+     * deterministic.
+     */
+    void setUnlimited()
+    {
+        unlimited = true;
+    }
+
+    /**
+     * Starts a turn, deriving its budget from the remaining time and the observed round rate.
+     *
+     * @param timeline The timeline of the negotiation.
+     */
+    void startTurn(TimeLineInfo timeline)
+    {
+        turnStart = System.nanoTime();
+
+        switch (timeline.getType())
+        {
+            case Time:
+                double elapsed = timeline.getCurrentTime();
+                double remaining = Math.max(0, timeline.getTotalTime() - elapsed);
+                double perRound = turns > 0 && elapsed > 0 ? elapsed / turns : DEFAULT_BUDGET / 1e9 / ROUND_SHARE;
+
+                double seconds = Math.min(ROUND_SHARE * perRound, REMAINING_SHARE * remaining);
+                budget = Math.max(MINIMUM_BUDGET, (long) (seconds * 1e9));
+                break;
+
+            default:
+                budget = DEFAULT_BUDGET;
+                break;
+        }
+
+        turns++;
+    }
+
+    /**
+     * @return The budget of the current turn, in nanoseconds.
+     */
+    long getBudget()
+    {
+        return budget;
+    }
+
+    /**
+     * @return Whether the current turn has spent its budget.
+     */
+    boolean isExhausted()
+    {
+        return !unlimited && System.nanoTime() - turnStart >= budget;
+    }
+}
@@ -17,4 +17,76 @@ interface Updater
      * @param utilities The set of utilities known for the agent
      */
     void updateUtilities(Action offer, HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities);
+
+    /**
+     * @return A new strategy of the same kind as this one, with none of its state, for a copy of the opponent.
+     */
+    Updater newInstance();
+
+    /**
+     * Resumes the estimation from utilities learned in an earlier session; by default, nothing is carried over
+     * besides the utilities themselves.
+     *
+     * @param utilities    The restored utilities of the agent
+     * @param observations The number of offers that they were learned from
+     */
+    default void resume(HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities, int observations)
+    {
+    }
+
+    /**
+     * Writes any estimates still held back into {@code utilities}, before they are read; by default, every update
+     * writes its estimates at once.
+     *
+     * @param utilities The set of utilities known for the agent
+     */
+    default void publish(HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+    }
+
+    /**
+     * Gets the current estimate of a value without publishing the estimates of every issue first; by default, the
+     * estimate in {@code utilities}.
+     *
+     * @param issue     The issue of the value
+     * @param value     The value
+     * @param utilities The set of utilities known for the agent
+     * @return The estimate, or 0 if the value has none
+     */
+    default double getEstimate(Objective issue, Value value,
+                               HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+        Pair<Double, HashMap<Value, Double>> entry = utilities.get(issue);
+        return entry == null ? 0 : entry.getValue().getOrDefault(value, 0.);
+    }
+
+    /**
+     * Gets the estimate of a value before its issue is normalized, i.e. up to a factor common to every value of the
+     * issue. Unlike the normalized estimates, these change only for the values that an offer bears on; by default,
+     * they are the normalized estimates.
+     *
+     * @param issue     The issue of the value
+     * @param value     The value
+     * @param utilities The set of utilities known for the agent
+     * @return The unnormalized estimate, or 0 if the value has none
+     */
+    default double getUnnormalized(Objective issue, Value value,
+                                   HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+        return getEstimate(issue, value, utilities);
+    }
+
+    /**
+     * Gets the current weight of an issue without publishing the estimates of every issue first; by default, the
+     * weight in {@code utilities}.
+     *
+     * @param issue     The issue
+     * @param utilities The set of utilities known for the agent
+     * @return The weight of the issue, or 0 if it has none
+     */
+    default double getWeight(Objective issue, HashMap<Objective, Pair<Double, HashMap<Value, Double>>> utilities)
+    {
+        Pair<Double, HashMap<Value, Double>> entry = utilities.get(issue);
+        return entry == null ? 0 : entry.getKey();
+    }
 }
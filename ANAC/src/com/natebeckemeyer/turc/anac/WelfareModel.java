@@ -0,0 +1,225 @@
+package com.natebeckemeyer.turc.anac;
+
+import java.util.Collection;
+
+/**
+ * A snapshot of the social welfare over a bid space: this agent's utilities together with copies of the estimated
+ * utilities of every opponent, laid out by issue and value index. A snapshot never changes, so that it can be
+ * evaluated away from the negotiation thread while the opponent models keep learning.
+ */
+final class WelfareModel
+{
+    private final BidSpace bidSpace;
+
+    /**
+     * The estimated utility of each value of each issue, by opponent.
+     */
+    private final double[][][] estimates;
+
+    /**
+     * The estimates before normalization, i.e. up to a factor common to the values of each issue, by opponent.
+     */
+    private final double[][][] unnormalized;
+
+    /**
+     * The learned weight of each issue relative to an even split, by opponent: a weight of 1 leaves the estimates of
+     * the issue as they are.
+     */
+    private final double[][] weights;
+
+    /**
+     * The number of parties over which the welfare is averaged.
+     */
+    private final int parties;
+
+    private final BidStrategy strategy;
+
+    private WelfareModel(BidSpace bidSpace, double[][][] estimates, double[][][] unnormalized, double[][] weights,
+                         int parties, BidStrategy strategy)
+    {
+        this.bidSpace = bidSpace;
+        this.estimates = estimates;
+        this.unnormalized = unnormalized;
+        this.weights = weights;
+        this.parties = parties;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Snapshots the estimates of {@code opponents}. Values that an opponent has no estimate for count as 0.
+     *
+     * @param bidSpace  The bid space of the domain.
+     * @param opponents The opponent models.
+     * @param parties   The number of parties of the negotiation.
+     * @param strategy  The way that the utilities of the parties are combined.
+     * @return The snapshot.
+     */
+    static WelfareModel of(BidSpace bidSpace, Collection<Opponent> opponents, int parties, BidStrategy strategy)
+    {
+        double[][][] estimates = new double[opponents.size()][bidSpace.getIssueCount()][];
+        double[][][] unnormalized = new double[opponents.size()][bidSpace.getIssueCount()][];
+        double[][] weights = new double[opponents.size()][bidSpace.getIssueCount()];
+        int o = 0;
+        for (Opponent opponent : opponents)
+        {
+            for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
+            {
+                weights[o][issue] = opponent.getWeight(bidSpace.getIssue(issue)) * bidSpace.getIssueCount();
+                estimates[o][issue] = new double[bidSpace.getValueCount(issue)];
+                unnormalized[o][issue] = new double[bidSpace.getValueCount(issue)];
+                for (int value = 0; value < bidSpace.getValueCount(issue); value++)
+                {
+                    estimates[o][issue][value] = opponent.getEstimate(bidSpace.getIssue(issue),
+                            bidSpace.getValue(issue, value));
+                    unnormalized[o][issue][value] = opponent.getUnnormalizedEstimate(bidSpace.getIssue(issue),
+                            bidSpace.getValue(issue, value));
+                }
+            }
+            o++;
+        }
+
+        return new WelfareModel(bidSpace, estimates, unnormalized, weights, parties, strategy);
+    }
+
+    BidSpace getBidSpace()
+    {
+        return bidSpace;
+    }
+
+    /**
+     * @return The learned weight of each issue relative to an even split, by opponent and issue.
+     */
+    double[][] getWeights()
+    {
+        double[][] copy = new double[weights.length][];
+        for (int o = 0; o < weights.length; o++)
+            copy[o] = weights[o].clone();
+
+        return copy;
+    }
+
+    /**
+     * Combines the estimates of the opponents for a value into {@code welfare}, each weighted by the opponent's
+     * weight of the issue: as a factor for sums and as an exponent for products.
+     */
+    private double combine(double welfare, int issue, int value)
+    {
+        for (int o = 0; o < estimates.length; o++)
+            switch (strategy)
+            {
+                case PRODUCT:
+                    welfare *= Math.pow(estimates[o][issue][value], weights[o][issue]);
+                    break;
+
+                case SUM:
+                    welfare += weights[o][issue] * estimates[o][issue][value];
+                    break;
+            }
+
+        return welfare;
+    }
+
+    /**
+     * Tabulates what the opponents contribute to the social welfare, by issue and value, such that the contribution
+     * for a bid is the sum of the entries of its values. The welfare of a bid rises with both this agent's utility and
+     * this contribution: for products, the entries are logarithms.
+     * <p>
+     * For products, the entries are taken from the unnormalized estimates: normalizing an issue shifts the logarithms
+     * of all its values by the same amount, which shifts the contribution of every bid alike and so leaves their order
+     * unchanged. An offer then changes only the entries of the values that it bears on.
+     *
+     * @return The contribution of each value of each issue, up to an amount common to every bid.
+     */
+    double[][] getOpponentScores()
+    {
+        return getOpponentScores(weights);
+    }
+
+    /**
+     * Tabulates the contributions of the opponents as {@link #getOpponentScores()} does, but with the issues weighted
+     * by {@code weights} rather than by the current weights, so that a table built earlier can be kept up to date
+     * without redoing every entry each time that the weights move.
+     *
+     * @param weights The weight of each issue relative to an even split, by opponent and issue.
+     * @return The contribution of each value of each issue, up to an amount common to every bid.
+     */
+    double[][] getOpponentScores(double[][] weights)
+    {
+        double[][] scores = new double[bidSpace.getIssueCount()][];
+        for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
+        {
+            scores[issue] = new double[bidSpace.getValueCount(issue)];
+            for (int value = 0; value < scores[issue].length; value++)
+                for (int o = 0; o < estimates.length; o++)
+                    if (strategy == BidStrategy.PRODUCT)
+                        scores[issue][value] += weights[o][issue] * Math.log(unnormalized[o][issue][value]);
+                    else
+                        scores[issue][value] += weights[o][issue] * estimates[o][issue][value];
+        }
+
+        return scores;
+    }
+
+    /**
+     * Maximizes the social welfare issue by issue, combining this agent's normalized utility for each value with the
+     * estimates of the opponents.
+     *
+     * @return The code of the welfare-maximizing bid.
+     */
+    long getWelfareMaximizingCode()
+    {
+        long code = 0;
+        for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
+        {
+            int argmax = 0;
+            double soWel = 0;
+            for (int value = 0; value < bidSpace.getValueCount(issue); value++)
+            {
+                double welfare = combine(bidSpace.getNormalizedEvaluation(issue, value), issue, value);
+                if (welfare > soWel || value == 0)
+                {
+                    argmax = value;
+                    soWel = welfare;
+                }
+            }
+
+            code = bidSpace.withDigit(code, issue, argmax);
+        }
+
+        return code;
+    }
+
+    /**
+     * @return The social welfare of the bid encoded by {@code code}.
+     */
+    double getWelfare(long code)
+    {
+        return getWelfare(code, bidSpace.getUtility(code));
+    }
+
+    /**
+     * Calculates the social welfare of a bid, in the range [0, 1].
+     *
+     * @param code       The code of the bid (snapped to the grids).
+     * @param ownUtility This agent's utility for the bid.
+     * @return The social welfare, averaged over the parties.
+     */
+    double getWelfare(long code, double ownUtility)
+    {
+        double util = ownUtility;
+        for (int issue = 0; issue < bidSpace.getIssueCount(); issue++)
+            util = combine(util, issue, bidSpace.getDigit(code, issue));
+
+        switch (strategy)
+        {
+            case SUM:
+                return util / parties;
+
+            case PRODUCT:
+                return Math.pow(util, 1. / parties);
+
+            default:
+                return 0;
+        }
+    }
+}
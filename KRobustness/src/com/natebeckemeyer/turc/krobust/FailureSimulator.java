@@ -0,0 +1,292 @@
+package com.natebeckemeyer.turc.krobust;
+
+import k.robust.Agent;
+import k.robust.Task;
+import k.robust.TeamInterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Estimates how reliable a team is when its agents fail at random, each independently with a probability of its own,
+ * rather than in the worst case that k-robustness guards against. Every scenario draws which agents fail, and the team
+ * survives it if every task is still performed by some agent that is left.
+ * <p>
+ * The scenarios are split into tasks of the common fork-join pool, each drawing from its own {@link SplittableRandom}
+ * split off from the seed when the task is forked, so the same seed always gives the same estimate however the tasks
+ * are scheduled. Each task counts into arrays of its own, which are added up when the tasks join.
+ * <p>
+ * How critical an agent is is measured by its Birnbaum importance: the probability that the failure of that agent
+ * alone decides whether the team survives. It is estimated by checking, in every scenario, whether the agent is
+ * pivotal, which takes no extra scenarios and is defined even for agents that never fail.
+ */
+public class FailureSimulator
+{
+    /**
+     * The fewest scenarios that a task of the fork-join pool splits in two.
+     */
+    private static final long THRESHOLD = 1 << 14;
+
+    /**
+     * The standard normal quantile of a 95% confidence interval.
+     */
+    private static final double Z = 1.96;
+
+    /**
+     * The reliability of a team, estimated from a number of scenarios.
+     */
+    public static class Reliability
+    {
+        private final long scenarios;
+        private final long survived;
+        private final List<Agent> agents;
+        private final long[] pivotal;
+
+        private Reliability(long scenarios, long survived, List<Agent> agents, long[] pivotal)
+        {
+            this.scenarios = scenarios;
+            this.survived = survived;
+            this.agents = agents;
+            this.pivotal = pivotal;
+        }
+
+        public long getScenarios()
+        {
+            return scenarios;
+        }
+
+        /**
+         * @return The estimated probability that every task stays covered.
+         */
+        public double getProbability()
+        {
+            return (double) survived / scenarios;
+        }
+
+        /**
+         * @return The lower end of the 95% Wilson interval of the probability that every task stays covered.
+         */
+        public double getLower()
+        {
+            return wilson(-Z);
+        }
+
+        /**
+         * @return The upper end of the 95% Wilson interval of the probability that every task stays covered.
+         */
+        public double getUpper()
+        {
+            return wilson(Z);
+        }
+
+        private double wilson(double z)
+        {
+            double p = getProbability();
+            double n = scenarios;
+            double center = p + z * z / (2 * n);
+            double spread = z * Math.sqrt(p * (1 - p) / n + z * z / (4 * n * n));
+            return (center + spread) / (1 + z * z / n);
+        }
+
+        /**
+         * @return The estimated Birnbaum importance of {@code agent}, or 0 if it is not part of the team.
+         */
+        public double getImportance(Agent agent)
+        {
+            int index = agents.indexOf(agent);
+            return index < 0 ? 0 : (double) pivotal[index] / scenarios;
+        }
+
+        /**
+         * @return The {@code count} agents of the team whose failure most often decides whether it survives, the most
+         * critical first.
+         */
+        public List<Agent> getMostCritical(int count)
+        {
+            Integer[] order = new Integer[agents.size()];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, Comparator.comparingLong((Integer i) -> pivotal[i]).reversed());
+
+            List<Agent> critical = new ArrayList<>();
+            for (int i = 0; i < Math.min(count, order.length); i++)
+                critical.add(agents.get(order[i]));
+
+            return critical;
+        }
+    }
+
+    private final List<Agent> agents;
+    private final int tasks;
+    private final double[] probabilities;
+
+    /**
+     * By agent, the distinct IDs of its tasks, and how many times it lists each.
+     */
+    private final int[][] taskIDs;
+    private final int[][] multiplicities;
+
+    /**
+     * By task, the number of agents of the team that perform it when none has failed.
+     */
+    private final int[] coverage;
+
+    /**
+     * @param team               The team.
+     * @param tasks              The tasks that must stay covered; their IDs run from 0 on, as in {@link
+     *                           GreedyKRobust}.
+     * @param failureProbability The probability that each agent fails.
+     * @throws IllegalArgumentException if a probability is not between 0 and 1.
+     */
+    public FailureSimulator(TeamInterface team, Task[] tasks, ToDoubleFunction<Agent> failureProbability)
+    {
+        this.agents = Collections.unmodifiableList(new ArrayList<>(team.getAgents()));
+        this.tasks = tasks.length;
+        this.probabilities = new double[agents.size()];
+        this.taskIDs = new int[agents.size()][];
+        this.multiplicities = new int[agents.size()][];
+        this.coverage = new int[this.tasks];
+
+        for (int a = 0; a < agents.size(); a++)
+        {
+            Agent agent = agents.get(a);
+            probabilities[a] = failureProbability.applyAsDouble(agent);
+            if (!(probabilities[a] >= 0 && probabilities[a] <= 1))
+                throw new IllegalArgumentException(
+                        "The failure probability of agent " + agent + " is " + probabilities[a] + ".");
+
+            int[] ids = new int[agent.getTasks().length];
+            for (int i = 0; i < ids.length; i++)
+                ids[i] = agent.getTasks()[i].ID;
+            Arrays.sort(ids);
+
+            int distinct = 0;
+            int[] counts = new int[ids.length];
+            for (int i = 0; i < ids.length; i++)
+            {
+                if (i == 0 || ids[i] != ids[i - 1])
+                    ids[distinct++] = ids[i];
+                counts[distinct - 1]++;
+                coverage[ids[i]]++;
+            }
+            taskIDs[a] = Arrays.copyOf(ids, distinct);
+            multiplicities[a] = Arrays.copyOf(counts, distinct);
+        }
+    }
+
+    /**
+     * Simulates {@code scenarios} scenarios on every core.
+     *
+     * @param seed The seed of the scenarios; the same seed gives the same estimate.
+     */
+    public Reliability simulate(long scenarios, long seed)
+    {
+        if (scenarios < 1)
+            throw new IllegalArgumentException("At least one scenario must be simulated, not " + scenarios + ".");
+
+        Counters counters = ForkJoinPool.commonPool().invoke(
+                new SimulationTask(scenarios, new SplittableRandom(seed)));
+        return new Reliability(scenarios, counters.survived, agents, counters.pivotal);
+    }
+
+    /**
+     * The counts of the scenarios simulated by a task.
+     */
+    private final class Counters
+    {
+        private long survived;
+        private final long[] pivotal = new long[agents.size()];
+
+        private Counters add(Counters other)
+        {
+            survived += other.survived;
+            for (int a = 0; a < pivotal.length; a++)
+                pivotal[a] += other.pivotal[a];
+
+            return this;
+        }
+    }
+
+    private final class SimulationTask extends RecursiveTask<Counters>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final long scenarios;
+        private final SplittableRandom random;
+
+        private SimulationTask(long scenarios, SplittableRandom random)
+        {
+            this.scenarios = scenarios;
+            this.random = random;
+        }
+
+        @Override protected Counters compute()
+        {
+            if (scenarios <= THRESHOLD)
+                return simulate(scenarios, random);
+
+            SimulationTask first = new SimulationTask(scenarios / 2, random.split());
+            SimulationTask second = new SimulationTask(scenarios - scenarios / 2, random);
+            first.fork();
+            Counters counters = second.compute();
+            return counters.add(first.join());
+        }
+    }
+
+    private Counters simulate(long scenarios, SplittableRandom random)
+    {
+        Counters counters = new Counters();
+        int[] left = new int[tasks];
+        boolean[] failed = new boolean[agents.size()];
+        for (long scenario = 0; scenario < scenarios; scenario++)
+        {
+            System.arraycopy(coverage, 0, left, 0, tasks);
+            for (int a = 0; a < failed.length; a++)
+            {
+                failed[a] = random.nextDouble() < probabilities[a];
+                if (failed[a])
+                    for (int i = 0; i < taskIDs[a].length; i++)
+                        left[taskIDs[a][i]] -= multiplicities[a][i];
+            }
+
+            int uncovered = 0;
+            for (int count : left)
+                if (count == 0)
+                    uncovered++;
+            if (uncovered == 0)
+                counters.survived++;
+
+            // An agent is pivotal if the team survives with it, but not without it.
+            for (int a = 0; a < failed.length; a++)
+                if (failed[a])
+                {
+                    if (uncovered == 0)
+                        continue;
+
+                    int restored = 0;
+                    for (int task : taskIDs[a])
+                        if (left[task] == 0)
+                            restored++;
+                    if (restored == uncovered)
+                        counters.pivotal[a]++;
+                } else if (uncovered == 0)
+                {
+                    for (int i = 0; i < taskIDs[a].length; i++)
+                        if (left[taskIDs[a][i]] == multiplicities[a][i])
+                        {
+                            counters.pivotal[a]++;
+                            break;
+                        }
+                }
+        }
+
+        return counters;
+    }
+}
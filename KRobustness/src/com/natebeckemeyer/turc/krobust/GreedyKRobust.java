@@ -6,6 +6,8 @@ import k.robust.TeamFinderInterface;
 import k.robust.TeamInterface;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Optional;
 
@@ -33,11 +35,10 @@ public class GreedyKRobust implements TeamFinderInterface
     {
         HashMap<Task, Double> costs = new HashMap<>();
         HashMap<Task, Integer> num = new HashMap<>();
-        for (int i = 0; i < numAgents; i++)
-            for (Task task : agents.get(i).getTasks())
+        for (Agent agent : agents.values())
+            for (Task task : agent.getTasks())
             {
-                costs.put(task, costs.getOrDefault(task, (double) 0) + agents.get(i).cost / agents.get(i)
-                        .getTasks().length);
+                costs.put(task, costs.getOrDefault(task, (double) 0) + agent.cost / agent.getTasks().length);
                 num.put(task, num.getOrDefault(task, 0) + 1);
             }
 
@@ -49,10 +50,10 @@ public class GreedyKRobust implements TeamFinderInterface
         this.taskCosts = averageCosts;
     }
 
-    private Optional<Agent> selectNextAgent()
+    private Optional<Agent> selectNextAgent(HashMap<Integer, Agent> pool)
     {
         HashMap<Agent, Double> scores = new HashMap<>();
-        agents.values().forEach(agent -> scores.put(agent, calculateScore(agent)));
+        pool.values().forEach(agent -> scores.put(agent, calculateScore(agent)));
 
         return scores.keySet().stream().max((agent1, agent2) -> scores.get(agent1).compareTo(scores.get(agent2)));
     }
@@ -86,17 +87,40 @@ public class GreedyKRobust implements TeamFinderInterface
      * @return A k-robust team of agents.
      */
     @Override public TeamInterface findTeam(int k)
+    {
+        return findTeam(k, Collections.emptyList());
+    }
+
+    /**
+     * Finds a team with the specified robustness that includes the agents of {@code start}, and adds agents greedily
+     * only for the coverage that they lack. A warm start from a team that is nearly k-robust thus takes a few steps
+     * instead of a whole search.
+     *
+     * @param k     The robustness of the team.
+     * @param start The agents to start the team with; each must be one of the agents of this problem.
+     * @return A k-robust team of agents.
+     */
+    public TeamInterface findTeam(int k, Collection<Agent> start)
     {
         for (int i = 0; i < needs.length; i++)
             needs[i] = k + 1;
 
+        // Each search draws from its own copy of the agents, so that the problem can be solved again.
+        HashMap<Integer, Agent> pool = new HashMap<>(agents);
         ArrayList<Agent> team = new ArrayList<>();
+        for (Agent agent : start)
+            if (pool.remove(agent.ID) != null)
+            {
+                for (Task performable : agent.getTasks())
+                    needs[performable.ID] = Math.max(needs[performable.ID] - 1, 0);
+                team.add(agent);
+            }
 
         while (!problemSatisfied())
         {
             Agent selected;
 
-            Optional<Agent> value = selectNextAgent();
+            Optional<Agent> value = selectNextAgent(pool);
             if (value.isPresent())
                 selected = value.get();
             else
@@ -107,7 +131,7 @@ public class GreedyKRobust implements TeamFinderInterface
 
             for (Task performable : selected.getTasks())
                 needs[performable.ID] = Math.max(this.needs[performable.ID] - 1, 0);
-            this.agents.remove(selected.ID);
+            pool.remove(selected.ID);
             team.add(selected);
         }
 
@@ -0,0 +1,314 @@
+package com.natebeckemeyer.turc.krobust;
+
+import k.robust.Agent;
+import k.robust.Task;
+import k.robust.TeamFinderInterface;
+import k.robust.TeamInterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers the teams found for recent problems, so that a scheduler which asks for teams from the same pools again
+ * and again does not search from nothing each time. A problem is identified by a fingerprint of its agents (each by its
+ * ID, cost and tasks) and of its number of tasks, together with k; the least recently used problems are forgotten once
+ * there are more than the capacity.
+ * <p>
+ * A problem seen before gets its team back at once. A problem whose agents differ from those of a problem seen before
+ * (with the same k and number of tasks) by at most a few agents gets the old team, repaired: the agents that left or
+ * changed are dropped, {@link GreedyKRobust} adds agents for the coverage that is missing, and then the agents that are
+ * no longer needed are removed, the most expensive first. The repaired team is k-robust, but need not be the team that
+ * a search from nothing would find.
+ * <p>
+ * The cache may be shared by several threads. The searches themselves run outside its lock, so that threads only wait
+ * on one another to look up and store teams; two threads that meet the same new problem at once both search for it.
+ */
+public class TeamCache
+{
+    /**
+     * A problem solved, and its team.
+     */
+    private static final class Entry
+    {
+        private final int tasks;
+        private final int k;
+
+        /**
+         * The IDs of the agents, in ascending order.
+         */
+        private final int[] agents;
+
+        /**
+         * The signature of each agent of {@link #agents}.
+         */
+        private final long[] signatures;
+
+        /**
+         * The IDs of the agents of the team.
+         */
+        private final int[] team;
+
+        private Entry(int tasks, int k, int[] agents, long[] signatures, int[] team)
+        {
+            this.tasks = tasks;
+            this.k = k;
+            this.agents = agents;
+            this.signatures = signatures;
+            this.team = team;
+        }
+    }
+
+    private final int maxDifference;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long hits;
+    private long warmStarts;
+    private long misses;
+
+    /**
+     * @param capacity      The most problems to remember.
+     * @param maxDifference The most agents that may have joined, left or changed since a problem seen before for a
+     *                      problem to start from its team; an agent that changed counts once.
+     */
+    public TeamCache(int capacity, int maxDifference)
+    {
+        this.maxDifference = maxDifference;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @return A finder of teams for the problem of {@code agents} and {@code tasks} that goes through this cache.
+     */
+    public TeamFinderInterface finderFor(Agent[] agents, Task[] tasks)
+    {
+        return k -> findTeam(agents, tasks, k);
+    }
+
+    /**
+     * Finds a team with the specified robustness, from the cache if the problem has been solved before.
+     *
+     * @param k The robustness of the team.
+     * @return A k-robust team of agents.
+     */
+    public TeamInterface findTeam(Agent[] agents, Task[] tasks, int k)
+    {
+        HashMap<Integer, Agent> byID = new HashMap<>();
+        for (Agent agent : agents)
+            byID.put(agent.ID, agent);
+
+        int[] ids = new int[byID.size()];
+        int i = 0;
+        for (int id : byID.keySet())
+            ids[i++] = id;
+        Arrays.sort(ids);
+
+        long[] signatures = new long[ids.length];
+        for (i = 0; i < ids.length; i++)
+            signatures[i] = signature(byID.get(ids[i]));
+
+        String key = key(tasks.length, k, signatures);
+        Entry nearest = null;
+        synchronized (this)
+        {
+            Entry exact = entries.get(key);
+            if (exact != null && exact.tasks == tasks.length && exact.k == k && Arrays.equals(exact.agents, ids) &&
+                    Arrays.equals(exact.signatures, signatures))
+            {
+                hits++;
+                return team(exact.team, byID);
+            }
+
+            int nearestDifference = maxDifference + 1;
+            for (Entry entry : entries.values())
+                if (entry.tasks == tasks.length && entry.k == k)
+                {
+                    int difference = difference(entry, ids, signatures, nearestDifference);
+                    if (difference < nearestDifference)
+                    {
+                        nearest = entry;
+                        nearestDifference = difference;
+                    }
+                }
+
+            if (nearest == null)
+                misses++;
+            else
+                warmStarts++;
+        }
+
+        GreedyKRobust finder = new GreedyKRobust(agents, tasks);
+        ArrayList<Agent> team;
+        if (nearest == null)
+        {
+            team = finder.findTeam(k).getAgents();
+        } else
+        {
+            ArrayList<Agent> start = new ArrayList<>();
+            for (int id : nearest.team)
+            {
+                // An agent whose cost or tasks changed counts as gone; the old entry holds another signature for it.
+                int index = Arrays.binarySearch(ids, id);
+                int old = Arrays.binarySearch(nearest.agents, id);
+                if (index >= 0 && signatures[index] == nearest.signatures[old])
+                    start.add(byID.get(id));
+            }
+            team = prune(finder.findTeam(k, start).getAgents(), tasks.length, k);
+        }
+
+        int[] members = new int[team.size()];
+        for (i = 0; i < members.length; i++)
+            members[i] = team.get(i).ID;
+        synchronized (this)
+        {
+            entries.put(key, new Entry(tasks.length, k, ids, signatures, members));
+        }
+
+        return team(members, byID);
+    }
+
+    /**
+     * @return The number of problems whose team was found in the cache.
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     * @return The number of problems whose team was repaired from that of a similar problem.
+     */
+    public synchronized long getWarmStarts()
+    {
+        return warmStarts;
+    }
+
+    /**
+     * @return The number of problems whose team was searched for from nothing.
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    private static TeamInterface team(int[] ids, HashMap<Integer, Agent> byID)
+    {
+        ArrayList<Agent> team = new ArrayList<>(ids.length);
+        for (int id : ids)
+            team.add(byID.get(id));
+
+        return () -> new ArrayList<>(team);
+    }
+
+    /**
+     * Removes the agents of {@code team} that are not needed for every task to be covered k + 1 times, the most
+     * expensive first. A team that does not cover every task (i.e. no team exists) is returned as it is.
+     */
+    private static ArrayList<Agent> prune(ArrayList<Agent> team, int tasks, int k)
+    {
+        int[] coverage = new int[tasks];
+        for (Agent agent : team)
+            for (Task task : agent.getTasks())
+                coverage[task.ID]++;
+
+        ArrayList<Agent> candidates = new ArrayList<>(team);
+        candidates.sort(Comparator.comparingDouble((Agent agent) -> agent.cost).reversed());
+        for (Agent agent : candidates)
+        {
+            // The agent may list a task more than once, so its coverage is taken away whole before it is checked.
+            for (Task task : agent.getTasks())
+                coverage[task.ID]--;
+
+            boolean needed = false;
+            for (Task task : agent.getTasks())
+                needed |= coverage[task.ID] < k + 1;
+
+            if (needed)
+                for (Task task : agent.getTasks())
+                    coverage[task.ID]++;
+            else
+                team.remove(agent);
+        }
+
+        return team;
+    }
+
+    /**
+     * @return A hash of the ID, the cost and the tasks of {@code agent}.
+     */
+    private static long signature(Agent agent)
+    {
+        int[] tasks = new int[agent.getTasks().length];
+        for (int i = 0; i < tasks.length; i++)
+            tasks[i] = agent.getTasks()[i].ID;
+        Arrays.sort(tasks);
+
+        long hash = mix(agent.ID);
+        hash = mix(hash ^ Double.doubleToLongBits(agent.cost));
+        for (int task : tasks)
+            hash = mix(hash ^ task);
+
+        return hash;
+    }
+
+    private static String key(int tasks, int k, long[] signatures)
+    {
+        long hash = mix(tasks);
+        for (long signature : signatures)
+            hash = mix(hash ^ signature);
+
+        return k + ":" + Long.toHexString(hash);
+    }
+
+    /**
+     * The finalizer of SplitMix64, which spreads every bit of its input over every bit of its output.
+     */
+    private static long mix(long value)
+    {
+        value = (value ^ value >>> 30) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ value >>> 27) * 0x94D049BB133111EBL;
+        return value ^ value >>> 31;
+    }
+
+    /**
+     * @param ids        The IDs of the agents of a problem, in ascending order.
+     * @param signatures The signature of each agent of {@code ids}.
+     * @return The number of agents that are in one of {@code entry} and the problem but not the other, or that are in
+     * both with different signatures; or {@code limit} if there are at least that many.
+     */
+    private static int difference(Entry entry, int[] ids, long[] signatures, int limit)
+    {
+        int difference = 0;
+        int i = 0;
+        int j = 0;
+        while ((i < entry.agents.length || j < ids.length) && difference < limit)
+        {
+            if (j == ids.length || i < entry.agents.length && entry.agents[i] < ids[j])
+            {
+                difference++;
+                i++;
+            } else if (i == entry.agents.length || ids[j] < entry.agents[i])
+            {
+                difference++;
+                j++;
+            } else
+            {
+                if (entry.signatures[i] != signatures[j])
+                    difference++;
+                i++;
+                j++;
+            }
+        }
+
+        return Math.min(difference, limit);
+    }
+}
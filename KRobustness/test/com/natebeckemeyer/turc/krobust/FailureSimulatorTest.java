@@ -0,0 +1,78 @@
+package com.natebeckemeyer.turc.krobust;
+
+import k.robust.Agent;
+import k.robust.Task;
+import k.robust.TeamInterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks the estimates of {@link FailureSimulator} against a team whose reliability and importances are known in
+ * closed form, and that the same seed gives the same estimate.
+ * <p>
+ * Agents 0 and 1 perform task 0 and fail half the time; agent 2 performs task 1 and fails a fifth of the time; agent
+ * 3 lists task 0 twice and always fails. The team survives when task 0 and task 1 are both covered: with probability
+ * (1 - 1/4) * 4/5 = 0.6. The Birnbaum importance of agent 0 (and of agent 1) is 4/5 - 4/5 * 1/2 = 0.4, that of agent
+ * 2 is 3/4, and that of agent 3, which alone would keep task 0 covered, is 4/5 - 0.6 = 0.2.
+ */
+public class FailureSimulatorTest
+{
+    private static final long SCENARIOS = 2_000_000;
+    private static final double TOLERANCE = 0.005;
+
+    public static void main(String[] args)
+    {
+        Task[] tasks = {new Task(0), new Task(1)};
+        Agent[] agents = {new Agent(0, new Task[]{tasks[0]}, 1), new Agent(1, new Task[]{tasks[0]}, 1),
+                new Agent(2, new Task[]{tasks[1]}, 1), new Agent(3, new Task[]{tasks[0], tasks[0]}, 1)};
+        Map<Agent, Double> probabilities = new HashMap<>();
+        probabilities.put(agents[0], 0.5);
+        probabilities.put(agents[1], 0.5);
+        probabilities.put(agents[2], 0.2);
+        probabilities.put(agents[3], 1.);
+        TeamInterface team = () -> new ArrayList<>(Arrays.asList(agents));
+
+        FailureSimulator simulator = new FailureSimulator(team, tasks, probabilities::get);
+        FailureSimulator.Reliability reliability = simulator.simulate(SCENARIOS, 7);
+        check(reliability.getScenarios() == SCENARIOS, reliability.getScenarios() + " scenarios");
+        check(reliability.getLower() <= 0.6 && 0.6 <= reliability.getUpper(),
+                "the interval " + reliability.getLower() + " to " + reliability.getUpper() + " misses 0.6");
+        check(Math.abs(reliability.getProbability() - 0.6) < TOLERANCE, "the reliability is off");
+
+        double[] importances = {0.4, 0.4, 0.75, 0.2};
+        for (int a = 0; a < agents.length; a++)
+            check(Math.abs(reliability.getImportance(agents[a]) - importances[a]) < TOLERANCE,
+                    "the importance of agent " + a + " is " + reliability.getImportance(agents[a]));
+        check(reliability.getImportance(new Agent(9, new Task[0], 1)) == 0, "an outsider is important");
+        check(reliability.getMostCritical(1).equals(Arrays.asList(agents[2])), "agent 2 is not the most critical");
+
+        FailureSimulator.Reliability again = simulator.simulate(SCENARIOS, 7);
+        check(again.getProbability() == reliability.getProbability() &&
+                again.getImportance(agents[3]) == reliability.getImportance(agents[3]),
+                "the same seed gave another estimate");
+
+        try
+        {
+            probabilities.put(agents[0], 1.5);
+            new FailureSimulator(team, tasks, probabilities::get);
+            throw new AssertionError("a probability above 1 was accepted");
+        } catch (IllegalArgumentException expected)
+        {
+            // The probability is refused.
+        }
+
+        System.out.printf("reliability %.4f (%.4f to %.4f); importances %.4f %.4f %.4f %.4f%n",
+                reliability.getProbability(), reliability.getLower(), reliability.getUpper(),
+                reliability.getImportance(agents[0]), reliability.getImportance(agents[1]),
+                reliability.getImportance(agents[2]), reliability.getImportance(agents[3]));
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
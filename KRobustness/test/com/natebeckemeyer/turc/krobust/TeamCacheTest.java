@@ -0,0 +1,140 @@
+package com.natebeckemeyer.turc.krobust;
+
+import k.robust.Agent;
+import k.robust.Task;
+import k.robust.TeamInterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Checks that {@link TeamCache} returns the stored team for a problem seen before, a k-robust repaired team for a
+ * problem that differs by a few agents (an agent that changed counting once), and searches afresh for the rest,
+ * forgetting the least recently used problems beyond its capacity.
+ */
+public class TeamCacheTest
+{
+    private static final int TASKS = 12;
+    private static final int AGENTS = 40;
+
+    public static void main(String[] args)
+    {
+        Task[] tasks = new Task[TASKS];
+        for (int t = 0; t < TASKS; t++)
+            tasks[t] = new Task(t);
+
+        Random random = new Random(0);
+        Agent[] agents = new Agent[AGENTS];
+        for (int a = 0; a < AGENTS; a++)
+            agents[a] = agent(a, tasks, random);
+
+        TeamCache cache = new TeamCache(2, 3);
+        TeamInterface first = cache.findTeam(agents, tasks, 1);
+        check(robust(first, 1), "the team searched for is not 1-robust");
+        check(counts(cache, 0, 0, 1), "the first problem did not miss");
+
+        check(ids(cache.finderFor(agents.clone(), tasks).findTeam(1)).equals(ids(first)),
+                "the team of a problem seen before differs");
+        check(counts(cache, 1, 0, 1), "a problem seen before did not hit");
+
+        // One agent of the team leaves the pool, and another becomes cheaper.
+        List<Agent> pool = new ArrayList<>(Arrays.asList(agents));
+        pool.remove(first.getAgents().get(0));
+        Agent cheaper = first.getAgents().get(1);
+        pool.set(pool.indexOf(cheaper), new Agent(cheaper.ID, cheaper.getTasks(), cheaper.cost / 2));
+        Agent[] changed = pool.toArray(new Agent[pool.size()]);
+        TeamInterface repaired = cache.findTeam(changed, tasks, 1);
+        check(robust(repaired, 1), "the repaired team is not 1-robust");
+        check(Arrays.asList(changed).containsAll(repaired.getAgents()), "the repaired team uses agents that left");
+        check(counts(cache, 1, 1, 1), "a problem differing by two agents did not start warm");
+
+        check(robust(cache.findTeam(agents, tasks, 2), 2), "the 2-robust team is not 2-robust");
+        check(counts(cache, 1, 1, 2), "a problem with another k did not miss");
+
+        // Using the changed problem again leaves the 2-robust one the least recently used of the two held.
+        cache.findTeam(changed, tasks, 1);
+        check(counts(cache, 2, 1, 2), "the changed problem did not hit");
+
+        Agent[] others = new Agent[AGENTS];
+        for (int a = 0; a < AGENTS; a++)
+            others[a] = agent(a, tasks, random);
+        cache.findTeam(others, tasks, 1);
+        check(counts(cache, 2, 1, 3), "an unrelated problem did not miss");
+        cache.findTeam(changed, tasks, 1);
+        check(counts(cache, 3, 1, 3), "a recently used problem was forgotten");
+        cache.findTeam(agents, tasks, 2);
+        check(counts(cache, 3, 1, 4), "the least recently used problem was kept beyond the capacity");
+        System.out.println(cache.getHits() + " hits, " + cache.getWarmStarts() + " warm start, " + cache.getMisses() +
+                " misses");
+
+        // An agent that changed counts once against the difference allowed.
+        TeamCache strict = new TeamCache(2, 1);
+        strict.findTeam(agents, tasks, 1);
+        TeamInterface warm = strict.findTeam(changed(agents, cheaper), tasks, 1);
+        check(robust(warm, 1), "the team repaired for one changed agent is not 1-robust");
+        check(counts(strict, 0, 1, 1), "a problem with one changed agent did not start warm");
+    }
+
+    /**
+     * @return {@code agents} with the agent of the ID of {@code agent} at half its cost.
+     */
+    private static Agent[] changed(Agent[] agents, Agent agent)
+    {
+        Agent[] changed = agents.clone();
+        for (int a = 0; a < changed.length; a++)
+            if (changed[a].ID == agent.ID)
+                changed[a] = new Agent(agent.ID, agent.getTasks(), agent.cost / 2);
+
+        return changed;
+    }
+
+    /**
+     * @return An agent of random cost that performs three random tasks.
+     */
+    private static Agent agent(int id, Task[] tasks, Random random)
+    {
+        Task[] performed = new Task[3];
+        for (int i = 0; i < performed.length; i++)
+            performed[i] = tasks[random.nextInt(tasks.length)];
+
+        return new Agent(id, performed, 1 + random.nextInt(10));
+    }
+
+    private static boolean robust(TeamInterface team, int k)
+    {
+        int[] coverage = new int[TASKS];
+        for (Agent agent : team.getAgents())
+            for (Task task : new HashSet<>(Arrays.asList(agent.getTasks())))
+                coverage[task.ID]++;
+
+        for (int count : coverage)
+            if (count < k + 1)
+                return false;
+
+        return true;
+    }
+
+    private static Set<Integer> ids(TeamInterface team)
+    {
+        Set<Integer> ids = new HashSet<>();
+        for (Agent agent : team.getAgents())
+            ids.add(agent.ID);
+
+        return ids;
+    }
+
+    private static boolean counts(TeamCache cache, long hits, long warmStarts, long misses)
+    {
+        return cache.getHits() == hits && cache.getWarmStarts() == warmStarts && cache.getMisses() == misses;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
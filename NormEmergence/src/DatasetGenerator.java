@@ -0,0 +1,98 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generates random dependency graphs in the format of {@code inputformat.txt}, for measuring how the pipeline scales
+ * beyond the hand-made datasets. The nodes are laid out in {@code depth} layers of {@code width} nodes; each node
+ * depends on each node of the layer before it with probability {@code density}, and its linking cost carries {@code
+ * edges} random edges between {@code vertices} vertices. The same parameters and seed always give the same dataset.
+ */
+final class DatasetGenerator
+{
+    private final int width;
+    private final int depth;
+    private final double density;
+    private final int edges;
+    private final int vertices;
+    private final long seed;
+
+    /**
+     * @throws IllegalArgumentException if there would be more than 26 vertices.
+     */
+    DatasetGenerator(int width, int depth, double density, int edges, int vertices, long seed)
+    {
+        if (vertices < 1 || vertices > 26)
+            throw new IllegalArgumentException("The vertices are named a to z, so there are 1 to 26 of them.");
+
+        this.width = width;
+        this.depth = depth;
+        this.density = density;
+        this.edges = edges;
+        this.vertices = vertices;
+        this.seed = seed;
+    }
+
+    /**
+     * @return The name of node {@code index} of layer {@code layer}.
+     */
+    private static String name(int layer, int index)
+    {
+        return "n" + layer + "_" + index;
+    }
+
+    private char vertex(Random random)
+    {
+        return (char) ('a' + random.nextInt(vertices));
+    }
+
+    /**
+     * Writes the dataset, one node per line.
+     */
+    void write(Writer out) throws IOException
+    {
+        Random random = new Random(seed);
+        StringBuilder line = new StringBuilder();
+        for (int layer = 0; layer < depth; layer++)
+            for (int index = 0; index < width; index++)
+            {
+                line.setLength(0);
+                line.append(name(layer, index));
+                if (layer > 0)
+                    for (int dependency = 0; dependency < width; dependency++)
+                        if (random.nextDouble() < density)
+                            line.append(' ').append(name(layer - 1, dependency));
+
+                line.append(" :");
+                for (int edge = 0; edge < edges; edge++)
+                    line.append(' ').append(vertex(random)).append(' ').append(vertex(random));
+
+                out.write(line.append('\n').toString());
+            }
+    }
+
+    /**
+     * Writes a dataset to a file.
+     *
+     * @param args The file, then the width, depth, density, edges per node, number of vertices and seed.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 7)
+        {
+            System.err.println("Usage: DatasetGenerator <file> <width> <depth> <density> <edges> <vertices> <seed>");
+            System.exit(10);
+        }
+
+        DatasetGenerator generator = new DatasetGenerator(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                Double.parseDouble(args[3]), Integer.parseInt(args[4]), Integer.parseInt(args[5]),
+                Long.parseLong(args[6]));
+        try (Writer out = Files.newBufferedWriter(Paths.get(args[0]), StandardCharsets.UTF_8))
+        {
+            generator.write(out);
+        }
+    }
+}
@@ -1,27 +1,280 @@
-import java.util.HashSet;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
 
 /**
  * Created for TURC by @author Nate Beckemeyer on 2016-07-29.
+ * <p>
+ * The nodes of a graph are numbered densely, in the order that the orderings choose among them, so that a set of
+ * nodes is a {@code long} mask of their ordinals. The search state (which nodes are visited) is a single mask, and the
+ * free nodes follow from it with bitwise operations alone.
+ * <p>
+ * A graph of more than {@link #MAX_NODES} nodes is wide (see {@link #isWide()}): a {@code long} cannot hold its sets
+ * of nodes, so only the methods that take and return {@link BitSet}s work for it. They work for every graph, but
+ * allocate where the masks do not.
  */
 public class DependencyGraph
 {
-    private HashSet<DependencyNode> nodes;
+    /**
+     * The most nodes that a graph can hold as {@code long} masks.
+     */
+    static final int MAX_NODES = Long.SIZE;
 
-    List<DependencyNode> getFreeNodes()
+    private final DependencyNode[] nodes;
+    private final HashMap<DependencyNode, Integer> ordinals = new HashMap<>();
+
+    /**
+     * The set of the dependencies of each node.
+     */
+    private final BitSet[] dependencySets;
+
+    /**
+     * The set of the nodes that depend on each node.
+     */
+    private final BitSet[] dependentSets;
+
+    /**
+     * The set of the nodes that depend on a node outside of the graph, and so can never be free.
+     */
+    private final BitSet blockedSet = new BitSet();
+
+    /**
+     * The masks of {@link #dependencySets}, {@link #dependentSets} and {@link #blockedSet}; only for graphs that are
+     * not wide.
+     */
+    private final long[] dependencies;
+    private final long[] dependents;
+    private final long blocked;
+
+    DependencyGraph(HashSet<DependencyNode> nodes)
     {
-        return nodes.stream().filter(DependencyNode::isIndependent).collect(Collectors.toList());
+        this.nodes = nodes.toArray(new DependencyNode[nodes.size()]);
+        for (int i = 0; i < this.nodes.length; i++)
+            ordinals.put(this.nodes[i], i);
+
+        dependencySets = new BitSet[this.nodes.length];
+        dependentSets = new BitSet[this.nodes.length];
+        for (int i = 0; i < this.nodes.length; i++)
+        {
+            dependencySets[i] = new BitSet();
+            dependentSets[i] = new BitSet();
+        }
+        for (int i = 0; i < this.nodes.length; i++)
+            for (DependencyNode dependency : this.nodes[i].getDependencies())
+            {
+                Integer ordinal = ordinals.get(dependency);
+                if (ordinal == null)
+                    blockedSet.set(i);
+                else
+                {
+                    dependencySets[i].set(ordinal);
+                    dependentSets[ordinal].set(i);
+                }
+            }
+
+        dependencies = toMasks(dependencySets);
+        dependents = toMasks(dependentSets);
+        blocked = isWide() ? 0 : toMask(blockedSet);
     }
 
-    void markVisited(DependencyNode n, boolean visited)
+    private DependencyGraph(DependencyGraph graph, BitSet[] dependencySets, BitSet[] dependentSets)
     {
-        n.setVisited(visited);
+        this.nodes = graph.nodes;
+        this.ordinals.putAll(graph.ordinals);
+        this.dependencySets = dependencySets;
+        this.dependentSets = dependentSets;
+        this.blockedSet.or(graph.blockedSet);
+        this.dependencies = toMasks(dependencySets);
+        this.dependents = toMasks(dependentSets);
+        this.blocked = graph.blocked;
     }
 
-    DependencyGraph(HashSet<DependencyNode> nodes)
+    /**
+     * @return The masks of {@code sets}, or null if the graph is wide.
+     */
+    private long[] toMasks(BitSet[] sets)
+    {
+        if (isWide())
+            return null;
+
+        long[] masks = new long[sets.length];
+        for (int i = 0; i < sets.length; i++)
+            masks[i] = toMask(sets[i]);
+
+        return masks;
+    }
+
+    private static long toMask(BitSet set)
+    {
+        long[] words = set.toLongArray();
+        return words.length == 0 ? 0 : words[0];
+    }
+
+    /**
+     * @param extra The set of the further dependencies of each node, by ordinal.
+     * @return This graph, with the further dependencies added; the nodes keep their ordinals.
+     */
+    DependencyGraph constrain(BitSet[] extra)
     {
-        this.nodes = nodes;
+        BitSet[] constrainedDependencies = new BitSet[nodes.length];
+        BitSet[] constrainedDependents = new BitSet[nodes.length];
+        for (int i = 0; i < nodes.length; i++)
+        {
+            constrainedDependencies[i] = (BitSet) dependencySets[i].clone();
+            constrainedDependents[i] = (BitSet) dependentSets[i].clone();
+        }
+        for (int i = 0; i < extra.length; i++)
+            for (int dependency = extra[i].nextSetBit(0); dependency >= 0;
+                 dependency = extra[i].nextSetBit(dependency + 1))
+            {
+                constrainedDependencies[i].set(dependency);
+                constrainedDependents[dependency].set(i);
+            }
+
+        return new DependencyGraph(this, constrainedDependencies, constrainedDependents);
     }
 
+    /**
+     * @return The number of nodes of the graph.
+     */
+    int size()
+    {
+        return nodes.length;
+    }
+
+    /**
+     * @return Whether the graph holds more nodes than a {@code long} mask can, so that only the methods on {@link
+     * BitSet}s work for it.
+     */
+    boolean isWide()
+    {
+        return nodes.length > MAX_NODES;
+    }
+
+    /**
+     * @return The mask of every node of the graph; only for graphs that are not wide, as are all the masks below.
+     */
+    long getAll()
+    {
+        return nodes.length == MAX_NODES ? -1L : (1L << nodes.length) - 1;
+    }
+
+    DependencyNode getNode(int ordinal)
+    {
+        return nodes[ordinal];
+    }
+
+    /**
+     * @return The ordinal of {@code node}, or -1 if it is not part of the graph.
+     */
+    int getOrdinal(DependencyNode node)
+    {
+        return ordinals.getOrDefault(node, -1);
+    }
+
+    /**
+     * @return The nodes of the graph, in the order that the orderings choose among them.
+     */
+    List<DependencyNode> getNodes()
+    {
+        return Arrays.asList(nodes.clone());
+    }
+
+    /**
+     * @return The mask of the dependencies of the node {@code ordinal}.
+     */
+    long getDependencies(int ordinal)
+    {
+        return dependencies[ordinal];
+    }
+
+    /**
+     * @return The mask of the nodes that depend on the node {@code ordinal}.
+     */
+    long getDependents(int ordinal)
+    {
+        return dependents[ordinal];
+    }
+
+    /**
+     * @param visited The mask of the nodes visited so far.
+     * @return The mask of the nodes that are not visited, but all of whose dependencies are.
+     */
+    long getFree(long visited)
+    {
+        long free = 0;
+        for (long candidates = getAll() & ~visited & ~blocked; candidates != 0; candidates &= candidates - 1)
+        {
+            int ordinal = Long.numberOfTrailingZeros(candidates);
+            if ((dependencies[ordinal] & ~visited) == 0)
+                free |= 1L << ordinal;
+        }
+
+        return free;
+    }
+
+    /**
+     * @return The set of the dependencies of the node {@code ordinal}, which must not be changed.
+     */
+    BitSet getDependencySet(int ordinal)
+    {
+        return dependencySets[ordinal];
+    }
+
+    /**
+     * @return The set of the nodes that depend on the node {@code ordinal}, which must not be changed.
+     */
+    BitSet getDependentSet(int ordinal)
+    {
+        return dependentSets[ordinal];
+    }
+
+    /**
+     * @return Whether every dependency of the node {@code ordinal} is in {@code visited}.
+     */
+    boolean isSatisfied(int ordinal, BitSet visited)
+    {
+        for (int dependency = dependencySets[ordinal].nextSetBit(0); dependency >= 0;
+             dependency = dependencySets[ordinal].nextSetBit(dependency + 1))
+            if (!visited.get(dependency))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * @param visited The set of the nodes visited so far.
+     * @return The set of the nodes that are not visited, but all of whose dependencies are.
+     */
+    BitSet getFree(BitSet visited)
+    {
+        BitSet free = new BitSet(nodes.length);
+        for (int ordinal = visited.nextClearBit(0); ordinal < nodes.length; ordinal = visited.nextClearBit(ordinal + 1))
+            if (!blockedSet.get(ordinal) && isSatisfied(ordinal, visited))
+                free.set(ordinal);
+
+        return free;
+    }
+
+    /**
+     * @return The nodes of {@code set}, by ordinal.
+     */
+    List<DependencyNode> toNodes(BitSet set)
+    {
+        List<DependencyNode> list = new ArrayList<>(set.cardinality());
+        for (int ordinal = set.nextSetBit(0); ordinal >= 0; ordinal = set.nextSetBit(ordinal + 1))
+            list.add(nodes[ordinal]);
+
+        return list;
+    }
+
+    /**
+     * @return The nodes of {@code mask}, by ordinal.
+     */
+    List<DependencyNode> toNodes(long mask)
+    {
+        List<DependencyNode> list = new ArrayList<>(Long.bitCount(mask));
+        for (; mask != 0; mask &= mask - 1)
+            list.add(nodes[Long.numberOfTrailingZeros(mask)]);
+
+        return list;
+    }
 }
@@ -3,66 +3,35 @@ import java.util.HashSet;
 import java.util.Set;
 
 /**
- * Note that distinct nodes must have distinct names.
+ * Note that distinct nodes must have distinct names. Nodes are interned per dataset (see {@link #intern}), so the
+ * nodes of one dataset never leak into the next.
  */
 final class DependencyNode
 {
-    private static HashMap<String, DependencyNode> nodes = new HashMap<>();
+    private final String name;
+    private final Set<DependencyNode> dependencies = new HashSet<>();
 
-    private String name;
-    private boolean visited;
-    private Set<DependencyNode> dependencies;
-
-    private boolean isVisited()
-    {
-        return visited;
-    }
-
-    boolean isIndependent()
+    Set<DependencyNode> getDependencies()
     {
-        if (visited)
-            return false;
-        for (DependencyNode node : dependencies)
-        {
-            if (!node.isVisited())
-                return false;
-        }
-        return true;
+        return dependencies;
     }
 
-    void setVisited(boolean newValue)
+    private DependencyNode(String name)
     {
-        visited = newValue;
-    }
-
-    private DependencyNode(Set<DependencyNode> dependencies, String name)
-    {
-        this.dependencies = dependencies;
         this.name = name;
     }
 
     /**
-     * Gets the {@link DependencyNode} of name {@code name}; if it doesn't exist, constructs it with no dependencies.
-     *
-     * @name The name of the node.
-     */
-    static DependencyNode get(String name)
-    {
-        return get(name, new HashSet<>());
-    }
-
-    /**
-     * Gets the {@link DependencyNode} of name {@code name}; if it doesn't exist, constructs it with the
-     * specified dependencies.
+     * Gets the {@link DependencyNode} of name {@code name} from {@code nodes}; if it doesn't exist, constructs it with
+     * no dependencies. A node referenced before it is defined is thus the same node that its definition fills in.
      *
-     * @param name         The name of the node to get.
-     * @param dependencies The dependencies to give the node if it does not exist.
+     * @param nodes The nodes of the dataset being read, by name.
+     * @param name  The name of the node.
      * @return The node
      */
-    static DependencyNode get(String name, Set<DependencyNode> dependencies)
+    static DependencyNode intern(HashMap<String, DependencyNode> nodes, String name)
     {
-        nodes.putIfAbsent(name, new DependencyNode(dependencies, name));
-        return nodes.get(name);
+        return nodes.computeIfAbsent(name, DependencyNode::new);
     }
 
     @Override public String toString()
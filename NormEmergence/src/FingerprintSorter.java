@@ -0,0 +1,301 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Groups placements by the fingerprints of their topologies within a fixed memory budget. Each placement is a record
+ * of three longs (the two halves of the fingerprint and the ideal); the records are buffered until the budget is
+ * reached, and then sorted and written to disk as a run. Reading the groups merges the runs, so every group comes out
+ * whole, one placement at a time, however many placements there are.
+ * <p>
+ * The buffer grows as records come in, up to the budget, so a small dataset takes little memory whatever the budget.
+ * At most {@link #MERGE_WIDTH} runs are open at once: beyond that, the runs are first merged into longer ones, a
+ * batch at a time.
+ * <p>
+ * Only the batch mode of {@link OrderingsGenerator} groups its placements this way; the interactive mode (see {@link
+ * OrderingsGenerator#seizeUniqueResults}) still holds every result in memory, and is out of the scope of this class.
+ */
+final class FingerprintSorter implements Closeable
+{
+    /**
+     * The size of a record, in bytes.
+     */
+    private static final int RECORD = 3 * Long.BYTES;
+
+    /**
+     * The number of records that the buffer starts out with.
+     */
+    private static final int INITIAL_RECORDS = 1 << 12;
+
+    /**
+     * The most runs that are merged at once, so that merging keeps few files open.
+     */
+    static final int MERGE_WIDTH = 64;
+
+    interface GroupVisitor
+    {
+        /**
+         * @param high  The high half of the fingerprint of the group.
+         * @param low   The low half of the fingerprint of the group.
+         * @param ideal A placement of the group.
+         * @param first Whether this is the first placement of the group.
+         */
+        void visit(long high, long low, long ideal, boolean first) throws IOException;
+    }
+
+    /**
+     * The most longs that the buffer may grow to.
+     */
+    private final int capacity;
+    private long[] buffer;
+    private int size;
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * @param budget The most memory, in bytes, that the buffered records may take.
+     */
+    FingerprintSorter(long budget)
+    {
+        capacity = 3 * (int) Math.max(1, Math.min(budget / RECORD, Integer.MAX_VALUE / 3));
+        buffer = new long[Math.min(capacity, 3 * INITIAL_RECORDS)];
+    }
+
+    void add(long high, long low, long ideal) throws IOException
+    {
+        if (size == buffer.length)
+        {
+            if (buffer.length < capacity)
+                buffer = Arrays.copyOf(buffer, (int) Math.min(capacity, 2L * buffer.length));
+            else
+                spill();
+        }
+
+        buffer[size++] = high;
+        buffer[size++] = low;
+        buffer[size++] = ideal;
+    }
+
+    /**
+     * Visits every record, grouped by fingerprint; the records are consumed.
+     *
+     * @return The number of groups.
+     */
+    long forEachGroup(GroupVisitor visitor) throws IOException
+    {
+        sort();
+        if (runs.isEmpty())
+        {
+            long groups = 0;
+            for (int i = 0; i < size; i += 3)
+            {
+                boolean first = i == 0 || buffer[i] != buffer[i - 3] || buffer[i + 1] != buffer[i - 2];
+                if (first)
+                    groups++;
+                visitor.visit(buffer[i], buffer[i + 1], buffer[i + 2], first);
+            }
+            size = 0;
+            return groups;
+        }
+
+        spill();
+        while (runs.size() > MERGE_WIDTH)
+            mergeRuns();
+
+        return merge(runs, visitor);
+    }
+
+    /**
+     * Merges the first {@link #MERGE_WIDTH} runs into a new run, at the end of the list.
+     */
+    private void mergeRuns() throws IOException
+    {
+        List<Path> batch = new ArrayList<>(runs.subList(0, MERGE_WIDTH));
+        Path merged = Files.createTempFile("fingerprints", ".run");
+        runs.add(merged);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(merged),
+                1 << 16)))
+        {
+            merge(batch, (high, low, ideal, first) ->
+            {
+                out.writeLong(high);
+                out.writeLong(low);
+                out.writeLong(ideal);
+            });
+        }
+        for (Path run : batch)
+            Files.delete(run);
+        runs.subList(0, MERGE_WIDTH).clear();
+    }
+
+    /**
+     * Visits the records of {@code files}, each sorted, in order.
+     *
+     * @return The number of groups.
+     */
+    private static long merge(List<Path> files, GroupVisitor visitor) throws IOException
+    {
+        PriorityQueue<Run> queue = new PriorityQueue<>();
+        try
+        {
+            for (Path run : files)
+            {
+                Run reader = new Run(run);
+                if (reader.advance())
+                    queue.add(reader);
+                else
+                    reader.close();
+            }
+
+            long groups = 0;
+            boolean started = false;
+            long high = 0;
+            long low = 0;
+            while (!queue.isEmpty())
+            {
+                Run run = queue.poll();
+                boolean first = !started || run.high != high || run.low != low;
+                if (first)
+                    groups++;
+                started = true;
+                high = run.high;
+                low = run.low;
+                visitor.visit(run.high, run.low, run.ideal, first);
+
+                if (run.advance())
+                    queue.add(run);
+                else
+                    run.close();
+            }
+            return groups;
+        } finally
+        {
+            for (Run run : queue)
+                run.close();
+        }
+    }
+
+    @Override public void close() throws IOException
+    {
+        for (Path run : runs)
+            Files.deleteIfExists(run);
+        runs.clear();
+    }
+
+    /**
+     * Sorts the buffered records, and writes them to a new run.
+     */
+    private void spill() throws IOException
+    {
+        sort();
+        Path run = Files.createTempFile("fingerprints", ".run");
+        runs.add(run);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run),
+                1 << 16)))
+        {
+            for (int i = 0; i < size; i++)
+                out.writeLong(buffer[i]);
+        }
+        size = 0;
+    }
+
+    private static int compare(long high, long low, long ideal, long otherHigh, long otherLow, long otherIdeal)
+    {
+        int order = Long.compare(high, otherHigh);
+        if (order == 0)
+            order = Long.compare(low, otherLow);
+        if (order == 0)
+            order = Long.compare(ideal, otherIdeal);
+
+        return order;
+    }
+
+    private int compare(int i, int j)
+    {
+        return compare(buffer[3 * i], buffer[3 * i + 1], buffer[3 * i + 2], buffer[3 * j], buffer[3 * j + 1],
+                buffer[3 * j + 2]);
+    }
+
+    private void swap(int i, int j)
+    {
+        for (int k = 0; k < 3; k++)
+        {
+            long record = buffer[3 * i + k];
+            buffer[3 * i + k] = buffer[3 * j + k];
+            buffer[3 * j + k] = record;
+        }
+    }
+
+    /**
+     * Heapsorts the buffered records in place, so that sorting takes no memory beyond the buffer.
+     */
+    private void sort()
+    {
+        int records = size / 3;
+        for (int i = records / 2 - 1; i >= 0; i--)
+            siftDown(i, records);
+        for (int end = records - 1; end > 0; end--)
+        {
+            swap(0, end);
+            siftDown(0, end);
+        }
+    }
+
+    private void siftDown(int i, int records)
+    {
+        for (int child = 2 * i + 1; child < records; i = child, child = 2 * i + 1)
+        {
+            if (child + 1 < records && compare(child + 1, child) > 0)
+                child++;
+            if (compare(i, child) >= 0)
+                return;
+            swap(i, child);
+        }
+    }
+
+    /**
+     * A run being merged, positioned at its current record.
+     */
+    private static final class Run implements Comparable<Run>, Closeable
+    {
+        private final DataInputStream in;
+        private long high;
+        private long low;
+        private long ideal;
+
+        private Run(Path file) throws IOException
+        {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        }
+
+        /**
+         * @return Whether there was another record.
+         */
+        private boolean advance() throws IOException
+        {
+            try
+            {
+                high = in.readLong();
+            } catch (EOFException e)
+            {
+                return false;
+            }
+            low = in.readLong();
+            ideal = in.readLong();
+            return true;
+        }
+
+        @Override public int compareTo(Run other)
+        {
+            return compare(high, low, ideal, other.high, other.low, other.ideal);
+        }
+
+        @Override public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
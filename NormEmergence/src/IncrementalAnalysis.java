@@ -0,0 +1,472 @@
+import javafx.util.Pair;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * The placements of a dataset and the index of their topologies, kept up to date as single nodes are defined,
+ * re-wired or removed, without rerunning the whole pipeline.
+ * <p>
+ * A change to a node can only change the placements that hold the node or something that (transitively) depends on
+ * it, its up-set; every other ideal stays an ideal, and keeps its topology unless the set of linking costs that are
+ * never cut changes. The ideals that meet the up-set are enumerated directly, partitioned by the first member of the
+ * up-set (in topological order) that they hold: the ideals whose first member is {@code u} are those that hold
+ * everything below {@code u} and nothing above an earlier member. So a change costs time in proportion to the
+ * placements that it touches.
+ * <p>
+ * Every node keeps its bit for as long as it is defined; a new node takes a free bit. The sets of nodes are {@link
+ * BitSet}s rather than masks, so that a dataset can hold any number of nodes. The topologies are identified by 128-bit
+ * fingerprints, as in {@link TopologyWalk}, but computed from the nodes that supply each connection, so that the
+ * vertices need not be known in advance. The prefix and suffix of each placement are ordered by the first ordering
+ * that reaches it, taking nodes in the order of their bits.
+ */
+final class IncrementalAnalysis
+{
+    private static final long HIGH_SEED = 0x9E3779B97F4A7C15L;
+    private static final long LOW_SEED = 0xC2B2AE3D27D4EB4FL;
+
+    private final boolean simple;
+
+    private final HashMap<String, Integer> bits = new HashMap<>();
+    private String[] names = new String[0];
+    private final HashMap<String, Set<String>> dependencies = new HashMap<>();
+
+    /**
+     * By bit, the connections of the linking cost of each node, as cells (see {@link #cell}).
+     */
+    private int[][] cells = new int[0][];
+
+    /**
+     * For every connection, the set of the nodes whose linking cost supplies it.
+     */
+    private final HashMap<Integer, BitSet> suppliers = new HashMap<>();
+
+    /**
+     * By bit, the set of the defined dependencies of each node.
+     */
+    private BitSet[] dependencySets = new BitSet[0];
+
+    /**
+     * The set of the nodes that are defined.
+     */
+    private final BitSet defined = new BitSet();
+
+    /**
+     * The set of the nodes that can never be free, as they (transitively) depend on a node that is not defined; their
+     * linking costs are never cut.
+     */
+    private BitSet always = new BitSet();
+
+    /**
+     * The bits of the nodes that can be part of an ideal, in topological order.
+     */
+    private int[] order = new int[0];
+
+    private final HashMap<BitSet, TopologyWalk.Fingerprint> placements = new HashMap<>();
+    private final HashMap<TopologyWalk.Fingerprint, Integer> topologies = new HashMap<>();
+
+    /**
+     * An analysis of the empty dataset, whose only placement is the empty ideal.
+     */
+    IncrementalAnalysis(boolean simple)
+    {
+        this.simple = simple;
+        index(new BitSet());
+    }
+
+    /**
+     * @param graph   The graph of a dataset.
+     * @param network The edges of the linking cost of each node of the dataset, by name.
+     * @param simple  Whether the connections are undirected.
+     * @return The analysis of the dataset; its nodes take the ordinals of {@code graph} as their bits, so the
+     * placements are named as {@link OrderingsGenerator#getAllConfigurations} names them.
+     */
+    static IncrementalAnalysis of(DependencyGraph graph, HashMap<String, HashMap<Character, HashSet<Character>>>
+            network, boolean simple)
+    {
+        IncrementalAnalysis analysis = new IncrementalAnalysis(simple);
+        for (int node = 0; node < graph.size(); node++)
+        {
+            String name = graph.getNode(node).toString();
+            HashSet<String> dependencies = new HashSet<>();
+            graph.getNode(node).getDependencies().forEach(dependency -> dependencies.add(dependency.toString()));
+            analysis.put(name, node, dependencies, network.getOrDefault(name, new HashMap<>()));
+        }
+
+        analysis.restructure();
+        analysis.unindex(new BitSet());
+        analysis.forEachIdealMeeting(null, analysis::index);
+        return analysis;
+    }
+
+    /**
+     * Defines the node {@code name}, or re-wires it if it is already defined.
+     *
+     * @param name         The name of the node.
+     * @param dependencies The names of its dependencies; those that are not defined keep it from ever being free.
+     * @param edges        The edges of its linking cost.
+     * @return The number of placements recomputed.
+     */
+    int define(String name, Set<String> dependencies, Map<Character, ? extends Set<Character>> edges)
+    {
+        Integer bit = bits.get(name);
+        int node = bit == null ? defined.nextClearBit(0) : bit;
+        return change(name, () -> put(name, node, new HashSet<>(dependencies), edges));
+    }
+
+    /**
+     * Removes the node {@code name}; the nodes that depend on it can no longer be free.
+     *
+     * @return The number of placements recomputed.
+     */
+    int remove(String name)
+    {
+        Integer bit = bits.get(name);
+        if (bit == null)
+            return 0;
+
+        return change(name, () ->
+        {
+            unsupply(bit);
+            bits.remove(name);
+            names[bit] = null;
+            cells[bit] = null;
+            dependencies.remove(name);
+            defined.clear(bit);
+        });
+    }
+
+    /**
+     * @return The number of meaningful linking cost placements.
+     */
+    int getPlacementCount()
+    {
+        return placements.size();
+    }
+
+    /**
+     * @return The number of unique topologies.
+     */
+    int getTopologyCount()
+    {
+        return topologies.size();
+    }
+
+    /**
+     * @return The placements, grouped by their topologies.
+     */
+    HashMap<TopologyWalk.Fingerprint, HashSet<String>> getUniqueResults()
+    {
+        HashMap<TopologyWalk.Fingerprint, HashSet<String>> results = new HashMap<>();
+        placements.forEach((ideal, fingerprint) ->
+                results.computeIfAbsent(fingerprint, f -> new HashSet<>()).add(describe(ideal)));
+        return results;
+    }
+
+    /**
+     * Applies a change to the node {@code name}, and recomputes the placements that it touches.
+     */
+    private int change(String name, Runnable apply)
+    {
+        BitSet before = always;
+        int recomputed = 0;
+
+        forEachIdealMeeting(getUpSet(name), this::unindex);
+
+        apply.run();
+        restructure();
+
+        Integer bit = bits.get(name);
+        if (!before.equals(always) || bit != null && (before.get(bit) || always.get(bit)))
+        {
+            // The linking costs that are never cut changed, and with them every topology.
+            for (Map.Entry<BitSet, TopologyWalk.Fingerprint> entry : placements.entrySet())
+            {
+                release(entry.getValue());
+                entry.setValue(fingerprint(entry.getKey()));
+                topologies.merge(entry.getValue(), 1, Integer::sum);
+                recomputed++;
+            }
+        }
+
+        long[] added = new long[1];
+        forEachIdealMeeting(getUpSet(name), ideal ->
+        {
+            added[0]++;
+            index(ideal);
+        });
+
+        return recomputed + (int) added[0];
+    }
+
+    private void put(String name, int bit, Set<String> dependencies, Map<Character, ? extends Set<Character>> edges)
+    {
+        if (bit >= names.length)
+        {
+            int capacity = Math.max(2 * names.length, bit + 1);
+            names = Arrays.copyOf(names, capacity);
+            cells = Arrays.copyOf(cells, capacity);
+            dependencySets = Arrays.copyOf(dependencySets, capacity);
+        }
+        if (names[bit] != null)
+            unsupply(bit);
+
+        bits.put(name, bit);
+        names[bit] = name;
+        this.dependencies.put(name, dependencies);
+        defined.set(bit);
+
+        cells[bit] = edges.entrySet().stream().flatMapToInt(entry -> entry.getValue().stream()
+                .mapToInt(end -> cell(entry.getKey(), end))).distinct().toArray();
+        for (int cell : cells[bit])
+            suppliers.computeIfAbsent(cell, c -> new BitSet()).set(bit);
+    }
+
+    private void unsupply(int bit)
+    {
+        for (int cell : cells[bit])
+        {
+            BitSet remaining = suppliers.get(cell);
+            remaining.clear(bit);
+            if (remaining.isEmpty())
+                suppliers.remove(cell);
+        }
+    }
+
+    /**
+     * Recomputes the dependency sets, the nodes that can never be free, and the topological order.
+     */
+    private void restructure()
+    {
+        BitSet unsatisfied = new BitSet();
+        for (int node = defined.nextSetBit(0); node >= 0; node = defined.nextSetBit(node + 1))
+        {
+            dependencySets[node] = new BitSet();
+            for (String dependency : dependencies.get(names[node]))
+            {
+                Integer bit = bits.get(dependency);
+                if (bit == null)
+                    unsatisfied.set(node);
+                else
+                    dependencySets[node].set(bit);
+            }
+        }
+
+        int[] sorted = new int[defined.cardinality()];
+        int count = 0;
+        BitSet visited = new BitSet();
+        for (int node = getFirstFree(visited, unsatisfied, null); node >= 0;
+             node = getFirstFree(visited, unsatisfied, null))
+        {
+            sorted[count++] = node;
+            visited.set(node);
+        }
+
+        order = Arrays.copyOf(sorted, count);
+        always = (BitSet) defined.clone();
+        always.andNot(visited);
+    }
+
+    /**
+     * @return The first defined node that is neither visited nor {@code unsatisfied}, that is in {@code allowed} (if
+     * not null), and all of whose dependencies are visited; or -1 if there is none.
+     */
+    private int getFirstFree(BitSet visited, BitSet unsatisfied, BitSet allowed)
+    {
+        for (int node = defined.nextSetBit(0); node >= 0; node = defined.nextSetBit(node + 1))
+            if (!visited.get(node) && !unsatisfied.get(node) && (allowed == null || allowed.get(node)) &&
+                    isSatisfied(node, visited))
+                return node;
+
+        return -1;
+    }
+
+    /**
+     * @return Whether every defined dependency of {@code node} is in {@code ideal}.
+     */
+    private boolean isSatisfied(int node, BitSet ideal)
+    {
+        BitSet nodeDependencies = dependencySets[node];
+        for (int dependency = nodeDependencies.nextSetBit(0); dependency >= 0;
+             dependency = nodeDependencies.nextSetBit(dependency + 1))
+            if (!ideal.get(dependency))
+                return false;
+
+        return true;
+    }
+
+    /**
+     * @return The set of the defined nodes that are {@code name} or (transitively) depend on it.
+     */
+    private BitSet getUpSet(String name)
+    {
+        HashSet<String> upSet = new HashSet<>();
+        upSet.add(name);
+        for (boolean grown = true; grown; )
+        {
+            grown = false;
+            for (Map.Entry<String, Set<String>> entry : dependencies.entrySet())
+                if (!upSet.contains(entry.getKey()) && entry.getValue().stream().anyMatch(upSet::contains))
+                    grown = upSet.add(entry.getKey());
+        }
+
+        BitSet set = new BitSet();
+        for (String node : upSet)
+            if (bits.containsKey(node))
+                set.set(bits.get(node));
+
+        return set;
+    }
+
+    /**
+     * Reports every ideal that holds a node of {@code set}, or every ideal if {@code set} is null. The ideal is reused
+     * from one report to the next.
+     */
+    private void forEachIdealMeeting(BitSet set, Consumer<BitSet> consumer)
+    {
+        if (set == null)
+        {
+            enumerate(0, new BitSet(), new BitSet(), new BitSet(), consumer);
+            return;
+        }
+
+        BitSet excluded = new BitSet();
+        for (int node : order)
+        {
+            if (!set.get(node))
+                continue;
+
+            BitSet downSet = getDownSet(node);
+            if (!downSet.intersects(excluded))
+                enumerate(0, new BitSet(), downSet, excluded, consumer);
+            excluded.set(node);
+        }
+    }
+
+    private BitSet getDownSet(int node)
+    {
+        BitSet downSet = new BitSet();
+        downSet.set(node);
+        BitSet frontier = (BitSet) dependencySets[node].clone();
+        frontier.andNot(downSet);
+        while (!frontier.isEmpty())
+        {
+            downSet.or(frontier);
+            BitSet next = new BitSet();
+            for (int member = frontier.nextSetBit(0); member >= 0; member = frontier.nextSetBit(member + 1))
+                next.or(dependencySets[member]);
+            next.andNot(downSet);
+            frontier = next;
+        }
+
+        return downSet;
+    }
+
+    /**
+     * Enumerates the ideals that hold every node of {@code included} and none of {@code excluded}, deciding the nodes
+     * from {@code index} on in topological order.
+     */
+    private void enumerate(int index, BitSet ideal, BitSet included, BitSet excluded, Consumer<BitSet> consumer)
+    {
+        if (index == order.length)
+        {
+            consumer.accept(ideal);
+            return;
+        }
+
+        int node = order[index];
+        if (isSatisfied(node, ideal) && !excluded.get(node))
+        {
+            ideal.set(node);
+            enumerate(index + 1, ideal, included, excluded, consumer);
+            ideal.clear(node);
+        }
+        if (!included.get(node))
+            enumerate(index + 1, ideal, included, excluded, consumer);
+    }
+
+    private void index(BitSet ideal)
+    {
+        TopologyWalk.Fingerprint fingerprint = fingerprint(ideal);
+        placements.put((BitSet) ideal.clone(), fingerprint);
+        topologies.merge(fingerprint, 1, Integer::sum);
+    }
+
+    private void unindex(BitSet ideal)
+    {
+        TopologyWalk.Fingerprint fingerprint = placements.remove(ideal);
+        if (fingerprint != null)
+            release(fingerprint);
+    }
+
+    private void release(TopologyWalk.Fingerprint fingerprint)
+    {
+        topologies.computeIfPresent(fingerprint, (f, count) -> count == 1 ? null : count - 1);
+    }
+
+    private int cell(char from, char to)
+    {
+        if (simple && from > to)
+            return to << 16 | from;
+
+        return from << 16 | to;
+    }
+
+    /**
+     * @return A well-mixed function of {@code value}, the finalizer of SplitMix64.
+     */
+    private static long mix(long value)
+    {
+        value = (value ^ value >>> 30) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ value >>> 27) * 0x94D049BB133111EBL;
+        return value ^ value >>> 31;
+    }
+
+    /**
+     * @return The fingerprint of the topology of the placement of {@code ideal}: the connections of its linking costs,
+     * and of those that are never cut.
+     */
+    private TopologyWalk.Fingerprint fingerprint(BitSet ideal)
+    {
+        BitSet present = (BitSet) ideal.clone();
+        present.or(always);
+        long high = 0;
+        long low = 0;
+        for (Map.Entry<Integer, BitSet> entry : suppliers.entrySet())
+            if (entry.getValue().intersects(present))
+            {
+                high ^= mix(entry.getKey() + HIGH_SEED);
+                low ^= mix(entry.getKey() + LOW_SEED);
+            }
+
+        return new TopologyWalk.Fingerprint(high, low);
+    }
+
+    /**
+     * @return The placement of {@code ideal}, as {@link OrderingsGenerator} writes placements.
+     */
+    private String describe(BitSet ideal)
+    {
+        LinkedHashSet<String> prefix = new LinkedHashSet<>();
+        LinkedHashSet<String> suffix = new LinkedHashSet<>();
+        BitSet visited = new BitSet();
+        for (int pass = 0; pass < 2; pass++)
+        {
+            BitSet allowed = pass == 0 ? ideal : null;
+            for (int node = getFirstFree(visited, always, allowed); node >= 0;
+                 node = getFirstFree(visited, always, allowed))
+            {
+                (pass == 0 ? prefix : suffix).add(names[node]);
+                visited.set(node);
+            }
+        }
+
+        return OrderingsGenerator.pairToString(new Pair<>(prefix, suffix));
+    }
+}
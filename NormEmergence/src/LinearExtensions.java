@@ -0,0 +1,147 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * The valid orderings (linear extensions) of a {@link DependencyGraph}, produced lazily, one at a time, in the same
+ * order as the depth-first search over the free nodes always produced them. The search state is the mask of the
+ * visited nodes and the ordinal of the node chosen at each depth, so an iteration holds O(n) memory however many
+ * orderings there are, and stepping it neither allocates nor hashes. The visited nodes of a wide graph (see {@link
+ * DependencyGraph#isWide()}) are kept as a set instead, and each step then allocates the set of the free nodes.
+ */
+class LinearExtensions implements Iterable<List<DependencyNode>>
+{
+    private final DependencyGraph graph;
+
+    LinearExtensions(DependencyGraph graph)
+    {
+        this.graph = graph;
+    }
+
+    @Override public Iterator<List<DependencyNode>> iterator()
+    {
+        return new OrderingIterator();
+    }
+
+    /**
+     * Visits every ordering, as the ordinals of its nodes.
+     *
+     * @param visitor Called with the ordinals of each ordering in its first {@code length} entries; the array is
+     *                reused from one ordering to the next.
+     */
+    void forEach(OrderingVisitor visitor)
+    {
+        OrderingIterator iterator = new OrderingIterator();
+        while (iterator.advance())
+            visitor.visit(iterator.choices, iterator.depth);
+    }
+
+    interface OrderingVisitor
+    {
+        void visit(int[] ordering, int length);
+    }
+
+    private class OrderingIterator implements Iterator<List<DependencyNode>>
+    {
+        /**
+         * The ordinal of the node chosen at each depth of the search.
+         */
+        private final int[] choices = new int[graph.size()];
+
+        private long visited;
+        private final BitSet wideVisited = new BitSet();
+        private int depth;
+        private boolean started;
+        private boolean pending;
+
+        /**
+         * @return The ordinal of the first free node after {@code after}, or -1 if there is none.
+         */
+        private int nextFree(int after)
+        {
+            if (graph.isWide())
+                return graph.getFree(wideVisited).nextSetBit(after + 1);
+
+            long free = graph.getFree(visited);
+            if (after >= 0)
+                free &= -2L << after;
+            return free == 0 ? -1 : Long.numberOfTrailingZeros(free);
+        }
+
+        private void choose(int choice)
+        {
+            choices[depth++] = choice;
+            if (graph.isWide())
+                wideVisited.set(choice);
+            else
+                visited |= 1L << choice;
+        }
+
+        /**
+         * Descends from the current depth, always taking the first free node, until no node is free; the path then is
+         * an ordering (complete, unless the dependencies are cyclic).
+         */
+        private void descend()
+        {
+            for (int choice = nextFree(-1); choice >= 0; choice = nextFree(-1))
+                choose(choice);
+        }
+
+        /**
+         * Backtracks to the deepest depth with a further free node to choose, and descends from there.
+         *
+         * @return Whether there was a further ordering.
+         */
+        private boolean advance()
+        {
+            if (!started)
+            {
+                started = true;
+                descend();
+                return true;
+            }
+
+            while (depth > 0)
+            {
+                int previous = choices[--depth];
+                if (graph.isWide())
+                    wideVisited.clear(previous);
+                else
+                    visited &= ~(1L << previous);
+
+                int choice = nextFree(previous);
+                if (choice >= 0)
+                {
+                    choose(choice);
+                    descend();
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override public boolean hasNext()
+        {
+            if (!pending)
+                pending = advance();
+
+            return pending;
+        }
+
+        @Override public List<DependencyNode> next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+
+            pending = false;
+            DependencyNode[] nodes = new DependencyNode[depth];
+            for (int d = 0; d < depth; d++)
+                nodes[d] = graph.getNode(choices[d]);
+
+            return Arrays.asList(nodes);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.LongConsumer;
+
+/**
+ * The classes of interchangeable nodes of a {@link DependencyGraph}: nodes with the same dependencies, the same
+ * dependents and the same edges. Swapping two such nodes maps orderings to orderings and ideals to ideals, and leaves
+ * every topology as it was, so only one member of each orbit needs to be enumerated.
+ * <p>
+ * The reduction orders the members of each class by ordinal, as if each depended on the one before it. An ideal of the
+ * reduced graph holds a prefix of every class, and stands for every ideal holding as many members of each class; an
+ * ordering of the reduced graph stands for the orderings that permute each class. The enumeration therefore shrinks by
+ * up to the product of the factorials of the class sizes, and {@link #expand} recovers the ideals that were skipped.
+ * <p>
+ * The ideals of a wide graph (see {@link DependencyGraph#isWide()}) are not masks, so no classes are looked for in
+ * one: every class holds a single node, and the reduced graph is the graph itself.
+ */
+final class NodeSymmetry
+{
+    private final DependencyGraph reduced;
+
+    /**
+     * The ordinals of the members of every class of more than one node, in ascending order.
+     */
+    private final int[][] classes;
+
+    /**
+     * @param graph   The graph.
+     * @param network The edges of the linking cost of each node, by name.
+     * @param detect  Whether to look for interchangeable nodes at all; if not, or if the graph is wide, every class
+     *                holds a single node.
+     */
+    NodeSymmetry(DependencyGraph graph, HashMap<String, HashMap<Character, HashSet<Character>>> network,
+                 boolean detect)
+    {
+        LinkedHashMap<List<Object>, List<Integer>> byKey = new LinkedHashMap<>();
+        if (detect && !graph.isWide())
+            for (int node = 0; node < graph.size(); node++)
+            {
+                DependencyNode dependencyNode = graph.getNode(node);
+                List<Object> key = Arrays.asList(dependencyNode.getDependencies(), graph.getDependents(node),
+                        network.get(dependencyNode.toString()));
+                byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(node);
+            }
+
+        List<int[]> found = new ArrayList<>();
+        BitSet[] chains = new BitSet[graph.size()];
+        for (int node = 0; node < chains.length; node++)
+            chains[node] = new BitSet();
+        for (List<Integer> members : byKey.values())
+        {
+            if (members.size() < 2)
+                continue;
+
+            int[] ordinals = members.stream().mapToInt(Integer::intValue).toArray();
+            for (int i = 1; i < ordinals.length; i++)
+                chains[ordinals[i]].set(ordinals[i - 1]);
+            found.add(ordinals);
+        }
+
+        this.classes = found.toArray(new int[found.size()][]);
+        this.reduced = classes.length == 0 ? graph : graph.constrain(chains);
+    }
+
+    /**
+     * @return The graph whose orderings and ideals are the representatives of the orbits; the nodes keep their
+     * ordinals.
+     */
+    DependencyGraph getReducedGraph()
+    {
+        return reduced;
+    }
+
+    /**
+     * @return The number of orderings of the graph per ordering of the reduced graph.
+     */
+    BigInteger getOrderingFactor()
+    {
+        BigInteger factor = BigInteger.ONE;
+        for (int[] members : classes)
+            for (int k = 2; k <= members.length; k++)
+                factor = factor.multiply(BigInteger.valueOf(k));
+
+        return factor;
+    }
+
+    /**
+     * @return The number of ideals of the graph that the ideal {@code reducedIdeal} of the reduced graph stands for.
+     */
+    long getMultiplicity(long reducedIdeal)
+    {
+        long multiplicity = 1;
+        for (int[] members : classes)
+        {
+            int chosen = 0;
+            for (int member : members)
+                if ((reducedIdeal & 1L << member) != 0)
+                    chosen++;
+
+            // The binomial coefficient, which stays integral at every step.
+            for (int i = 1; i <= chosen; i++)
+                multiplicity = multiplicity * (members.length - chosen + i) / i;
+        }
+
+        return multiplicity;
+    }
+
+    /**
+     * @return The counts of the graph, from the ideals of the reduced graph.
+     */
+    OrderIdeals.Counts count(OrderIdeals reducedIdeals)
+    {
+        if (classes.length == 0)
+            return reducedIdeals.count();
+
+        long[] ideals = new long[1];
+        reducedIdeals.forEachIdeal(ideal -> ideals[0] += getMultiplicity(ideal));
+        return new OrderIdeals.Counts(reducedIdeals.count().getOrderings().multiply(getOrderingFactor()), ideals[0]);
+    }
+
+    /**
+     * Reports every ideal of the graph that the ideal {@code reducedIdeal} of the reduced graph stands for, i.e. every
+     * choice of as many members of each class.
+     */
+    void expand(long reducedIdeal, LongConsumer consumer)
+    {
+        long ideal = reducedIdeal;
+        int[] chosen = new int[classes.length];
+        for (int c = 0; c < classes.length; c++)
+            for (int member : classes[c])
+                if ((ideal & 1L << member) != 0)
+                {
+                    chosen[c]++;
+                    ideal &= ~(1L << member);
+                }
+
+        expand(0, 0, chosen, ideal, consumer);
+    }
+
+    /**
+     * Chooses {@code remaining} more members of class {@code c}, from its member {@code from} on, and then the members
+     * of the classes after it.
+     */
+    private void expand(int c, int from, int[] remaining, long ideal, LongConsumer consumer)
+    {
+        if (c == classes.length)
+        {
+            consumer.accept(ideal);
+            return;
+        }
+
+        int[] members = classes[c];
+        if (remaining[c] == 0)
+        {
+            expand(c + 1, 0, remaining, ideal, consumer);
+            return;
+        }
+
+        for (int i = from; i <= members.length - remaining[c]; i++)
+        {
+            remaining[c]--;
+            expand(c, i + 1, remaining, ideal | 1L << members[i], consumer);
+            remaining[c]++;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+import javafx.util.Pair;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * The order ideals (downsets) of a {@link DependencyGraph}: the sets of nodes that can precede the linking cost in
+ * some valid ordering. These are exactly the distinct prefixes that splitting every ordering at every point produces,
+ * but enumerating them directly costs time proportional to their number rather than to the number of orderings.
+ * <p>
+ * The ideals are enumerated by deciding, in a topological order, whether each node is in the ideal; a node can only
+ * be included once all of its dependencies are, and every partial decision extends to at least one ideal, so the
+ * search never backtracks out of a dead end. Each ideal is reported as the split that the first ordering reaching it
+ * would give: that ordering takes, at every step, the first free node (in the order of {@link
+ * DependencyGraph#getNodes()}), first among the nodes of the ideal and then among the rest.
+ * <p>
+ * The ideals are reported as {@code long} masks, except those of a wide graph (see {@link DependencyGraph#isWide()}),
+ * which only {@link #forEachWideIdeal} and {@link #split(BitSet)} take; they are enumerated one at a time, in the same
+ * order.
+ */
+class OrderIdeals
+{
+    private final DependencyGraph graph;
+
+    /**
+     * The ordinals of the nodes that can be part of an ideal, in topological order.
+     */
+    private final int[] topologicalOrder;
+
+    OrderIdeals(DependencyGraph graph)
+    {
+        this.graph = graph;
+
+        int[] order = new int[graph.size()];
+        int count = 0;
+        if (graph.isWide())
+        {
+            BitSet visited = new BitSet();
+            for (BitSet free = graph.getFree(visited); !free.isEmpty(); free = graph.getFree(visited))
+            {
+                order[count] = free.nextSetBit(0);
+                visited.set(order[count++]);
+            }
+        } else
+        {
+            long visited = 0;
+            for (long free = graph.getFree(visited); free != 0; free = graph.getFree(visited))
+            {
+                order[count] = Long.numberOfTrailingZeros(free);
+                visited |= 1L << order[count++];
+            }
+        }
+        this.topologicalOrder = Arrays.copyOf(order, count);
+    }
+
+    DependencyGraph getGraph()
+    {
+        return graph;
+    }
+
+    /**
+     * @return The ordinals of the nodes that can be part of an ideal, in the order that the enumeration decides them.
+     */
+    int[] getTopologicalOrder()
+    {
+        return topologicalOrder.clone();
+    }
+
+    /**
+     * @return The number of decisions at which a parallel enumeration splits into tasks: enough for several tasks per
+     * thread of the common fork-join pool.
+     */
+    int getSplitDepth()
+    {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism();
+        return Math.min(topologicalOrder.length, 2 * (32 - Integer.numberOfLeadingZeros(8 * parallelism)));
+    }
+
+    /**
+     * The sizes of the lattice of ideals.
+     */
+    static final class Counts
+    {
+        private final BigInteger orderings;
+        private final long ideals;
+
+        Counts(BigInteger orderings, long ideals)
+        {
+            this.orderings = orderings;
+            this.ideals = ideals;
+        }
+
+        /**
+         * @return The number of valid orderings (maximal chains of the lattice).
+         */
+        BigInteger getOrderings()
+        {
+            return orderings;
+        }
+
+        /**
+         * @return The number of ideals, i.e. of meaningful linking cost placements.
+         */
+        long getIdeals()
+        {
+            return ideals;
+        }
+    }
+
+    /**
+     * Counts the orderings and the ideals without enumerating either, by dynamic programming over the lattice one
+     * level (ideal size) at a time: the number of orderings that reach an ideal is the sum over the ideals one node
+     * smaller. Only two levels are held at once, so the memory is bounded by the width of the lattice.
+     */
+    Counts count()
+    {
+        if (graph.isWide())
+            return countWide();
+
+        long ideals = 0;
+        BigInteger orderings = BigInteger.ONE;
+        HashMap<Long, BigInteger> level = new HashMap<>();
+        level.put(0L, BigInteger.ONE);
+        while (!level.isEmpty())
+        {
+            ideals += level.size();
+            HashMap<Long, BigInteger> next = new HashMap<>();
+            for (Map.Entry<Long, BigInteger> entry : level.entrySet())
+                for (long free = graph.getFree(entry.getKey()); free != 0; free &= free - 1)
+                    next.merge(entry.getKey() | Long.lowestOneBit(free), entry.getValue(), BigInteger::add);
+
+            // The last level holds only the ideal of every node that can be ordered.
+            if (next.isEmpty())
+                orderings = level.values().iterator().next();
+            level = next;
+        }
+
+        return new Counts(orderings, ideals);
+    }
+
+    /**
+     * Counts as {@link #count()} does, with the ideals of a wide graph as sets.
+     */
+    private Counts countWide()
+    {
+        long ideals = 0;
+        BigInteger orderings = BigInteger.ONE;
+        HashMap<BitSet, BigInteger> level = new HashMap<>();
+        level.put(new BitSet(), BigInteger.ONE);
+        while (!level.isEmpty())
+        {
+            ideals += level.size();
+            HashMap<BitSet, BigInteger> next = new HashMap<>();
+            for (Map.Entry<BitSet, BigInteger> entry : level.entrySet())
+            {
+                BitSet free = graph.getFree(entry.getKey());
+                for (int node = free.nextSetBit(0); node >= 0; node = free.nextSetBit(node + 1))
+                {
+                    BitSet ideal = (BitSet) entry.getKey().clone();
+                    ideal.set(node);
+                    next.merge(ideal, entry.getValue(), BigInteger::add);
+                }
+            }
+
+            if (next.isEmpty())
+                orderings = level.values().iterator().next();
+            level = next;
+        }
+
+        return new Counts(orderings, ideals);
+    }
+
+    /**
+     * @return The split of every ideal; the key of each pair is the prefix, and the value is the suffix.
+     */
+    Set<Pair<Set<String>, Set<String>>> getSplits()
+    {
+        Set<Pair<Set<String>, Set<String>>> splits = new HashSet<>();
+        forEachSplit(splits::add);
+        return splits;
+    }
+
+    /**
+     * Reports the split of every ideal to {@code consumer}, one at a time.
+     */
+    void forEachSplit(Consumer<Pair<Set<String>, Set<String>>> consumer)
+    {
+        if (graph.isWide())
+            forEachWideIdeal(ideal -> consumer.accept(split(ideal)));
+        else
+            forEachIdeal(ideal -> consumer.accept(split(ideal)));
+    }
+
+    /**
+     * Reports the mask of every ideal to {@code consumer}, one at a time.
+     */
+    void forEachIdeal(LongConsumer consumer)
+    {
+        enumerate(0, 0, consumer);
+    }
+
+    /**
+     * Reports every ideal of a wide graph to {@code consumer}, one at a time, in the order of {@link #forEachIdeal}.
+     * The set is reused from one ideal to the next, so {@code consumer} must copy it to keep it.
+     */
+    void forEachWideIdeal(Consumer<BitSet> consumer)
+    {
+        enumerate(0, new BitSet(graph.size()), consumer);
+    }
+
+    /**
+     * Reports the mask of every ideal to {@code consumer}, from the threads of the common fork-join pool; the search
+     * is split into tasks at the first few decisions, and {@code consumer} must be safe to call concurrently.
+     */
+    void forEachIdealInParallel(LongConsumer consumer)
+    {
+        ForkJoinPool.commonPool().invoke(new IdealTask(0, 0, getSplitDepth(), consumer));
+    }
+
+    /**
+     * The enumeration of the ideals that extend the decisions made for the first {@code index} nodes.
+     */
+    private final class IdealTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final long ideal;
+        private final int splitDepth;
+        private final LongConsumer consumer;
+
+        private IdealTask(int index, long ideal, int splitDepth, LongConsumer consumer)
+        {
+            this.index = index;
+            this.ideal = ideal;
+            this.splitDepth = splitDepth;
+            this.consumer = consumer;
+        }
+
+        @Override protected void compute()
+        {
+            if (index >= splitDepth)
+            {
+                enumerate(index, ideal, consumer);
+                return;
+            }
+
+            int node = topologicalOrder[index];
+            IdealTask excluded = new IdealTask(index + 1, ideal, splitDepth, consumer);
+            if ((graph.getDependencies(node) & ~ideal) == 0)
+                invokeAll(new IdealTask(index + 1, ideal | 1L << node, splitDepth, consumer), excluded);
+            else
+                excluded.compute();
+        }
+    }
+
+    private void enumerate(int index, long ideal, LongConsumer consumer)
+    {
+        if (index == topologicalOrder.length)
+        {
+            consumer.accept(ideal);
+            return;
+        }
+
+        int node = topologicalOrder[index];
+        if ((graph.getDependencies(node) & ~ideal) == 0)
+            enumerate(index + 1, ideal | 1L << node, consumer);
+        enumerate(index + 1, ideal, consumer);
+    }
+
+    private void enumerate(int index, BitSet ideal, Consumer<BitSet> consumer)
+    {
+        if (index == topologicalOrder.length)
+        {
+            consumer.accept(ideal);
+            return;
+        }
+
+        int node = topologicalOrder[index];
+        if (graph.isSatisfied(node, ideal))
+        {
+            ideal.set(node);
+            enumerate(index + 1, ideal, consumer);
+            ideal.clear(node);
+        }
+        enumerate(index + 1, ideal, consumer);
+    }
+
+    /**
+     * @return The split of {@code ideal}, as the first ordering reaching it gives it.
+     */
+    Pair<Set<String>, Set<String>> split(long ideal)
+    {
+        LinkedHashSet<String> prefix = new LinkedHashSet<>();
+        LinkedHashSet<String> suffix = new LinkedHashSet<>();
+
+        long visited = 0;
+        for (long free = graph.getFree(visited) & ideal; free != 0; free = graph.getFree(visited) & ideal)
+        {
+            int node = Long.numberOfTrailingZeros(free);
+            prefix.add(graph.getNode(node).toString());
+            visited |= 1L << node;
+        }
+        for (long free = graph.getFree(visited); free != 0; free = graph.getFree(visited))
+        {
+            int node = Long.numberOfTrailingZeros(free);
+            suffix.add(graph.getNode(node).toString());
+            visited |= 1L << node;
+        }
+
+        return new Pair<>(prefix, suffix);
+    }
+
+    /**
+     * @return The split of {@code ideal}, an ideal of a wide graph, as {@link #split(long)} gives it.
+     */
+    Pair<Set<String>, Set<String>> split(BitSet ideal)
+    {
+        LinkedHashSet<String> prefix = new LinkedHashSet<>();
+        LinkedHashSet<String> suffix = new LinkedHashSet<>();
+
+        BitSet visited = new BitSet(graph.size());
+        for (int node = getFirstFree(visited, ideal); node >= 0; node = getFirstFree(visited, ideal))
+        {
+            prefix.add(graph.getNode(node).toString());
+            visited.set(node);
+        }
+        for (int node = getFirstFree(visited, null); node >= 0; node = getFirstFree(visited, null))
+        {
+            suffix.add(graph.getNode(node).toString());
+            visited.set(node);
+        }
+
+        return new Pair<>(prefix, suffix);
+    }
+
+    /**
+     * @return The first node that is free after {@code visited} and in {@code allowed} (if not null), or -1 if there
+     * is none.
+     */
+    private int getFirstFree(BitSet visited, BitSet allowed)
+    {
+        BitSet free = graph.getFree(visited);
+        if (allowed != null)
+            free.and(allowed);
+
+        return free.nextSetBit(0);
+    }
+}
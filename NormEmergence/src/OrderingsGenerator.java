@@ -1,8 +1,14 @@
 import javafx.util.Pair;
 
-import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Created for TURC by @author Nate Beckemeyer on 2016-07-29.
@@ -10,43 +16,60 @@ import java.util.*;
 public class OrderingsGenerator
 {
     private static boolean simpleNetwork = true;
-    private HashMap<String, HashMap<Character, HashSet<Character>>> initialTopology = new HashMap<>();
 
-    private static List<List<DependencyNode>> getValidOrderings(DependencyGraph g)
-    {
-        return getValidOrderings(g, new LinkedList<>(), new LinkedList<>());
-    }
+    /**
+     * Whether the linking cost placements are found by enumerating the order ideals of the dependency graph directly,
+     * instead of by splitting every valid ordering at every point. Both give the same placements.
+     */
+    private static boolean enumerateIdeals = true;
 
-    private static List<List<DependencyNode>> getValidOrderings(DependencyGraph g,
-                                                                LinkedList<DependencyNode> currentPath,
-                                                                List<List<DependencyNode>> possibleOptions)
-    {
-        List<DependencyNode> choices = g.getFreeNodes();
-        if (choices.size() == 0)
-        {
-            possibleOptions.add(currentPath);
-            return possibleOptions;
-        }
+    /**
+     * Whether the placements are enumerated, and their topologies built and aggregated, on every core.
+     */
+    private static boolean parallel = true;
 
-        for (DependencyNode n : choices)
-        {
-            currentPath.addLast(n);
-            g.markVisited(n, true);
-            possibleOptions = getValidOrderings(g, new LinkedList<>(currentPath), possibleOptions);
-            g.markVisited(n, false);
-            currentPath.removeLast();
-        }
+    /**
+     * Whether only the numbers of orderings, placements and unique topologies are reported; they are then counted
+     * without building a single ordering or topology, so much larger datasets can be analyzed.
+     */
+    private static boolean countOnly = false;
 
-        return possibleOptions;
+    /**
+     * Whether interchangeable nodes (see {@link NodeSymmetry}) are enumerated once per orbit when walking the ideals,
+     * and the other members of each orbit recovered afterwards.
+     */
+    private static boolean reduceSymmetry = true;
+
+    /**
+     * Whether the interactive results are kept in a {@link ResultCache}, so that analyzing the same dataset again, in
+     * this run or a later one, only reads them back. The cache writes to the home directory, so it is only used when
+     * the system property {@code turc.norm.cache} is {@code true}.
+     */
+    private static boolean cacheResults = Boolean.getBoolean("turc.norm.cache");
+
+    /**
+     * The most bytes that the cached results may take.
+     */
+    private static final long CACHE_LIMIT = 256L << 20;
+
+    private HashMap<String, HashMap<Character, HashSet<Character>>> initialTopology = new HashMap<>();
+
+    /**
+     * @return The valid orderings of {@code g}, produced one at a time as they are consumed.
+     */
+    static Iterable<List<DependencyNode>> getValidOrderings(DependencyGraph g)
+    {
+        return new LinearExtensions(g);
     }
 
     /**
-     * Returns a pair; the key of the pair is the prefix, and the value of the pair is the suffix
+     * Returns a pair; the key of the pair is the prefix, and the value of the pair is the suffix. The orderings are
+     * consumed one at a time, so only the distinct splits are ever held in memory.
      *
-     * @param orderings
-     * @return
+     * @param orderings The valid orderings to split.
+     * @return The distinct splits, each as ordered by the first ordering that produced it.
      */
-    private static Set<Pair<Set<String>, Set<String>>> splitAtLinkingCosts(List<List<DependencyNode>> orderings)
+    static Set<Pair<Set<String>, Set<String>>> splitAtLinkingCosts(Iterable<List<DependencyNode>> orderings)
     {
         HashMap<Pair<HashSet<String>, HashSet<String>>, Boolean> exists = new HashMap<>();
         Set<Pair<Set<String>, Set<String>>> combinations = new HashSet<>();
@@ -72,7 +95,7 @@ public class OrderingsGenerator
         return combinations;
     }
 
-    private static String pairToString(Pair<Set<String>, Set<String>> split)
+    static String pairToString(Pair<Set<String>, Set<String>> split)
     {
         StringBuilder out = new StringBuilder();
         split.getKey().forEach(s ->
@@ -98,49 +121,95 @@ public class OrderingsGenerator
         return results;
     }
 
-    private DependencyGraph initializeGraph(String filename)
+    /**
+     * Reads a dataset in the format of {@code inputformat.txt}: on each line, the name of a node, the names of its
+     * dependencies, a colon, and then the edges of its linking cost as pairs of characters. The lines are split into
+     * tokens by hand, in a single pass over a buffered reader.
+     *
+     * @throws IllegalArgumentException if a line does not follow the format.
+     */
+    DependencyGraph initializeGraph(String filename)
     {
+        HashMap<String, DependencyNode> interned = new HashMap<>();
         HashSet<DependencyNode> nodes = new HashSet<>();
-        Scanner parser;
-        try
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8))
         {
-            parser = new Scanner(new File(filename));
-        } catch (FileNotFoundException e)
+            ArrayList<String> tokens = new ArrayList<>();
+            String line;
+            for (int number = 1; (line = reader.readLine()) != null; number++)
+            {
+                tokenize(line, tokens);
+                if (tokens.isEmpty())
+                    continue;
+
+                int colon = tokens.indexOf(":");
+                if (colon < 1 || (tokens.size() - colon) % 2 == 0)
+                    throw new IllegalArgumentException(filename + ":" + number + ": expected a name, dependencies, " +
+                            "a colon and pairs of vertices, not \"" + line.trim() + "\".");
+
+                String identifier = tokens.get(0);
+                DependencyNode node = DependencyNode.intern(interned, identifier);
+                for (int i = 1; i < colon; i++)
+                    node.getDependencies().add(DependencyNode.intern(interned, tokens.get(i)));
+                nodes.add(node);
+
+                HashMap<Character, HashSet<Character>> edges = new HashMap<>();
+                for (int i = colon + 1; i < tokens.size(); i += 2)
+                    edges.computeIfAbsent(tokens.get(i).charAt(0), start -> new HashSet<>())
+                            .add(tokens.get(i + 1).charAt(0));
+                initialTopology.put(identifier, edges);
+            }
+        } catch (IOException e)
         {
             e.printStackTrace();
             System.exit(10);
             return null;
         }
 
-        while (parser.hasNextLine())
+        return new DependencyGraph(nodes);
+    }
+
+    /**
+     * Splits {@code line} at whitespace into {@code tokens} (after clearing it). A colon is always a token of its own,
+     * even when written against the name before it.
+     */
+    private static void tokenize(String line, ArrayList<String> tokens)
+    {
+        tokens.clear();
+        int length = line.length();
+        int i = 0;
+        while (i < length)
         {
-            Scanner line = new Scanner(parser.nextLine());
-            while (line.hasNext())
-            {
-                String identifier = line.next();
-                HashSet<DependencyNode> dependencies = new HashSet<>();
-                while (!line.hasNext(":"))
-                    dependencies.add(DependencyNode.get(line.next()));
-                nodes.add(DependencyNode.get(identifier, dependencies));
-                initialTopology.put(identifier, new HashMap<>());
-                line.skip(" :");
-
-                // Now come the edges, so there should be at least two more if there is one more; they should be chars.
-                while (line.hasNext())
-                {
-                    Character start = line.next().charAt(0);
-                    Character end = line.next().charAt(0);
-                    initialTopology.get(identifier).putIfAbsent(start, new HashSet<>());
-                    initialTopology.get(identifier).get(start).add(end);
-                }
+            while (i < length && Character.isWhitespace(line.charAt(i)))
+                i++;
 
+            int start = i;
+            while (i < length && !Character.isWhitespace(line.charAt(i)) && line.charAt(i) != ':')
+                i++;
+
+            if (i > start)
+                tokens.add(line.substring(start, i));
+            if (i < length && line.charAt(i) == ':')
+            {
+                tokens.add(":");
+                i++;
             }
         }
-        return new DependencyGraph(nodes);
     }
 
-    private static HashMap<TopologyBuilder, HashSet<String>> seizeUniqueResults(HashMap<String, TopologyBuilder> all)
+    static HashMap<TopologyBuilder, HashSet<String>> seizeUniqueResults(HashMap<String, TopologyBuilder> all)
     {
+        if (parallel)
+        {
+            ConcurrentHashMap<TopologyBuilder, Set<String>> uniques = new ConcurrentHashMap<>();
+            all.entrySet().parallelStream().forEach(entry -> uniques.computeIfAbsent(entry.getValue(),
+                    topology -> ConcurrentHashMap.newKeySet()).add(entry.getKey()));
+
+            HashMap<TopologyBuilder, HashSet<String>> results = new HashMap<>();
+            uniques.forEach((topology, configurations) -> results.put(topology, new HashSet<>(configurations)));
+            return results;
+        }
+
         HashMap<TopologyBuilder, HashSet<String>> uniques = new HashMap<>();
         all.forEach((s, topology) ->
         {
@@ -153,8 +222,12 @@ public class OrderingsGenerator
 
     public HashMap<String, TopologyBuilder> getAllConfigurations(DependencyGraph graph)
     {
-        List<List<DependencyNode>> choices = getValidOrderings(graph);
-        Set<Pair<Set<String>, Set<String>>> combinations = splitAtLinkingCosts(choices);
+        if (enumerateIdeals)
+            return walkConfigurations(graph);
+        if (parallel)
+            return getAllConfigurationsInParallel(graph);
+
+        Set<Pair<Set<String>, Set<String>>> combinations = splitAtLinkingCosts(getValidOrderings(graph));
         HashMap<String, TopologyBuilder> allConfigurations = new HashMap<>();
         combinations.forEach(pair ->
         {
@@ -166,11 +239,458 @@ public class OrderingsGenerator
         return allConfigurations;
     }
 
+    /**
+     * Builds the topology of every placement concurrently. The splits are produced in order (the first ordering to
+     * reach a split names it), and then processed in parallel.
+     */
+    private HashMap<String, TopologyBuilder> getAllConfigurationsInParallel(DependencyGraph graph)
+    {
+        ConcurrentHashMap<String, TopologyBuilder> allConfigurations = new ConcurrentHashMap<>();
+        splitAtLinkingCosts(getValidOrderings(graph)).parallelStream().forEach(pair ->
+        {
+            TopologyBuilder topology = new TopologyBuilder(initialTopology, simpleNetwork);
+            topology.cutEdges(pair.getValue());
+            allConfigurations.put(pairToString(pair), topology);
+        });
+
+        return new HashMap<>(allConfigurations);
+    }
+
+    /**
+     * Walks the ideals of {@code graph} (see {@link TopologyWalk}), keeping the fingerprint of each placement's topology
+     * up to date as it goes. A topology is only built for the first placement with its fingerprint; the placements
+     * with the same fingerprint share it. The ideals of a wide graph (see {@link DependencyGraph#isWide()}) are walked
+     * one at a time, without looking for interchangeable nodes.
+     */
+    private HashMap<String, TopologyBuilder> walkConfigurations(DependencyGraph graph)
+    {
+        OrderIdeals ideals = new OrderIdeals(graph);
+        if (graph.isWide())
+        {
+            HashMap<String, TopologyBuilder> allConfigurations = new HashMap<>();
+            HashMap<TopologyWalk.Fingerprint, TopologyBuilder> topologies = new HashMap<>();
+            new TopologyWalk(ideals, initialTopology, simpleNetwork).forEachWide((ideal, high, low) ->
+            {
+                Pair<Set<String>, Set<String>> split = ideals.split(ideal);
+                TopologyBuilder topology = topologies.computeIfAbsent(new TopologyWalk.Fingerprint(high, low),
+                        fingerprint ->
+                        {
+                            TopologyBuilder builder = new TopologyBuilder(initialTopology, simpleNetwork);
+                            builder.cutEdges(split.getValue());
+                            return builder;
+                        });
+                allConfigurations.put(pairToString(split), topology);
+            });
+            return allConfigurations;
+        }
+
+        NodeSymmetry symmetry = new NodeSymmetry(graph, initialTopology, reduceSymmetry);
+        TopologyWalk walk = new TopologyWalk(new OrderIdeals(symmetry.getReducedGraph()), initialTopology,
+                simpleNetwork);
+        Map<String, TopologyBuilder> allConfigurations = parallel ? new ConcurrentHashMap<>() : new HashMap<>();
+        Map<TopologyWalk.Fingerprint, TopologyBuilder> topologies = parallel ? new ConcurrentHashMap<>() :
+                new HashMap<>();
+
+        // Every ideal of an orbit has the topology of its representative.
+        TopologyWalk.Visitor visitor = (reducedIdeal, high, low) ->
+        {
+            TopologyBuilder topology = topologies.computeIfAbsent(new TopologyWalk.Fingerprint(high, low),
+                    fingerprint ->
+                    {
+                        TopologyBuilder builder = new TopologyBuilder(initialTopology, simpleNetwork);
+                        builder.cutEdges(ideals.split(reducedIdeal).getValue());
+                        return builder;
+                    });
+            symmetry.expand(reducedIdeal, ideal -> allConfigurations.put(pairToString(ideals.split(ideal)),
+                    topology));
+        };
+
+        if (parallel)
+            walk.forEachInParallel(visitor);
+        else
+            walk.forEach(visitor);
+
+        return new HashMap<>(allConfigurations);
+    }
+
+    /**
+     * Streams the results for {@code graph} to {@code out}, one tab-separated record per line, as the ideals are
+     * walked (see {@link TopologyWalk}); nothing is collected but the fingerprints of the topologies seen so far. The
+     * records are
+     * <ul>
+     * <li>{@code topology <fingerprint> <connections>}, the first time that a topology appears;</li>
+     * <li>{@code placement <configuration> <fingerprint>}, for every meaningful linking cost placement;</li>
+     * <li>{@code orderings <count>}, only when counting;</li>
+     * <li>{@code placements <count>} and {@code topologies <count>}, last.</li>
+     * </ul>
+     * When counting, only the counts are written. With a memory budget, the placements are grouped by topology
+     * instead (see {@link FingerprintSorter}): each {@code topology} record is followed by all of its placements, and
+     * at most {@code memory} bytes of placements are held at once, the rest being spilled to disk. The placements of
+     * a wide graph (see {@link DependencyGraph#isWide()}) have no mask to spill, so they are grouped in memory,
+     * whatever the budget.
+     *
+     * @param memory The memory budget in bytes, or 0 to write the placements in the order that they are found.
+     * @return The numbers of placements and of unique topologies.
+     * @throws IOException if {@code out} cannot be written.
+     */
+    private long[] writeResults(DependencyGraph graph, Writer out, boolean counting, long memory) throws IOException
+    {
+        OrderIdeals ideals = new OrderIdeals(graph);
+        NodeSymmetry symmetry = new NodeSymmetry(graph, initialTopology, reduceSymmetry);
+        OrderIdeals reducedIdeals = new OrderIdeals(symmetry.getReducedGraph());
+        TopologyWalk walk = new TopologyWalk(reducedIdeals, initialTopology, simpleNetwork);
+        long placements;
+        long topologies;
+        if (counting)
+        {
+            OrderIdeals.Counts counts = symmetry.count(reducedIdeals);
+            out.write("orderings\t" + counts.getOrderings() + "\n");
+            placements = counts.getIdeals();
+            topologies = walk.countUnique(false);
+        } else if (graph.isWide())
+        {
+            long[] counts = writeWideResults(walk, ideals, out, memory > 0);
+            placements = counts[0];
+            topologies = counts[1];
+        } else if (memory > 0)
+        {
+            long[] count = new long[1];
+            try (FingerprintSorter sorter = new FingerprintSorter(memory))
+            {
+                try
+                {
+                    walk.forEach((reducedIdeal, high, low) -> symmetry.expand(reducedIdeal, ideal ->
+                    {
+                        try
+                        {
+                            sorter.add(high, low, ideal);
+                        } catch (IOException e)
+                        {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+                } catch (UncheckedIOException e)
+                {
+                    throw e.getCause();
+                }
+
+                topologies = sorter.forEachGroup((high, low, ideal, first) ->
+                {
+                    String fingerprint = toHex(high) + toHex(low);
+                    if (first)
+                        out.write("topology\t" + fingerprint + "\t" + walk.getTopology(ideal) + "\n");
+                    out.write("placement\t" + pairToString(ideals.split(ideal)) + "\t" + fingerprint + "\n");
+                    count[0]++;
+                });
+            }
+            placements = count[0];
+        } else
+        {
+            HashSet<TopologyWalk.Fingerprint> seen = new HashSet<>();
+            long[] count = new long[1];
+            try
+            {
+                walk.forEach((reducedIdeal, high, low) ->
+                {
+                    String fingerprint = toHex(high) + toHex(low);
+                    try
+                    {
+                        if (seen.add(new TopologyWalk.Fingerprint(high, low)))
+                            out.write("topology\t" + fingerprint + "\t" + walk.getTopology(reducedIdeal) + "\n");
+                    } catch (IOException e)
+                    {
+                        throw new UncheckedIOException(e);
+                    }
+
+                    symmetry.expand(reducedIdeal, ideal ->
+                    {
+                        try
+                        {
+                            out.write("placement\t" + pairToString(ideals.split(ideal)) + "\t" + fingerprint + "\n");
+                        } catch (IOException e)
+                        {
+                            throw new UncheckedIOException(e);
+                        }
+                        count[0]++;
+                    });
+                });
+            } catch (UncheckedIOException e)
+            {
+                throw e.getCause();
+            }
+            placements = count[0];
+            topologies = seen.size();
+        }
+
+        out.write("placements\t" + placements + "\n");
+        out.write("topologies\t" + topologies + "\n");
+        return new long[]{placements, topologies};
+    }
+
+    /**
+     * Writes the {@code topology} and {@code placement} records of a wide graph, as {@link #writeResults} does.
+     *
+     * @param grouped Whether to write each topology with all of its placements, by ascending fingerprint.
+     * @return The numbers of placements and of unique topologies.
+     */
+    private static long[] writeWideResults(TopologyWalk walk, OrderIdeals ideals, Writer out, boolean grouped)
+            throws IOException
+    {
+        // The records of each fingerprint, when grouped: its topology, and then its placements.
+        Map<TopologyWalk.Fingerprint, List<String>> records = grouped ? new TreeMap<>(Comparator.comparingLong(
+                TopologyWalk.Fingerprint::getHigh).thenComparingLong(TopologyWalk.Fingerprint::getLow)) :
+                new HashMap<>();
+        long[] count = new long[1];
+        try
+        {
+            walk.forEachWide((ideal, high, low) ->
+            {
+                String fingerprint = toHex(high) + toHex(low);
+                List<String> group = records.get(new TopologyWalk.Fingerprint(high, low));
+                if (group == null)
+                {
+                    String topology = "topology\t" + fingerprint + "\t" + walk.getTopology(ideal) + "\n";
+                    group = grouped ? new ArrayList<>(Collections.singletonList(topology)) : Collections.emptyList();
+                    records.put(new TopologyWalk.Fingerprint(high, low), group);
+                    if (!grouped)
+                        write(out, topology);
+                }
+
+                String placement = "placement\t" + pairToString(ideals.split(ideal)) + "\t" + fingerprint + "\n";
+                if (grouped)
+                    group.add(placement);
+                else
+                    write(out, placement);
+                count[0]++;
+            });
+        } catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        }
+
+        if (grouped)
+            for (List<String> group : records.values())
+                for (String record : group)
+                    out.write(record);
+
+        return new long[]{count[0], records.size()};
+    }
+
+    /**
+     * Writes {@code record} to {@code out}, from a visitor that cannot throw checked exceptions.
+     */
+    private static void write(Writer out, String record)
+    {
+        try
+        {
+            out.write(record);
+        } catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return {@code value} as 16 hexadecimal digits.
+     */
+    private static String toHex(long value)
+    {
+        String digits = Long.toHexString(value);
+        return "0000000000000000".substring(digits.length()) + digits;
+    }
+
+    /**
+     * @return The file in {@code directory} that {@code dataset} is analyzed into: the file of the same name, with the
+     * extension {@code .tsv}, or {@code .tsv.gz} if compressed.
+     */
+    private static Path getResultFile(Path dataset, Path directory, boolean compressed)
+    {
+        String name = dataset.getFileName().toString().replaceFirst("\\.[^.]*$", "");
+        return directory.resolve(name + (compressed ? ".tsv.gz" : ".tsv"));
+    }
+
+    /**
+     * Analyzes {@code dataset} into {@code file}.
+     *
+     * @throws IOException if the dataset cannot be read or the results cannot be written.
+     */
+    private static void runDataset(Path dataset, Path file, boolean compressed, boolean counting, long memory)
+            throws IOException
+    {
+        if (!Files.isReadable(dataset))
+            throw new FileNotFoundException(dataset.toString());
+
+        OrderingsGenerator generator = new OrderingsGenerator();
+        DependencyGraph graph = generator.initializeGraph(dataset.toString());
+
+        long start = System.nanoTime();
+        long[] counts;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(compressed ?
+                new GZIPOutputStream(Files.newOutputStream(file), 1 << 16) : Files.newOutputStream(file),
+                StandardCharsets.UTF_8), 1 << 16))
+        {
+            counts = generator.writeResults(graph, out, counting, memory);
+        }
+
+        System.out.printf("%s: %d placements, %d unique topologies, in %.1f s -> %s%n", dataset, counts[0], counts[1],
+                (System.nanoTime() - start) / 1e9, file);
+    }
+
+    /**
+     * Analyzes every dataset named in {@code args} without prompting, several at a time, each into its own file (see
+     * {@link #writeResults}) named after it (see {@link #getResultFile}); datasets that would share a file are
+     * refused. The options are {@code --out <directory>} (the working directory by default), {@code
+     * --gzip} to compress the files, {@code --count} to write only the counts, and {@code --memory <megabytes>} to
+     * group the placements of each dataset by topology within that memory budget. The budget is for the whole run, so
+     * with it the datasets are analyzed one at a time.
+     */
+    private static void runBatch(String[] args)
+    {
+        Path directory = Paths.get(".");
+        boolean compressed = false;
+        boolean counting = countOnly;
+        long megabytes = 0;
+        List<Path> datasets = new ArrayList<>();
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "--out":
+                    if (i + 1 >= args.length)
+                        exitWithUsage("--out needs a directory.");
+                    directory = Paths.get(args[++i]);
+                    break;
+
+                case "--gzip":
+                    compressed = true;
+                    break;
+
+                case "--count":
+                    counting = true;
+                    break;
+
+                case "--memory":
+                    if (i + 1 >= args.length || !args[i + 1].matches("\\d{1,6}"))
+                        exitWithUsage("--memory needs a number of megabytes.");
+                    megabytes = Long.parseLong(args[++i]);
+                    break;
+
+                default:
+                    if (args[i].startsWith("--"))
+                        exitWithUsage("Unknown option " + args[i] + ".");
+                    datasets.add(Paths.get(args[i]));
+            }
+        }
+        if (datasets.isEmpty())
+            exitWithUsage("No dataset was named.");
+
+        Map<Path, Path> files = new LinkedHashMap<>();
+        for (Path dataset : datasets)
+        {
+            Path file = getResultFile(dataset, directory, compressed);
+            Path other = files.put(file, dataset);
+            if (other != null)
+                exitWithUsage(other + " and " + dataset + " would both be written to " + file + ".");
+        }
+
+        Path out = directory;
+        boolean gzip = compressed;
+        boolean count = counting;
+        long memory = megabytes << 20;
+        AtomicBoolean failed = new AtomicBoolean();
+        try
+        {
+            Files.createDirectories(out);
+        } catch (IOException e)
+        {
+            e.printStackTrace();
+            System.exit(10);
+        }
+
+        (memory > 0 ? files.keySet().stream() : files.keySet().parallelStream()).forEach(file ->
+        {
+            Path dataset = files.get(file);
+            try
+            {
+                runDataset(dataset, file, gzip, count, memory);
+            } catch (IOException | IllegalArgumentException e)
+            {
+                System.err.println(dataset + ": " + e);
+                failed.set(true);
+            }
+        });
+
+        if (failed.get())
+            System.exit(10);
+    }
+
+    /**
+     * @return The directory of the {@link ResultCache}.
+     */
+    private static Path getCacheDirectory()
+    {
+        return Paths.get(System.getProperty("user.home"), ".turc", "results");
+    }
+
+    /**
+     * Prints {@code problem} and the usage, and exits.
+     */
+    private static void exitWithUsage(String problem)
+    {
+        System.err.println(problem);
+        System.err.println("Usage: OrderingsGenerator [--out <directory>] [--gzip] [--count] [--memory <megabytes>] " +
+                "<dataset>...");
+        System.err.println("Without arguments, prompts for datasets; with -Dturc.norm.cache=true, their results are " +
+                "cached in " + getCacheDirectory() + " (at most " + (CACHE_LIMIT >> 20) + " MB).");
+        System.exit(10);
+    }
+
+    /**
+     * @return An analysis of {@code graph} that can be updated one node at a time (see {@link IncrementalAnalysis}).
+     */
+    IncrementalAnalysis analyzeIncrementally(DependencyGraph graph)
+    {
+        return IncrementalAnalysis.of(graph, initialTopology, simpleNetwork);
+    }
+
+    /**
+     * @return A sampler of the placements of {@code graph} (see {@link PlacementSampler}).
+     */
+    PlacementSampler samplePlacements(DependencyGraph graph)
+    {
+        return new PlacementSampler(graph, initialTopology, simpleNetwork);
+    }
+
+    /**
+     * Prints the numbers of valid orderings, of meaningful linking cost placements, and of unique topologies of
+     * {@code graph}.
+     */
+    private void printCounts(DependencyGraph graph)
+    {
+        NodeSymmetry symmetry = new NodeSymmetry(graph, initialTopology, reduceSymmetry);
+        OrderIdeals ideals = new OrderIdeals(symmetry.getReducedGraph());
+        OrderIdeals.Counts counts = symmetry.count(ideals);
+        System.out.println("Number of valid orderings: " + counts.getOrderings());
+        System.out.println("Number of meaningful linking cost placements: " + counts.getIdeals());
+        System.out.println("Number of unique topologies generated by this dataset: " +
+                new TopologyWalk(ideals, initialTopology, simpleNetwork).countUnique(parallel));
+    }
+
     public static void main(String[] args)
     {
+        if (args.length > 0)
+        {
+            runBatch(args);
+            return;
+        }
+
         String delimiter = new String(new char[38]).replace("\0", "-");
         System.out.printf("Running with simple networks %s.%n", (simpleNetwork ? "activated" : "deactivated"));
 
+        if (cacheResults)
+            System.out.printf("Caching results in %s.%n", getCacheDirectory());
+
+        ResultCache cache = new ResultCache(getCacheDirectory(), CACHE_LIMIT);
         Scanner console = new Scanner(System.in);
         System.out.printf("Please enter the name of the dataset: ");
         do
@@ -179,22 +699,67 @@ public class OrderingsGenerator
             if (input.equalsIgnoreCase("quit") || input.equalsIgnoreCase("exit"))
                 return;
 
+            String filename = "NormEmergence/datasets/" + input;
             OrderingsGenerator generator = new OrderingsGenerator();
-            DependencyGraph graph = generator.initializeGraph("NormEmergence/datasets/" + input);
+            if (countOnly)
+            {
+                generator.printCounts(generator.initializeGraph(filename));
+                System.out.println();
+                System.out.printf("Please enter the name of the dataset or quit to exit: ");
+                continue;
+            }
+
+            String key = null;
+            ResultCache.Results results = null;
+            if (cacheResults)
+            {
+                try
+                {
+                    key = ResultCache.key(Files.readAllBytes(Paths.get(filename)),
+                            "simpleNetwork=" + simpleNetwork);
+                    results = cache.get(key);
+                } catch (IOException e)
+                {
+                    // The dataset cannot be read; initializeGraph reports it below.
+                }
+            }
 
-            HashMap<String, TopologyBuilder> allConfigurations = generator.getAllConfigurations(graph);
-            System.out.println("Number of meaningful linking cost placements: " + allConfigurations.size());
+            if (results == null)
+            {
+                DependencyGraph graph = generator.initializeGraph(filename);
+                HashMap<String, TopologyBuilder> allConfigurations = generator.getAllConfigurations(graph);
+                LinkedHashMap<String, HashSet<String>> uniques = new LinkedHashMap<>();
+                seizeUniqueResults(allConfigurations).forEach((topology, configurations) ->
+                        uniques.put(topology.toString(), configurations));
+                results = new ResultCache.Results(allConfigurations.size(), uniques);
 
-            HashMap<TopologyBuilder, HashSet<String>> uniqueResults = seizeUniqueResults(allConfigurations);
-            System.out.println("Number of unique topologies generated by this dataset: " + uniqueResults.size());
+                if (key != null)
+                {
+                    try
+                    {
+                        cache.put(key, results);
+                    } catch (IOException e)
+                    {
+                        System.err.println("The results could not be cached: " + e.getMessage());
+                    }
+                }
+            }
+
+            System.out.println("Number of meaningful linking cost placements: " + results.getPlacements());
+            System.out.println("Number of unique topologies generated by this dataset: " +
+                    results.getTopologies().size());
             System.out.println(delimiter);
-            uniqueResults.forEach((key, value) ->
+
+            // The listing can run to many megabytes, so it is buffered rather than written a line at a time.
+            PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16));
+            results.getTopologies().forEach((topology, configurations) ->
             {
-                value.forEach(System.out::println);
-                System.out.println(key);
-                System.out.println(delimiter);
+                configurations.forEach(out::println);
+                out.println(topology);
+                out.println(delimiter);
             });
-            System.out.println();
+            out.println();
+            out.flush();
             System.out.printf("Please enter the name of the dataset or quit to exit: ");
         } while (console.hasNextLine());
     }
@@ -0,0 +1,150 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Measures the time and the allocation of each stage of the pipeline on datasets from {@link DatasetGenerator}, from
+ * small to large. Every stage is run a few times to warm up, and then measured over several runs; the time reported is
+ * the median, and the allocation is the mean over the runs, summed over every thread (so that the parallel stages are
+ * counted whole). The stages that enumerate the orderings are skipped once there are too many orderings to finish.
+ */
+final class PipelineBenchmark
+{
+    /**
+     * The most orderings that the stages which enumerate them are run on.
+     */
+    private static final BigInteger ORDERING_LIMIT = BigInteger.valueOf(2_000_000);
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final int warmups;
+    private final int runs;
+
+    /**
+     * Keeps the results of the stages reachable, so that they cannot be optimized away.
+     */
+    private Object sink;
+
+    private PipelineBenchmark(int warmups, int runs)
+    {
+        this.warmups = warmups;
+        this.runs = runs;
+    }
+
+    /**
+     * @return The bytes allocated so far by the threads alive.
+     */
+    private static long allocated()
+    {
+        long total = 0;
+        for (long bytes : THREADS.getThreadAllocatedBytes(THREADS.getAllThreadIds()))
+            if (bytes > 0)
+                total += bytes;
+
+        return total;
+    }
+
+    private void measure(String dataset, String stage, Supplier<Object> operation)
+    {
+        for (int i = 0; i < warmups; i++)
+            sink = operation.get();
+
+        long[] nanos = new long[runs];
+        long bytes = 0;
+        for (int i = 0; i < runs; i++)
+        {
+            long before = allocated();
+            long start = System.nanoTime();
+            sink = operation.get();
+            nanos[i] = System.nanoTime() - start;
+            bytes += allocated() - before;
+        }
+        Arrays.sort(nanos);
+
+        System.out.printf("%-10s %-16s %12.3f %12.3f %12.2f%n", dataset, stage, nanos[runs / 2] / 1e6, nanos[0] / 1e6,
+                bytes / (double) runs / (1 << 20));
+    }
+
+    private void skip(String dataset, String stage)
+    {
+        System.out.printf("%-10s %-16s %12s %12s %12s%n", dataset, stage, "-", "-", "-");
+    }
+
+    /**
+     * Runs every stage on the dataset in {@code file}.
+     */
+    private void run(String dataset, Path file)
+    {
+        OrderingsGenerator generator = new OrderingsGenerator();
+        measure(dataset, "parse", () -> new OrderingsGenerator().initializeGraph(file.toString()));
+
+        DependencyGraph graph = generator.initializeGraph(file.toString());
+        OrderIdeals ideals = new OrderIdeals(graph);
+        OrderIdeals.Counts counts = ideals.count();
+        measure(dataset, "count", ideals::count);
+
+        if (counts.getOrderings().compareTo(ORDERING_LIMIT) <= 0)
+        {
+            measure(dataset, "orderings", () ->
+            {
+                long orderings = 0;
+                for (List<DependencyNode> ignored : OrderingsGenerator.getValidOrderings(graph))
+                    orderings++;
+                return orderings;
+            });
+            measure(dataset, "splitOrderings", () ->
+                    OrderingsGenerator.splitAtLinkingCosts(OrderingsGenerator.getValidOrderings(graph)));
+        } else
+        {
+            skip(dataset, "orderings");
+            skip(dataset, "splitOrderings");
+        }
+
+        measure(dataset, "splitIdeals", ideals::getSplits);
+        measure(dataset, "configurations", () -> generator.getAllConfigurations(graph));
+
+        HashMap<String, TopologyBuilder> all = generator.getAllConfigurations(graph);
+        measure(dataset, "unique", () -> OrderingsGenerator.seizeUniqueResults(all));
+
+        System.out.printf("%-10s %s orderings, %d placements, %d unique topologies%n%n", dataset,
+                counts.getOrderings(), counts.getIdeals(), OrderingsGenerator.seizeUniqueResults(all).size());
+    }
+
+    /**
+     * @param args The number of measured runs per stage, then the sizes to generate as {@code <width>x<depth>}; by
+     *             default, 10 runs over sizes from 2x3 to 4x8.
+     */
+    public static void main(String[] args) throws IOException
+    {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        String[] sizes = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length) :
+                new String[]{"2x3", "2x6", "3x4", "3x6", "4x6", "4x8"};
+
+        PipelineBenchmark benchmark = new PipelineBenchmark(Math.max(3, runs / 2), runs);
+        Path directory = Files.createTempDirectory("datasets");
+        System.out.printf("%-10s %-16s %12s %12s %12s%n", "dataset", "stage", "median ms", "min ms", "MB/op");
+        for (String size : sizes)
+        {
+            String[] dimensions = size.split("x");
+            Path file = directory.resolve(size + ".dat");
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+            {
+                new DatasetGenerator(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]), 0.5, 4, 6,
+                        size.hashCode()).write(out);
+            }
+
+            benchmark.run(size, file);
+            Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+}
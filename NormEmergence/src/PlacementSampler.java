@@ -0,0 +1,285 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Estimates the number of unique topologies of a dataset, and how often each occurs, from uniformly random placements
+ * rather than from all of them, for graphs too wide to enumerate. The placements are drawn by the Markov chain of
+ * {@link TopologyWalk#sample}, on several independent chains at once, and the number of topologies is estimated with
+ * the bias-corrected Chao1 estimator, which extrapolates from the topologies seen once and twice; its confidence
+ * interval is the usual log-normal one. The interval takes the samples to be independent, which holds only as far as
+ * the chains mix between samples.
+ * <p>
+ * Orderings can be sampled too, by the chain of adjacent transpositions of Karzanov and Khachiyan (as analyzed by
+ * Bubley and Dyer), which converges to the uniform distribution over the valid orderings.
+ */
+final class PlacementSampler
+{
+    /**
+     * The standard normal quantile of a 95% confidence interval.
+     */
+    private static final double Z = 1.96;
+
+    /**
+     * The estimate of the unique topologies from a sample of placements.
+     */
+    static final class Estimate
+    {
+        private final long samples;
+        private final HashMap<TopologyWalk.Fingerprint, Long> frequencies;
+        private final HashMap<TopologyWalk.Fingerprint, BitSet> examples;
+        private final double estimate;
+        private final double lower;
+        private final double upper;
+
+        private Estimate(HashMap<TopologyWalk.Fingerprint, Long> frequencies,
+                         HashMap<TopologyWalk.Fingerprint, BitSet> examples)
+        {
+            this.frequencies = frequencies;
+            this.examples = examples;
+
+            long samples = 0;
+            long singletons = 0;
+            long doubletons = 0;
+            for (long frequency : frequencies.values())
+            {
+                samples += frequency;
+                if (frequency == 1)
+                    singletons++;
+                else if (frequency == 2)
+                    doubletons++;
+            }
+            this.samples = samples;
+
+            double observed = frequencies.size();
+            double f1 = singletons;
+            double f2 = doubletons;
+            double unseen = f1 * (f1 - 1) / (2 * (f2 + 1));
+            double variance;
+            if (f2 > 0)
+            {
+                double ratio = f1 / f2;
+                variance = f2 * (ratio * ratio * ratio * ratio / 4 + ratio * ratio * ratio + ratio * ratio / 2);
+            } else
+                variance = f1 * (f1 - 1) / 2 + f1 * (2 * f1 - 1) * (2 * f1 - 1) / 4 -
+                        f1 * f1 * f1 * f1 / (4 * (observed + unseen));
+
+            this.estimate = observed + unseen;
+            if (unseen > 0 && variance > 0)
+            {
+                double spread = Math.exp(Z * Math.sqrt(Math.log(1 + variance / (unseen * unseen))));
+                this.lower = observed + unseen / spread;
+                this.upper = observed + unseen * spread;
+            } else
+            {
+                this.lower = observed;
+                this.upper = estimate;
+            }
+        }
+
+        /**
+         * @return The number of placements sampled.
+         */
+        long getSamples()
+        {
+            return samples;
+        }
+
+        /**
+         * @return The number of unique topologies among the samples.
+         */
+        int getObserved()
+        {
+            return frequencies.size();
+        }
+
+        /**
+         * @return The estimated number of unique topologies of the dataset.
+         */
+        double getEstimate()
+        {
+            return estimate;
+        }
+
+        double getLower()
+        {
+            return lower;
+        }
+
+        double getUpper()
+        {
+            return upper;
+        }
+
+        /**
+         * @return The number of samples of each topology seen; divided by {@link #getSamples()}, an estimate of the
+         * share of the placements that give it.
+         */
+        Map<TopologyWalk.Fingerprint, Long> getFrequencies()
+        {
+            return Collections.unmodifiableMap(frequencies);
+        }
+
+        /**
+         * @return A sampled ideal whose topology has the fingerprint {@code fingerprint}.
+         */
+        BitSet getExample(TopologyWalk.Fingerprint fingerprint)
+        {
+            return examples.get(fingerprint);
+        }
+    }
+
+    /**
+     * The samples of one fingerprint on one chain.
+     */
+    private static final class Sighting
+    {
+        private final BitSet example;
+        private long count;
+
+        private Sighting(BitSet example)
+        {
+            this.example = example;
+        }
+    }
+
+    private final DependencyGraph graph;
+    private final int[] order;
+    private final TopologyWalk walk;
+
+    /**
+     * @param graph   The graph.
+     * @param network The connections of each linking cost, by name.
+     * @param simple  Whether the connections are undirected.
+     */
+    PlacementSampler(DependencyGraph graph, HashMap<String, HashMap<Character, HashSet<Character>>> network,
+                     boolean simple)
+    {
+        OrderIdeals ideals = new OrderIdeals(graph);
+        this.graph = graph;
+        this.order = ideals.getTopologicalOrder();
+        this.walk = new TopologyWalk(ideals, network, simple);
+    }
+
+    /**
+     * @return The topology of the placement of {@code ideal}.
+     */
+    Topology getTopology(BitSet ideal)
+    {
+        return walk.getTopology(ideal);
+    }
+
+    /**
+     * Draws a random valid ordering: starting from a topological order, each of {@code steps} steps picks two adjacent
+     * nodes at random and, with probability 1/2, swaps them unless the second depends on the first. About n<sup>3</sup>
+     * log n steps suffice for n nodes.
+     */
+    List<DependencyNode> sampleOrdering(SplittableRandom random, long steps)
+    {
+        int[] ordering = order.clone();
+        for (long step = 0; step < steps && ordering.length > 1; step++)
+        {
+            int i = random.nextInt(ordering.length - 1);
+            if (random.nextBoolean() && !graph.getDependencySet(ordering[i + 1]).get(ordering[i]))
+            {
+                int node = ordering[i];
+                ordering[i] = ordering[i + 1];
+                ordering[i + 1] = node;
+            }
+        }
+
+        List<DependencyNode> nodes = new ArrayList<>(ordering.length);
+        for (int node : ordering)
+            nodes.add(graph.getNode(node));
+
+        return nodes;
+    }
+
+    /**
+     * Samples up to {@code samples} placements on every core, one chain per core, for at most {@code nanos}
+     * nanoseconds; each chain burns in for 10 n<sup>2</sup> steps and takes n<sup>2</sup> steps between samples, for n
+     * nodes.
+     *
+     * @param seed The seed of the chains; the same seed gives the same samples, unless the time runs out.
+     */
+    Estimate estimate(int samples, long nanos, long seed)
+    {
+        long deadline = System.nanoTime() + nanos;
+        long thinning = Math.max(1, (long) order.length * order.length);
+        int chains = Math.max(1, Math.min(samples, ForkJoinPool.getCommonPoolParallelism()));
+
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[chains];
+        for (int chain = 0; chain < chains; chain++)
+            randoms[chain] = root.split();
+
+        // Each fingerprint seen, with its count and its first ideal; the ideals of wide graphs are sets.
+        List<HashMap<TopologyWalk.Fingerprint, Sighting>> results = IntStream.range(0, chains).parallel().mapToObj(chain ->
+        {
+            HashMap<TopologyWalk.Fingerprint, Sighting> seen = new HashMap<>();
+            int quota = samples / chains + (chain < samples % chains ? 1 : 0);
+            if (graph.isWide())
+                walk.sampleWide(randoms[chain], 10 * thinning, thinning, quota, deadline, (ideal, high, low) ->
+                        seen.computeIfAbsent(new TopologyWalk.Fingerprint(high, low),
+                                k -> new Sighting((BitSet) ideal.clone())).count++);
+            else
+                walk.sample(randoms[chain], 10 * thinning, thinning, quota, deadline, (ideal, high, low) ->
+                        seen.computeIfAbsent(new TopologyWalk.Fingerprint(high, low),
+                                k -> new Sighting(BitSet.valueOf(new long[]{ideal}))).count++);
+            return seen;
+        }).collect(ArrayList::new, ArrayList::add, ArrayList::addAll);
+
+        HashMap<TopologyWalk.Fingerprint, Long> frequencies = new HashMap<>();
+        HashMap<TopologyWalk.Fingerprint, BitSet> examples = new HashMap<>();
+        for (HashMap<TopologyWalk.Fingerprint, Sighting> seen : results)
+            seen.forEach((fingerprint, sighting) ->
+            {
+                frequencies.merge(fingerprint, sighting.count, Long::sum);
+                examples.putIfAbsent(fingerprint, sighting.example);
+            });
+
+        return new Estimate(frequencies, examples);
+    }
+
+    /**
+     * Prints an estimate for a dataset, and the most frequent topologies sampled.
+     *
+     * @param args The dataset, then the number of samples, the most seconds to take and the seed (by default 100000,
+     *             60 and 0).
+     */
+    public static void main(String[] args)
+    {
+        if (args.length < 1 || args.length > 4)
+        {
+            System.err.println("Usage: PlacementSampler <dataset> [samples] [seconds] [seed]");
+            System.exit(10);
+        }
+
+        int samples = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        long seconds = args.length > 2 ? Long.parseLong(args[2]) : 60;
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        OrderingsGenerator generator = new OrderingsGenerator();
+        PlacementSampler sampler = generator.samplePlacements(generator.initializeGraph(args[0]));
+        Estimate estimate = sampler.estimate(samples, TimeUnit.SECONDS.toNanos(seconds), seed);
+
+        System.out.printf("Sampled placements: %d%n", estimate.getSamples());
+        System.out.printf("Unique topologies sampled: %d%n", estimate.getObserved());
+        System.out.printf("Estimated unique topologies: %.1f (95%% interval %.1f to %.1f)%n", estimate.getEstimate(),
+                estimate.getLower(), estimate.getUpper());
+
+        List<Map.Entry<TopologyWalk.Fingerprint, Long>> frequent = new ArrayList<>(estimate.getFrequencies().entrySet());
+        frequent.sort(Map.Entry.<TopologyWalk.Fingerprint, Long>comparingByValue().reversed());
+        for (Map.Entry<TopologyWalk.Fingerprint, Long> entry : frequent.subList(0, Math.min(10, frequent.size())))
+            System.out.printf("%6.2f%%  %s%n", 100.0 * entry.getValue() / estimate.getSamples(),
+                    sampler.getTopology(estimate.getExample(entry.getKey())));
+    }
+}
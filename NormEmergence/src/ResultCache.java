@@ -0,0 +1,263 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A persistent cache of the results of datasets, kept as one file per result in a directory. Each result is keyed by
+ * the SHA-256 hash of the contents of its dataset and of the settings that change the results, so that an edited
+ * dataset is never served stale results and a renamed one still hits. The placements are stored compactly: the names
+ * that they are made of are written once, and each placement as the indices of its names.
+ * <p>
+ * Reading a result marks its file as used by touching its modification time, and writing one evicts the least recently
+ * used results until the files fit within the size limit again.
+ */
+final class ResultCache
+{
+    private static final int MAGIC = 0x54555243;
+    private static final int VERSION = 1;
+
+    /**
+     * The separator of the names of a placement, as written by {@link OrderingsGenerator#pairToString}.
+     */
+    private static final String SEPARATOR = " > ";
+
+    private static final String SUFFIX = ".result";
+
+    /**
+     * The results of a dataset: the number of placements, and the placements that give each unique topology.
+     */
+    static final class Results
+    {
+        private final long placements;
+        private final LinkedHashMap<String, List<String>> topologies;
+
+        /**
+         * @param topologies The placements of each unique topology, by the text of the topology.
+         */
+        Results(long placements, Map<String, ? extends Collection<String>> topologies)
+        {
+            this.placements = placements;
+            this.topologies = new LinkedHashMap<>();
+            topologies.forEach((topology, configurations) ->
+                    this.topologies.put(topology, new ArrayList<>(configurations)));
+        }
+
+        long getPlacements()
+        {
+            return placements;
+        }
+
+        /**
+         * @return The placements of each unique topology, in the order that they were given.
+         */
+        Map<String, List<String>> getTopologies()
+        {
+            return Collections.unmodifiableMap(topologies);
+        }
+    }
+
+    private final Path directory;
+    private final long limit;
+
+    /**
+     * @param limit The most bytes that the cached results may take.
+     */
+    ResultCache(Path directory, long limit)
+    {
+        this.directory = directory;
+        this.limit = limit;
+    }
+
+    /**
+     * @return The key of the results of the dataset {@code dataset} with the settings {@code settings}.
+     */
+    static String key(byte[] dataset, String settings)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException("Every Java platform supports SHA-256.", e);
+        }
+
+        digest.update(dataset);
+        digest.update((byte) 0);
+        digest.update(settings.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest())
+            key.append(Character.forDigit(b >> 4 & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+
+        return key.toString();
+    }
+
+    /**
+     * @return The results stored under {@code key}, or null if there are none (or they cannot be read).
+     */
+    Results get(String key)
+    {
+        Path file = directory.resolve(key + SUFFIX);
+        if (!Files.isRegularFile(file))
+            return null;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16)))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return null;
+
+            long placements = in.readLong();
+            String[] names = new String[in.readInt()];
+            for (int i = 0; i < names.length; i++)
+                names[i] = in.readUTF();
+
+            int count = in.readInt();
+            LinkedHashMap<String, List<String>> topologies = new LinkedHashMap<>();
+            StringBuilder placement = new StringBuilder();
+            for (int t = 0; t < count; t++)
+            {
+                byte[] text = new byte[in.readInt()];
+                in.readFully(text);
+
+                int size = in.readInt();
+                List<String> configurations = new ArrayList<>(size);
+                for (int p = 0; p < size; p++)
+                {
+                    placement.setLength(0);
+                    for (int length = readVarint(in), i = 0; i < length; i++)
+                    {
+                        if (i > 0)
+                            placement.append(SEPARATOR);
+                        placement.append(names[readVarint(in)]);
+                    }
+                    configurations.add(placement.toString());
+                }
+                topologies.put(new String(text, StandardCharsets.UTF_8), configurations);
+            }
+
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Results(placements, topologies);
+        } catch (IOException | RuntimeException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Stores {@code results} under {@code key}, and then evicts the least recently used results beyond the limit.
+     *
+     * @throws IOException if the results cannot be written.
+     */
+    void put(String key, Results results) throws IOException
+    {
+        Files.createDirectories(directory);
+
+        HashMap<String, Integer> indices = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (List<String> configurations : results.topologies.values())
+            for (String configuration : configurations)
+                for (String name : configuration.split(SEPARATOR, -1))
+                    if (indices.putIfAbsent(name, indices.size()) == null)
+                        names.add(name);
+
+        // Written aside and moved into place, so that a reader never sees half a result.
+        Path temporary = Files.createTempFile(directory, key, ".tmp");
+        try
+        {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary), 1 << 16)))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(results.placements);
+                out.writeInt(names.size());
+                for (String name : names)
+                    out.writeUTF(name);
+
+                out.writeInt(results.topologies.size());
+                for (Map.Entry<String, List<String>> entry : results.topologies.entrySet())
+                {
+                    byte[] text = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(text.length);
+                    out.write(text);
+
+                    out.writeInt(entry.getValue().size());
+                    for (String configuration : entry.getValue())
+                    {
+                        String[] parts = configuration.split(SEPARATOR, -1);
+                        writeVarint(out, parts.length);
+                        for (String name : parts)
+                            writeVarint(out, indices.get(name));
+                    }
+                }
+            }
+            Files.move(temporary, directory.resolve(key + SUFFIX), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally
+        {
+            Files.deleteIfExists(temporary);
+        }
+
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used results until the rest fit within the limit.
+     */
+    private void evict() throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        HashMap<Path, FileTime> used = new HashMap<>();
+        long total = 0;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, "*" + SUFFIX))
+        {
+            for (Path file : entries)
+            {
+                files.add(file);
+                used.put(file, Files.getLastModifiedTime(file));
+                total += Files.size(file);
+            }
+        }
+
+        files.sort(Comparator.comparing(used::get));
+        for (int i = 0; total > limit && i < files.size(); i++)
+        {
+            total -= Files.size(files.get(i));
+            Files.delete(files.get(i));
+        }
+    }
+
+    private static void writeVarint(DataOutput out, int value) throws IOException
+    {
+        for (; (value & ~0x7F) != 0; value >>>= 7)
+            out.writeByte(value & 0x7F | 0x80);
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInput in) throws IOException
+    {
+        int value = 0;
+        for (int shift = 0; ; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeSet;
+
+/**
+ * An immutable, canonical form of a network: its vertices in sorted order, and its adjacency as a bit matrix over
+ * them. In a simple network the matrix is symmetric, so the same connections compare equal however they were written
+ * down; in a directed network row {@code i} holds the targets of vertex {@code i}. The hash is computed once, so
+ * using topologies as keys costs one comparison of the arrays per probe.
+ */
+final class Topology
+{
+    private final boolean simple;
+
+    /**
+     * The vertices with at least one connection, in sorted order.
+     */
+    private final char[] vertices;
+
+    /**
+     * The number of longs per row of the matrix.
+     */
+    private final int words;
+
+    /**
+     * The adjacency matrix, row by row; bit {@code j} of row {@code i} is set if vertex {@code i} connects to vertex
+     * {@code j}.
+     */
+    private final long[] matrix;
+
+    private final int hash;
+
+    /**
+     * @param connections The connections, as a map from each vertex to the vertices it connects to, per linking cost.
+     * @param simple      Whether the connections are undirected.
+     */
+    Topology(Collection<HashMap<Character, HashSet<Character>>> connections, boolean simple)
+    {
+        this.simple = simple;
+
+        TreeSet<Character> sorted = new TreeSet<>();
+        connections.forEach(map -> map.forEach((start, ends) ->
+        {
+            if (!ends.isEmpty())
+            {
+                sorted.add(start);
+                sorted.addAll(ends);
+            }
+        }));
+
+        vertices = new char[sorted.size()];
+        int count = 0;
+        for (Character vertex : sorted)
+            vertices[count++] = vertex;
+
+        words = (vertices.length + 63) >>> 6;
+        matrix = new long[vertices.length * words];
+        connections.forEach(map -> map.forEach((start, ends) ->
+        {
+            int from = indexOf(start);
+            for (Character end : ends)
+            {
+                int to = indexOf(end);
+                connect(from, to);
+                if (simple)
+                    connect(to, from);
+            }
+        }));
+
+        hash = hash();
+    }
+
+    /**
+     * @param candidates The vertices that may be connected, in sorted order.
+     * @param counts     For each cell {@code i * candidates.length + j} of the adjacency matrix over {@code
+     *                   candidates}, how many linking costs connect vertex {@code i} to vertex {@code j}.
+     * @param simple     Whether the connections are undirected.
+     */
+    Topology(char[] candidates, int[] counts, boolean simple)
+    {
+        this.simple = simple;
+
+        int n = candidates.length;
+        boolean[] connected = new boolean[n];
+        for (int cell = 0; cell < counts.length; cell++)
+            if (counts[cell] > 0)
+                connected[cell / n] = connected[cell % n] = true;
+
+        int[] indices = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++)
+            indices[i] = connected[i] ? count++ : -1;
+        vertices = new char[count];
+        for (int i = 0; i < n; i++)
+            if (connected[i])
+                vertices[indices[i]] = candidates[i];
+
+        words = (vertices.length + 63) >>> 6;
+        matrix = new long[vertices.length * words];
+        for (int cell = 0; cell < counts.length; cell++)
+            if (counts[cell] > 0)
+            {
+                connect(indices[cell / n], indices[cell % n]);
+                if (simple)
+                    connect(indices[cell % n], indices[cell / n]);
+            }
+
+        hash = hash();
+    }
+
+    private int hash()
+    {
+        return 31 * (31 * Boolean.hashCode(simple) + Arrays.hashCode(vertices)) + Arrays.hashCode(matrix);
+    }
+
+    private int indexOf(char vertex)
+    {
+        return Arrays.binarySearch(vertices, vertex);
+    }
+
+    private void connect(int from, int to)
+    {
+        matrix[from * words + (to >>> 6)] |= 1L << to;
+    }
+
+    /**
+     * @return The connections, separated by spaces, as {@code a<->b} in a simple network and {@code a->b} otherwise.
+     */
+    @Override public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < vertices.length; i++)
+            for (int j = simple ? i : 0; j < vertices.length; j++)
+                if ((matrix[i * words + (j >>> 6)] & 1L << j) != 0)
+                    builder.append(vertices[i]).append(simple ? "<->" : "->").append(vertices[j]).append(' ');
+
+        return builder.toString().trim();
+    }
+
+    @Override public boolean equals(Object other)
+    {
+        if (this == other)
+            return true;
+        if (!(other instanceof Topology))
+            return false;
+
+        Topology topology = (Topology) other;
+        return hash == topology.hash && simple == topology.simple && Arrays.equals(vertices, topology.vertices) &&
+                Arrays.equals(matrix, topology.matrix);
+    }
+
+    @Override public int hashCode()
+    {
+        return hash;
+    }
+}
@@ -12,6 +12,11 @@ public class TopologyBuilder
     private boolean simpleNetwork;
     private HashMap<String, HashMap<Character, HashSet<Character>>> network;
 
+    /**
+     * The canonical form of the network, frozen on first use and thawed by every cut.
+     */
+    private Topology frozen;
+
     private void initializeConnections(HashMap<String, HashMap<Character, HashSet<Character>>> initial)
     {
         initial.forEach((str, map) ->
@@ -31,7 +36,8 @@ public class TopologyBuilder
 
     void cutEdge(String edge)
     {
-        network.remove(edge);
+        if (network.remove(edge) != null)
+            frozen = null;
     }
 
     void cutEdges(Set<String> edges)
@@ -39,6 +45,18 @@ public class TopologyBuilder
         edges.forEach(this::cutEdge);
     }
 
+    /**
+     * @return The canonical form of the network as it stands.
+     */
+    Topology freeze()
+    {
+        Topology topology = frozen;
+        if (topology == null)
+            frozen = topology = new Topology(network.values(), simpleNetwork);
+
+        return topology;
+    }
+
     HashMap<Character, HashSet<Character>> getTopology()
     {
         HashMap<Character, HashSet<Character>> results = new HashMap<>();
@@ -87,13 +105,13 @@ public class TopologyBuilder
     {
         boolean result = false;
         if (other != null && other instanceof TopologyBuilder)
-            result = this.getTopology().equals(((TopologyBuilder) other).getTopology());
+            result = this.freeze().equals(((TopologyBuilder) other).freeze());
 
         return result;
     }
 
     @Override public int hashCode()
     {
-        return getTopology().hashCode();
+        return freeze().hashCode();
     }
 }
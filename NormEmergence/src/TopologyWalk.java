@@ -0,0 +1,452 @@
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Walks the order ideals of a {@link DependencyGraph} depth-first, in the order that {@link OrderIdeals} enumerates
+ * them, while keeping the topology of the current placement up to date. Including a node in the ideal adds the edges
+ * of its linking cost, and backtracking over it removes them again, so a step of the walk costs as much as the edges of
+ * one node rather than a copy of the whole network and a cut of the suffix.
+ * <p>
+ * The topology is kept as the number of linking costs that supply each connection, and identified by a 128-bit
+ * Zobrist fingerprint: the XOR of a fixed random key per connection present. Equal topologies (in the sense of {@link
+ * Topology}) have equal fingerprints; two different ones collide with probability 2<sup>-128</sup>.
+ * <p>
+ * The ideals of a wide graph (see {@link DependencyGraph#isWide()}) are sets rather than masks, and are only walked one
+ * at a time, by {@link #forEachWide} and {@link #sampleWide}.
+ */
+final class TopologyWalk
+{
+    /**
+     * The seed of the Zobrist keys; fixed, so that fingerprints are comparable from one run to the next.
+     */
+    private static final long SEED = 0x5DEECE66DL;
+
+    interface Visitor
+    {
+        /**
+         * @param ideal The mask of the ideal.
+         * @param high  The high half of the fingerprint of its topology.
+         * @param low   The low half of the fingerprint of its topology.
+         */
+        void visit(long ideal, long high, long low);
+    }
+
+    interface WideVisitor
+    {
+        /**
+         * @param ideal The ideal, which is reused from one visit to the next.
+         * @param high  The high half of the fingerprint of its topology.
+         * @param low   The low half of the fingerprint of its topology.
+         */
+        void visit(BitSet ideal, long high, long low);
+    }
+
+    /**
+     * The fingerprint of a topology, for use as a key.
+     */
+    static final class Fingerprint
+    {
+        private final long high;
+        private final long low;
+
+        Fingerprint(long high, long low)
+        {
+            this.high = high;
+            this.low = low;
+        }
+
+        long getHigh()
+        {
+            return high;
+        }
+
+        long getLow()
+        {
+            return low;
+        }
+
+        @Override public boolean equals(Object other)
+        {
+            if (!(other instanceof Fingerprint))
+                return false;
+
+            Fingerprint that = (Fingerprint) other;
+            return high == that.high && low == that.low;
+        }
+
+        @Override public int hashCode()
+        {
+            return Long.hashCode(low);
+        }
+    }
+
+    private final OrderIdeals ideals;
+    private final DependencyGraph graph;
+    private final int[] order;
+    private final boolean simple;
+
+    /**
+     * Every vertex of the network, in sorted order.
+     */
+    private final char[] vertices;
+
+    /**
+     * By ordinal, the connections (as cells of the adjacency matrix) that the linking cost of the node supplies.
+     */
+    private final int[][] cells;
+
+    /**
+     * The connections of the linking costs that are never cut: those of the nodes that can never be free.
+     */
+    private final int[] baseCells;
+
+    private final long[] highKeys;
+    private final long[] lowKeys;
+
+    /**
+     * @param ideals  The ideals to walk.
+     * @param network The connections of each linking cost, by name.
+     * @param simple  Whether the connections are undirected.
+     */
+    TopologyWalk(OrderIdeals ideals, HashMap<String, HashMap<Character, HashSet<Character>>> network,
+                 boolean simple)
+    {
+        this.ideals = ideals;
+        this.graph = ideals.getGraph();
+        this.order = ideals.getTopologicalOrder();
+        this.simple = simple;
+
+        TreeSet<Character> sorted = new TreeSet<>();
+        network.values().forEach(map -> map.forEach((start, ends) ->
+        {
+            sorted.add(start);
+            sorted.addAll(ends);
+        }));
+        HashMap<Character, Integer> indices = new HashMap<>();
+        vertices = new char[sorted.size()];
+        for (Character vertex : sorted)
+        {
+            vertices[indices.size()] = vertex;
+            indices.put(vertex, indices.size());
+        }
+
+        int n = vertices.length;
+        highKeys = new long[n * n];
+        lowKeys = new long[n * n];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int cell = 0; cell < n * n; cell++)
+        {
+            highKeys[cell] = random.nextLong();
+            lowKeys[cell] = random.nextLong();
+        }
+
+        HashMap<String, Integer> ordinals = new HashMap<>();
+        for (int node : order)
+            ordinals.put(graph.getNode(node).toString(), node);
+
+        cells = new int[graph.size()][];
+        Arrays.fill(cells, new int[0]);
+        IntStream.Builder base = IntStream.builder();
+        for (String identifier : network.keySet())
+        {
+            int[] edges = network.get(identifier).entrySet().stream().flatMapToInt(entry -> entry.getValue().stream()
+                    .mapToInt(end ->
+                    {
+                        int from = indices.get(entry.getKey());
+                        int to = indices.get(end);
+                        return simple ? Math.min(from, to) * n + Math.max(from, to) : from * n + to;
+                    })).toArray();
+
+            Integer ordinal = ordinals.get(identifier);
+            if (ordinal == null)
+                Arrays.stream(edges).forEach(base);
+            else
+                cells[ordinal] = edges;
+        }
+        baseCells = base.build().toArray();
+    }
+
+    /**
+     * The topology of a placement, as it changes along the walk.
+     */
+    private final class State
+    {
+        private final int[] counts = new int[highKeys.length];
+        private long high;
+        private long low;
+
+        /**
+         * @param ideal The ideal to start at.
+         */
+        private State(long ideal)
+        {
+            add(baseCells);
+            for (; ideal != 0; ideal &= ideal - 1)
+                add(cells[Long.numberOfTrailingZeros(ideal)]);
+        }
+
+        /**
+         * @param ideal The ideal of a wide graph to start at.
+         */
+        private State(BitSet ideal)
+        {
+            add(baseCells);
+            for (int node = ideal.nextSetBit(0); node >= 0; node = ideal.nextSetBit(node + 1))
+                add(cells[node]);
+        }
+
+        private void add(int[] edges)
+        {
+            for (int cell : edges)
+                if (counts[cell]++ == 0)
+                    toggle(cell);
+        }
+
+        private void remove(int[] edges)
+        {
+            for (int cell : edges)
+                if (--counts[cell] == 0)
+                    toggle(cell);
+        }
+
+        private void toggle(int cell)
+        {
+            high ^= highKeys[cell];
+            low ^= lowKeys[cell];
+        }
+    }
+
+    /**
+     * @return The topology of the placement of {@code ideal}, built from the connections of its linking costs alone.
+     */
+    Topology getTopology(long ideal)
+    {
+        return new Topology(vertices, new State(ideal).counts, simple);
+    }
+
+    /**
+     * @return The topology of the placement of {@code ideal}, an ideal of a wide graph.
+     */
+    Topology getTopology(BitSet ideal)
+    {
+        return new Topology(vertices, new State(ideal).counts, simple);
+    }
+
+    /**
+     * Visits every ideal, one at a time.
+     */
+    void forEach(Visitor visitor)
+    {
+        walk(0, 0, new State(0), visitor);
+    }
+
+    /**
+     * Visits every ideal from the threads of the common fork-join pool; each task below the split depth of {@link
+     * OrderIdeals#getSplitDepth()} walks on its own state. {@code visitor} must be safe to call concurrently.
+     */
+    void forEachInParallel(Visitor visitor)
+    {
+        ForkJoinPool.commonPool().invoke(new WalkTask(0, 0, ideals.getSplitDepth(), visitor));
+    }
+
+    /**
+     * @param parallel Whether to walk on every core.
+     * @return The number of unique topologies, told apart by their fingerprints alone.
+     */
+    int countUnique(boolean parallel)
+    {
+        Set<Fingerprint> fingerprints = parallel ? ConcurrentHashMap.newKeySet() : new HashSet<>();
+        if (graph.isWide())
+        {
+            forEachWide((ideal, high, low) -> fingerprints.add(new Fingerprint(high, low)));
+            return fingerprints.size();
+        }
+
+        Visitor visitor = (ideal, high, low) -> fingerprints.add(new Fingerprint(high, low));
+        if (parallel)
+            forEachInParallel(visitor);
+        else
+            forEach(visitor);
+
+        return fingerprints.size();
+    }
+
+    /**
+     * Visits random ideals, drawn by a lazy Markov chain on the ideals that starts at the empty one: each step picks a
+     * node at random, and with probability 1/2 adds it (if its dependencies are all in) or removes it (if none of its
+     * dependents are in). The moves are symmetric, so the chain converges to the uniform distribution over the ideals,
+     * i.e. over the placements; each step costs as much as the edges of one node. How many steps it takes to mix is
+     * not known in general, so {@code burnIn} and {@code thinning} are heuristics.
+     *
+     * @param burnIn   The steps to take before the first sample.
+     * @param thinning The steps to take between samples.
+     * @param samples  The most samples to visit.
+     * @param deadline The value of {@link System#nanoTime()} after which no more samples are drawn.
+     * @return The number of samples visited.
+     */
+    int sample(SplittableRandom random, long burnIn, long thinning, int samples, long deadline, Visitor visitor)
+    {
+        State state = new State(0);
+        long ideal = 0;
+        long steps = burnIn;
+        int visited = 0;
+        while (visited < samples && System.nanoTime() - deadline < 0)
+        {
+            for (; steps > 0 && order.length > 0; steps--)
+            {
+                int node = order[random.nextInt(order.length)];
+                long bit = 1L << node;
+                if (random.nextBoolean())
+                    continue;
+
+                if ((ideal & bit) != 0)
+                {
+                    if ((graph.getDependents(node) & ideal) == 0)
+                    {
+                        ideal &= ~bit;
+                        state.remove(cells[node]);
+                    }
+                } else if ((graph.getDependencies(node) & ~ideal) == 0)
+                {
+                    ideal |= bit;
+                    state.add(cells[node]);
+                }
+            }
+
+            visitor.visit(ideal, state.high, state.low);
+            visited++;
+            steps = thinning;
+        }
+
+        return visited;
+    }
+
+    /**
+     * Samples the ideals of a wide graph as {@link #sample} does.
+     */
+    int sampleWide(SplittableRandom random, long burnIn, long thinning, int samples, long deadline,
+                   WideVisitor visitor)
+    {
+        State state = new State(new BitSet());
+        BitSet ideal = new BitSet(graph.size());
+        long steps = burnIn;
+        int visited = 0;
+        while (visited < samples && System.nanoTime() - deadline < 0)
+        {
+            for (; steps > 0 && order.length > 0; steps--)
+            {
+                int node = order[random.nextInt(order.length)];
+                if (random.nextBoolean())
+                    continue;
+
+                if (ideal.get(node))
+                {
+                    if (!graph.getDependentSet(node).intersects(ideal))
+                    {
+                        ideal.clear(node);
+                        state.remove(cells[node]);
+                    }
+                } else if (graph.isSatisfied(node, ideal))
+                {
+                    ideal.set(node);
+                    state.add(cells[node]);
+                }
+            }
+
+            visitor.visit(ideal, state.high, state.low);
+            visited++;
+            steps = thinning;
+        }
+
+        return visited;
+    }
+
+    /**
+     * Visits every ideal of a wide graph, one at a time, in the order of {@link #forEach}.
+     */
+    void forEachWide(WideVisitor visitor)
+    {
+        walk(0, new BitSet(graph.size()), new State(new BitSet()), visitor);
+    }
+
+    private final class WalkTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final int index;
+        private final long ideal;
+        private final int splitDepth;
+        private final Visitor visitor;
+
+        private WalkTask(int index, long ideal, int splitDepth, Visitor visitor)
+        {
+            this.index = index;
+            this.ideal = ideal;
+            this.splitDepth = splitDepth;
+            this.visitor = visitor;
+        }
+
+        @Override protected void compute()
+        {
+            if (index >= splitDepth)
+            {
+                walk(index, ideal, new State(ideal), visitor);
+                return;
+            }
+
+            int node = order[index];
+            WalkTask excluded = new WalkTask(index + 1, ideal, splitDepth, visitor);
+            if ((graph.getDependencies(node) & ~ideal) == 0)
+                invokeAll(new WalkTask(index + 1, ideal | 1L << node, splitDepth, visitor), excluded);
+            else
+                excluded.compute();
+        }
+    }
+
+    private void walk(int index, long ideal, State state, Visitor visitor)
+    {
+        if (index == order.length)
+        {
+            visitor.visit(ideal, state.high, state.low);
+            return;
+        }
+
+        int node = order[index];
+        if ((graph.getDependencies(node) & ~ideal) == 0)
+        {
+            state.add(cells[node]);
+            walk(index + 1, ideal | 1L << node, state, visitor);
+            state.remove(cells[node]);
+        }
+        walk(index + 1, ideal, state, visitor);
+    }
+
+    private void walk(int index, BitSet ideal, State state, WideVisitor visitor)
+    {
+        if (index == order.length)
+        {
+            visitor.visit(ideal, state.high, state.low);
+            return;
+        }
+
+        int node = order[index];
+        if (graph.isSatisfied(node, ideal))
+        {
+            state.add(cells[node]);
+            ideal.set(node);
+            walk(index + 1, ideal, state, visitor);
+            ideal.clear(node);
+            state.remove(cells[node]);
+        }
+        walk(index + 1, ideal, state, visitor);
+    }
+}
@@ -0,0 +1,108 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/**
+ * Checks that the masks of a {@link DependencyGraph} agree with the dependencies of its nodes, that a node depending
+ * on one outside of the graph is never free, and that a graph of more than {@link DependencyGraph#MAX_NODES} nodes
+ * falls back to sets, whose ideals are counted and enumerated alike. Run from the root of the repository.
+ */
+public class DependencyGraphTest
+{
+    public static void main(String[] args) throws IOException
+    {
+        DependencyGraph graph = new OrderingsGenerator().initializeGraph("NormEmergence/datasets/metapunishment.dat");
+        check(graph.toNodes(graph.getAll()).equals(graph.getNodes()), "the mask of every node misses nodes");
+        for (int node = 0; node < graph.size(); node++)
+        {
+            check(graph.getOrdinal(graph.getNode(node)) == node, "the ordinal of node " + node + " is wrong");
+            check(new HashSet<>(graph.toNodes(graph.getDependencies(node))).equals(
+                    graph.getNode(node).getDependencies()), "the dependencies of " + graph.getNode(node) + " differ");
+            for (int other = 0; other < graph.size(); other++)
+                check((graph.getDependents(node) >>> other & 1) == (graph.getDependencies(other) >>> node & 1),
+                        "the dependents of " + graph.getNode(node) + " differ");
+            check((graph.getFree(0) >>> node & 1) == (graph.getDependencies(node) == 0 ? 1 : 0),
+                    graph.getNode(node) + " is wrongly free");
+        }
+
+        Path dataset = Files.createTempFile("dependencies", ".dat");
+        try
+        {
+            Files.write(dataset, "a missing : x y\nb : y z\nc b : x z\n".getBytes(StandardCharsets.UTF_8));
+            graph = new OrderingsGenerator().initializeGraph(dataset.toString());
+        } finally
+        {
+            Files.delete(dataset);
+        }
+        int a = graph.getOrdinal(DependencyNode.intern(new HashMap<>(), "a"));
+        int b = graph.getOrdinal(DependencyNode.intern(new HashMap<>(), "b"));
+        int c = graph.getOrdinal(DependencyNode.intern(new HashMap<>(), "c"));
+        check(graph.size() == 3, "a node that was never defined joined the graph");
+        check(graph.getFree(0) == 1L << b, "only b should be free at first");
+        check(graph.getFree(1L << b) == 1L << c, "only c should be free after b");
+        check(graph.getFree(1L << b | 1L << c) == 0, "a, whose dependency is missing, became free");
+
+        BitSet[] extra = new BitSet[graph.size()];
+        for (int node = 0; node < extra.length; node++)
+            extra[node] = new BitSet();
+        extra[b].set(c);
+        DependencyGraph constrained = graph.constrain(extra);
+        check(constrained.getDependencies(b) == 1L << c && constrained.getDependents(c) == (1L << b),
+                "the constraint was not added");
+        check(graph.getDependencies(b) == 0, "constraining changed the original graph");
+        check(constrained.getFree(0) == 0 && constrained.getOrdinal(graph.getNode(a)) == a,
+                "the constrained graph does not keep the ordinals, or left b free");
+
+        // Two chains of 35 nodes: an ideal holds a prefix of each, and an ordering interleaves them.
+        HashMap<String, DependencyNode> interned = new HashMap<>();
+        HashSet<DependencyNode> nodes = new HashSet<>();
+        for (int chain = 0; chain < 2; chain++)
+            for (int node = 0; node < 35; node++)
+            {
+                DependencyNode dependencyNode = DependencyNode.intern(interned, "c" + chain + "n" + node);
+                if (node > 0)
+                    dependencyNode.getDependencies().add(interned.get("c" + chain + "n" + (node - 1)));
+                nodes.add(dependencyNode);
+            }
+        DependencyGraph wide = new DependencyGraph(nodes);
+        check(wide.isWide() && wide.size() == 70, "a graph of 70 nodes is not wide");
+        BitSet first = new BitSet();
+        first.set(wide.getOrdinal(interned.get("c0n0")));
+        first.set(wide.getOrdinal(interned.get("c1n0")));
+        check(wide.getFree(new BitSet()).equals(first), "only the first node of each chain should be free at first");
+
+        OrderIdeals ideals = new OrderIdeals(wide);
+        OrderIdeals.Counts counts = ideals.count();
+        check(counts.getIdeals() == 36 * 36, counts.getIdeals() + " ideals were counted instead of 1296");
+        check(counts.getOrderings().equals(binomial(70, 35)), counts.getOrderings() + " orderings were counted");
+
+        long[] enumerated = new long[1];
+        ideals.forEachWideIdeal(ideal ->
+        {
+            for (int node = ideal.nextSetBit(0); node >= 0; node = ideal.nextSetBit(node + 1))
+                check(wide.isSatisfied(node, ideal), ideal + " is not closed under dependencies");
+            enumerated[0]++;
+        });
+        check(enumerated[0] == counts.getIdeals(), enumerated[0] + " ideals were enumerated");
+    }
+
+    private static BigInteger binomial(int n, int k)
+    {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 1; i <= k; i++)
+            result = result.multiply(BigInteger.valueOf(n - k + i)).divide(BigInteger.valueOf(i));
+
+        return result;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
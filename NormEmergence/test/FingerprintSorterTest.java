@@ -0,0 +1,90 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Checks that {@link FingerprintSorter} gives every record back, each group whole and flagged once, and in the same
+ * order whether the records fit in memory or are spilled to more runs than are merged at once.
+ */
+public class FingerprintSorterTest
+{
+    private static final int RECORDS = 20_000;
+    private static final int FINGERPRINTS = 300;
+
+    public static void main(String[] args) throws IOException
+    {
+        Random random = new Random(0);
+        long[][] fingerprints = new long[FINGERPRINTS][];
+        for (int f = 0; f < FINGERPRINTS; f++)
+            fingerprints[f] = new long[]{random.nextLong(), random.nextLong()};
+
+        long[][] records = new long[RECORDS][];
+        for (int r = 0; r < RECORDS; r++)
+        {
+            long[] fingerprint = fingerprints[random.nextInt(FINGERPRINTS)];
+            records[r] = new long[]{fingerprint[0], fingerprint[1], random.nextLong()};
+        }
+
+        // The buffer only grows as records come in, so an unbounded budget holds them all without taking it up front.
+        List<long[]> inMemory = sort(records, Long.MAX_VALUE);
+        // Runs of 256 records are merged in one pass beyond the first batch, runs of 16 in several.
+        for (int runLength : new int[]{256, 16})
+        {
+            List<long[]> spilled = sort(records, 3 * Long.BYTES * runLength);
+            check(inMemory.size() == spilled.size(), "the spilled records differ in number");
+            for (int r = 0; r < inMemory.size(); r++)
+                check(Arrays.equals(inMemory.get(r), spilled.get(r)), "the spilled records come out in another order");
+        }
+
+        Map<List<Long>, Integer> expected = new HashMap<>();
+        for (long[] record : records)
+            expected.merge(Arrays.asList(record[0], record[1], record[2]), 1, Integer::sum);
+        Map<List<Long>, Integer> sorted = new HashMap<>();
+        for (long[] record : inMemory)
+            sorted.merge(Arrays.asList(record[0], record[1], record[2]), 1, Integer::sum);
+        check(expected.equals(sorted), "records were lost or made up");
+
+        System.out.println(RECORDS + " records in " + inMemory.stream().filter(record -> record[3] != 0).count() +
+                " groups");
+    }
+
+    /**
+     * @return The records as visited, each with a fourth entry that is 1 for the first of its group.
+     */
+    private static List<long[]> sort(long[][] records, long budget) throws IOException
+    {
+        List<long[]> visited = new ArrayList<>();
+        Set<List<Long>> seen = new HashSet<>();
+        long groups;
+        try (FingerprintSorter sorter = new FingerprintSorter(budget))
+        {
+            for (long[] record : records)
+                sorter.add(record[0], record[1], record[2]);
+
+            groups = sorter.forEachGroup((high, low, ideal, first) ->
+            {
+                List<Long> fingerprint = Arrays.asList(high, low);
+                long[] last = visited.isEmpty() ? null : visited.get(visited.size() - 1);
+                boolean continues = last != null && last[0] == high && last[1] == low;
+                check(first != continues, "a group was not flagged at its start alone");
+                check(continues || seen.add(fingerprint), "a group was split");
+                visited.add(new long[]{high, low, ideal, first ? 1 : 0});
+            });
+        }
+        check(groups == seen.size(), groups + " groups reported, but " + seen.size() + " visited");
+
+        return visited;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Applies random edits to a dataset, one node at a time, and checks after each that the {@link IncrementalAnalysis}
+ * groups the placements as the full analysis of the edited dataset does, and as a new incremental analysis of it
+ * does. Run from the root of the repository.
+ */
+public class IncrementalAnalysisTest
+{
+    private static final int NAMES = 8;
+    private static final int EDITS = 300;
+
+    private final LinkedHashMap<String, Set<String>> dependencies = new LinkedHashMap<>();
+    private final LinkedHashMap<String, Map<Character, Set<Character>>> edges = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws IOException
+    {
+        Path file = Files.createTempFile("incremental", ".dat");
+        try
+        {
+            new IncrementalAnalysisTest().run(file, new Random(args.length > 0 ? Long.parseLong(args[0]) : 0));
+        } finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void run(Path file, Random random) throws IOException
+    {
+        IncrementalAnalysis analysis = new IncrementalAnalysis(true);
+        long recomputed = 0;
+        long placements = 0;
+        for (int edit = 0; edit < EDITS; edit++)
+        {
+            int index = random.nextInt(NAMES);
+            String name = "n" + index;
+            if (random.nextInt(10) < 2 && dependencies.containsKey(name))
+            {
+                dependencies.remove(name);
+                edges.remove(name);
+                recomputed += analysis.remove(name);
+            } else
+            {
+                // Only on nodes of lower index, so that the dependencies stay acyclic.
+                Set<String> on = new HashSet<>();
+                for (int k = random.nextInt(3); k > 0; k--)
+                {
+                    int dependency = random.nextInt(NAMES);
+                    if (dependency < index)
+                        on.add("n" + dependency);
+                }
+
+                Map<Character, Set<Character>> cost = new HashMap<>();
+                for (int k = 0; k < 2; k++)
+                    cost.computeIfAbsent((char) ('a' + random.nextInt(5)), c -> new HashSet<>()).add(
+                            (char) ('a' + random.nextInt(5)));
+
+                dependencies.remove(name);
+                dependencies.put(name, on);
+                edges.put(name, cost);
+                recomputed += analysis.define(name, on, cost);
+            }
+
+            if (dependencies.isEmpty())
+                continue;
+
+            write(file);
+            OrderingsGenerator generator = new OrderingsGenerator();
+            DependencyGraph graph = generator.initializeGraph(file.toString());
+            Set<Set<Set<String>>> expected = partition(
+                    OrderingsGenerator.seizeUniqueResults(generator.getAllConfigurations(graph)).values());
+
+            check(partition(analysis.getUniqueResults().values()).equals(expected),
+                    "edit " + edit + ": the placements are grouped differently");
+            check(partition(generator.analyzeIncrementally(graph).getUniqueResults().values()).equals(expected),
+                    "edit " + edit + ": a new analysis groups the placements differently");
+            check(analysis.getTopologyCount() == expected.size(), "edit " + edit + ": the topologies are miscounted");
+            placements += analysis.getPlacementCount();
+        }
+
+        System.out.println(recomputed + " placements recomputed over " + EDITS + " edits, for " + placements +
+                " placements in all");
+    }
+
+    private void write(Path file) throws IOException
+    {
+        StringBuilder dataset = new StringBuilder();
+        dependencies.forEach((name, on) ->
+        {
+            dataset.append(name);
+            on.forEach(dependency -> dataset.append(' ').append(dependency));
+            dataset.append(" :");
+            edges.get(name).forEach((start, ends) -> ends.forEach(end ->
+                    dataset.append(' ').append(start).append(' ').append(end)));
+            dataset.append('\n');
+        });
+        Files.write(file, dataset.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return The groups of placements, each placement as the set of the nodes before the linking cost, so that the
+     * groups compare equal however the placements were named.
+     */
+    private static Set<Set<Set<String>>> partition(Collection<? extends Collection<String>> groups)
+    {
+        Set<Set<Set<String>>> partition = new HashSet<>();
+        for (Collection<String> group : groups)
+        {
+            Set<Set<String>> placements = new HashSet<>();
+            for (String placement : group)
+            {
+                Set<String> prefix = new TreeSet<>();
+                for (String node : placement.split(" > "))
+                {
+                    if (node.equals("r"))
+                        break;
+                    prefix.add(node);
+                }
+                placements.add(prefix);
+            }
+            partition.add(placements);
+        }
+
+        return partition;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,76 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Checks that {@link LinearExtensions} produces the same orderings, in the same order, as the depth-first search over
+ * the free nodes that materialized every ordering before it. Run from the root of the repository.
+ */
+public class LinearExtensionsTest
+{
+    private static final String[] DATASETS = {"nopunishment", "basicpunishment", "metapunishment"};
+
+    public static void main(String[] args)
+    {
+        for (String dataset : DATASETS)
+        {
+            DependencyGraph graph = new OrderingsGenerator().initializeGraph(
+                    "NormEmergence/datasets/" + dataset + ".dat");
+
+            List<List<DependencyNode>> expected = new ArrayList<>();
+            search(graph, 0, new ArrayList<>(), expected);
+
+            List<List<DependencyNode>> iterated = new ArrayList<>();
+            for (List<DependencyNode> ordering : new LinearExtensions(graph))
+                iterated.add(ordering);
+            check(expected.equals(iterated), dataset + ": the iterator differs from the search");
+
+            List<List<DependencyNode>> visited = new ArrayList<>();
+            new LinearExtensions(graph).forEach((ordering, length) ->
+            {
+                List<DependencyNode> nodes = new ArrayList<>(length);
+                for (int i = 0; i < length; i++)
+                    nodes.add(graph.getNode(ordering[i]));
+                visited.add(nodes);
+            });
+            check(expected.equals(visited), dataset + ": the visitor differs from the search");
+
+            Iterator<List<DependencyNode>> iterator = new LinearExtensions(graph).iterator();
+            for (int i = 0; i < expected.size(); i++)
+                check(iterator.hasNext() && iterator.hasNext() && iterator.next().equals(expected.get(i)),
+                        dataset + ": hasNext() skipped an ordering");
+            check(!iterator.hasNext(), dataset + ": the iterator does not end");
+
+            System.out.println(dataset + ": " + expected.size() + " orderings");
+        }
+    }
+
+    /**
+     * The enumeration that {@link LinearExtensions} replaced: every free node in turn, by ascending ordinal, then the
+     * orderings of the rest.
+     */
+    private static void search(DependencyGraph graph, long visited, List<DependencyNode> path,
+                               List<List<DependencyNode>> orderings)
+    {
+        long free = graph.getFree(visited);
+        if (free == 0)
+        {
+            orderings.add(new ArrayList<>(path));
+            return;
+        }
+
+        for (; free != 0; free &= free - 1)
+        {
+            int node = Long.numberOfTrailingZeros(free);
+            path.add(graph.getNode(node));
+            search(graph, visited | 1L << node, path, orderings);
+            path.remove(path.size() - 1);
+        }
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
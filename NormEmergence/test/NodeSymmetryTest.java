@@ -0,0 +1,104 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks that enumerating one member of each orbit of interchangeable nodes, and expanding it afterwards, gives the
+ * same ideals and counts as enumerating them all, and that the analysis of a dataset with interchangeable nodes still
+ * names every placement of the orderings. Run from the root of the repository.
+ */
+public class NodeSymmetryTest
+{
+    /**
+     * Three interchangeable nodes under a common root, two more at the top, and a node that differs from its twin by
+     * an edge alone.
+     */
+    private static final String DATASET = String.join("\n",
+            "a : w x",
+            "b a : x y",
+            "c a : x y",
+            "d a : x y",
+            "e b c d : y z",
+            "f : y z",
+            "g : y z",
+            "h a : x w",
+            "i a : x z");
+
+    public static void main(String[] args) throws IOException
+    {
+        Path file = Files.createTempFile("symmetry", ".dat");
+        try
+        {
+            Files.write(file, DATASET.getBytes(StandardCharsets.UTF_8));
+            DependencyGraph graph = new OrderingsGenerator().initializeGraph(file.toString());
+            DependencyGraph meta = new OrderingsGenerator().initializeGraph(
+                    "NormEmergence/datasets/metapunishment.dat");
+
+            // Without a network, only the dependencies tell the nodes apart, so h and i are interchangeable too.
+            check(graph, new NodeSymmetry(graph, new HashMap<>(), true), 6 * 2 * 2);
+            check(graph, new NodeSymmetry(graph, new HashMap<>(), false), 1);
+            check(meta, new NodeSymmetry(meta, new HashMap<>(), true), -1);
+
+            OrderingsGenerator generator = new OrderingsGenerator();
+            DependencyGraph analyzed = generator.initializeGraph(file.toString());
+            Set<String> expected = new HashSet<>();
+            OrderingsGenerator.splitAtLinkingCosts(OrderingsGenerator.getValidOrderings(analyzed)).forEach(split ->
+                    expected.add(OrderingsGenerator.pairToString(split)));
+            check(generator.getAllConfigurations(analyzed).keySet().equals(expected),
+                    "the reduced analysis names the placements differently");
+        } finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * @param factor The expected number of orderings per ordering of the reduced graph, or -1 if not known.
+     */
+    private static void check(DependencyGraph graph, NodeSymmetry symmetry, long factor)
+    {
+        OrderIdeals ideals = new OrderIdeals(graph);
+        OrderIdeals reducedIdeals = new OrderIdeals(symmetry.getReducedGraph());
+
+        Set<Long> expected = new HashSet<>();
+        ideals.forEachIdeal(expected::add);
+        Set<Long> expanded = new HashSet<>();
+        long[] reported = new long[1];
+        reducedIdeals.forEachIdeal(reducedIdeal ->
+        {
+            long[] before = {reported[0]};
+            symmetry.expand(reducedIdeal, ideal ->
+            {
+                expanded.add(ideal);
+                reported[0]++;
+            });
+            check(reported[0] - before[0] == symmetry.getMultiplicity(reducedIdeal),
+                    "the multiplicity of " + Long.toBinaryString(reducedIdeal) + " is wrong");
+        });
+        check(expected.equals(expanded), "the expanded ideals differ from the ideals");
+        check(reported[0] == expected.size(), "an ideal was expanded more than once");
+
+        OrderIdeals.Counts counts = ideals.count();
+        OrderIdeals.Counts reducedCounts = symmetry.count(reducedIdeals);
+        check(counts.getOrderings().equals(reducedCounts.getOrderings()) &&
+                counts.getIdeals() == reducedCounts.getIdeals(), "the reduced counts differ");
+        if (factor >= 0)
+            check(symmetry.getOrderingFactor().equals(BigInteger.valueOf(factor)),
+                    "the ordering factor is " + symmetry.getOrderingFactor());
+
+        System.out.println(Arrays.asList(graph.size() + " nodes", counts.getOrderings() + " orderings",
+                counts.getIdeals() + " placements", symmetry.getOrderingFactor() + " orderings per orbit"));
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,65 @@
+import javafx.util.Pair;
+
+import java.math.BigInteger;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks that {@link OrderIdeals} gives the same placements as splitting every valid ordering at every point, each
+ * named as the first ordering to reach it names it, whether enumerated on one thread or on every core, and that it
+ * counts the orderings and the placements correctly. Run from the root of the repository.
+ */
+public class OrderIdealsTest
+{
+    private static final String[] DATASETS = {"nopunishment", "basicpunishment", "metapunishment"};
+
+    public static void main(String[] args)
+    {
+        for (String dataset : DATASETS)
+        {
+            DependencyGraph graph = new OrderingsGenerator().initializeGraph(
+                    "NormEmergence/datasets/" + dataset + ".dat");
+            OrderIdeals ideals = new OrderIdeals(graph);
+
+            Set<Pair<Set<String>, Set<String>>> expected = OrderingsGenerator.splitAtLinkingCosts(
+                    OrderingsGenerator.getValidOrderings(graph));
+            Set<Pair<Set<String>, Set<String>>> splits = ideals.getSplits();
+            check(expected.equals(splits), dataset + ": the ideals differ from the splits of the orderings");
+            check(names(expected).equals(names(splits)), dataset + ": the placements are named differently");
+
+            long orderings = 0;
+            for (List<DependencyNode> ignored : new LinearExtensions(graph))
+                orderings++;
+            OrderIdeals.Counts counts = ideals.count();
+            check(counts.getOrderings().equals(BigInteger.valueOf(orderings)),
+                    dataset + ": " + counts.getOrderings() + " orderings counted, not " + orderings);
+            check(counts.getIdeals() == expected.size(),
+                    dataset + ": " + counts.getIdeals() + " placements counted, not " + expected.size());
+
+            Set<Long> sequential = new HashSet<>();
+            ideals.forEachIdeal(sequential::add);
+            Set<Long> parallel = ConcurrentHashMap.newKeySet();
+            ideals.forEachIdealInParallel(ideal -> check(parallel.add(ideal), dataset + ": an ideal was repeated"));
+            check(sequential.equals(parallel), dataset + ": the parallel enumeration differs");
+
+            System.out.println(dataset + ": " + orderings + " orderings, " + expected.size() + " placements");
+        }
+    }
+
+    private static Set<String> names(Set<Pair<Set<String>, Set<String>>> splits)
+    {
+        Set<String> names = new HashSet<>();
+        for (Pair<Set<String>, Set<String>> split : splits)
+            names.add(OrderingsGenerator.pairToString(split));
+
+        return names;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
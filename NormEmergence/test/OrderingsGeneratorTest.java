@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks the parser of {@link OrderingsGenerator} on well-formed and malformed datasets, and its batch mode: the counts
+ * written by {@code --count}, which are found without enumerating, against those of the bundled datasets and against
+ * the records of a full run, also for a dataset too wide for long masks. Run from the root of the repository.
+ */
+public class OrderingsGeneratorTest
+{
+    private static final String[] DATASETS = {"nopunishment", "basicpunishment", "metapunishment"};
+    private static final long[] ORDERINGS = {2, 5, 672267};
+    private static final long[] PLACEMENTS = {6, 13, 156};
+    private static final long[] TOPOLOGIES = {5, 9, 45};
+    private static final int CHAIN = 35;
+
+    public static void main(String[] args) throws IOException
+    {
+        Path dataset = Files.createTempFile("dataset", ".dat");
+        try
+        {
+            checkParser(dataset);
+        } finally
+        {
+            Files.delete(dataset);
+        }
+
+        Path counted = Files.createTempDirectory("counted");
+        Path listed = Files.createTempDirectory("listed");
+        try
+        {
+            checkCounts(counted, listed);
+        } finally
+        {
+            delete(counted);
+            delete(listed);
+        }
+
+        Path wide = Files.createTempDirectory("wide");
+        try
+        {
+            checkWide(wide);
+        } finally
+        {
+            delete(wide);
+        }
+    }
+
+    private static void checkParser(Path dataset) throws IOException
+    {
+        // A node referenced before its line, a colon against a name, and blank lines.
+        DependencyGraph graph = parse(dataset, "\nc a b: x y\n\n  b a :y z\na : w x\n");
+        check(graph.size() == 3, graph.size() + " nodes parsed");
+        List<DependencyNode> nodes = graph.getNodes();
+        DependencyNode c = nodes.get(nodes.indexOf(DependencyNode.intern(new HashMap<>(), "c")));
+        check(c.getDependencies().size() == 2, "c depends on " + c.getDependencies());
+        check(new OrderIdeals(graph).count().getOrderings().intValue() == 1, "the dependencies were not all read");
+
+        // The nodes of one dataset do not carry their dependencies into the next.
+        graph = parse(dataset, "c : x y\n");
+        check(graph.getNodes().get(0).getDependencies().isEmpty(), "c kept the dependencies of the last dataset");
+
+        for (String malformed : new String[]{"a x y", "a : x", ": x y", "a : x y z"})
+            try
+            {
+                parse(dataset, "b : x y\n" + malformed + "\n");
+                throw new AssertionError("\"" + malformed + "\" was parsed");
+            } catch (IllegalArgumentException expected)
+            {
+                check(expected.getMessage().contains(":2:"), "the error does not name line 2");
+            }
+    }
+
+    private static DependencyGraph parse(Path dataset, String contents) throws IOException
+    {
+        Files.write(dataset, contents.getBytes(StandardCharsets.UTF_8));
+        return new OrderingsGenerator().initializeGraph(dataset.toString());
+    }
+
+    private static void checkCounts(Path counted, Path listed) throws IOException
+    {
+        String[] datasets = new String[DATASETS.length];
+        for (int d = 0; d < DATASETS.length; d++)
+            datasets[d] = "NormEmergence/datasets/" + DATASETS[d] + ".dat";
+
+        String[] counting = new String[datasets.length + 3];
+        counting[0] = "--count";
+        counting[1] = "--out";
+        counting[2] = counted.toString();
+        System.arraycopy(datasets, 0, counting, 3, datasets.length);
+        OrderingsGenerator.main(counting);
+
+        String[] listing = new String[datasets.length + 2];
+        listing[0] = "--out";
+        listing[1] = listed.toString();
+        System.arraycopy(datasets, 0, listing, 2, datasets.length);
+        OrderingsGenerator.main(listing);
+
+        for (int d = 0; d < DATASETS.length; d++)
+        {
+            Map<String, BigInteger> counts = records(counted.resolve(DATASETS[d] + ".tsv"));
+            check(counts.size() == 3, DATASETS[d] + ": counting wrote " + counts.keySet());
+            check(count(counts, "orderings") == ORDERINGS[d],
+                    DATASETS[d] + ": " + count(counts, "orderings") + " orderings");
+            check(count(counts, "placements") == PLACEMENTS[d],
+                    DATASETS[d] + ": " + count(counts, "placements") + " placements");
+            check(count(counts, "topologies") == TOPOLOGIES[d],
+                    DATASETS[d] + ": " + count(counts, "topologies") + " topologies");
+
+            Map<String, BigInteger> records = records(listed.resolve(DATASETS[d] + ".tsv"));
+            check(count(records, "placement") == PLACEMENTS[d] && count(records, "placements") == PLACEMENTS[d],
+                    DATASETS[d] + ": the listing holds " + count(records, "placement") + " placements");
+            check(count(records, "topology") == TOPOLOGIES[d] && count(records, "topologies") == TOPOLOGIES[d],
+                    DATASETS[d] + ": the listing holds " + count(records, "topology") + " topologies");
+        }
+    }
+
+    /**
+     * Runs a dataset of two chains of {@value #CHAIN} nodes, more than a graph can hold as long masks, through the
+     * counting, listing and incremental paths, which must agree on its placements and topologies.
+     */
+    private static void checkWide(Path directory) throws IOException
+    {
+        StringBuilder contents = new StringBuilder();
+        Random random = new Random(CHAIN);
+        for (char chain : new char[]{'a', 'b'})
+            for (int n = 0; n < CHAIN; n++)
+            {
+                contents.append(chain).append(n);
+                if (n > 0)
+                    contents.append(' ').append(chain).append(n - 1);
+                contents.append(" : ").append((char) ('p' + random.nextInt(4))).append(' ')
+                        .append((char) ('p' + random.nextInt(4))).append('\n');
+            }
+        Path dataset = directory.resolve("wide.dat");
+        Files.write(dataset, contents.toString().getBytes(StandardCharsets.UTF_8));
+
+        Path counted = directory.resolve("counted");
+        Path listed = directory.resolve("listed");
+        OrderingsGenerator.main(new String[]{"--count", "--out", counted.toString(), dataset.toString()});
+        OrderingsGenerator.main(new String[]{"--out", listed.toString(), dataset.toString()});
+        try
+        {
+            Map<String, BigInteger> counts = records(counted.resolve("wide.tsv"));
+            Map<String, BigInteger> records = records(listed.resolve("wide.tsv"));
+            long placements = (CHAIN + 1) * (CHAIN + 1);
+            check(counts.get("orderings").equals(binomial(2 * CHAIN, CHAIN)),
+                    "wide: " + counts.get("orderings") + " orderings");
+            check(count(counts, "placements") == placements,
+                    "wide: " + count(counts, "placements") + " placements");
+            check(count(records, "placement") == placements && count(records, "placements") == placements,
+                    "wide: the listing holds " + count(records, "placement") + " placements");
+            check(count(records, "topology") == count(counts, "topologies") &&
+                    count(records, "topologies") == count(counts, "topologies"),
+                    "wide: the listing holds " + count(records, "topology") + " topologies, counting found " +
+                            count(counts, "topologies"));
+
+            OrderingsGenerator generator = new OrderingsGenerator();
+            DependencyGraph graph = generator.initializeGraph(dataset.toString());
+            check(graph.isWide(), "wide: " + graph.size() + " nodes parsed");
+            IncrementalAnalysis analysis = generator.analyzeIncrementally(graph);
+            check(analysis.getPlacementCount() == placements,
+                    "wide: the analysis holds " + analysis.getPlacementCount() + " placements");
+            check(analysis.getTopologyCount() == count(counts, "topologies"),
+                    "wide: the analysis holds " + analysis.getTopologyCount() + " topologies");
+        } finally
+        {
+            delete(counted);
+            delete(listed);
+            Files.delete(dataset);
+        }
+    }
+
+    /**
+     * @return The value of every count record of {@code file}, and the number of every other kind of record.
+     */
+    private static Map<String, BigInteger> records(Path file) throws IOException
+    {
+        Map<String, BigInteger> records = new HashMap<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (String line : lines)
+        {
+            String[] fields = line.split("\t", -1);
+            if (fields.length == 2)
+                records.put(fields[0], new BigInteger(fields[1]));
+            else
+                records.merge(fields[0], BigInteger.ONE, BigInteger::add);
+        }
+
+        return records;
+    }
+
+    /**
+     * @return The record {@code name} of {@code records}, which must fit in a long.
+     */
+    private static long count(Map<String, BigInteger> records, String name)
+    {
+        return records.get(name).longValueExact();
+    }
+
+    private static BigInteger binomial(int n, int k)
+    {
+        BigInteger binomial = BigInteger.ONE;
+        for (int i = 0; i < k; i++)
+            binomial = binomial.multiply(BigInteger.valueOf(n - i)).divide(BigInteger.valueOf(i + 1));
+
+        return binomial;
+    }
+
+    private static void delete(Path directory) throws IOException
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for (Path file : files)
+                Files.delete(file);
+        }
+        Files.delete(directory);
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
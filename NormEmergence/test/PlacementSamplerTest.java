@@ -0,0 +1,47 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that the orderings sampled are valid, and that a sample of the placements of metapunishment sees its 45
+ * topologies and an estimate consistent with them. Run from the root of the repository.
+ */
+public class PlacementSamplerTest
+{
+    public static void main(String[] args)
+    {
+        OrderingsGenerator generator = new OrderingsGenerator();
+        DependencyGraph graph = generator.initializeGraph("NormEmergence/datasets/metapunishment.dat");
+        PlacementSampler sampler = generator.samplePlacements(graph);
+
+        SplittableRandom random = new SplittableRandom(0);
+        Set<List<DependencyNode>> orderings = new HashSet<>();
+        for (int i = 0; i < 1000; i++)
+        {
+            List<DependencyNode> ordering = sampler.sampleOrdering(random, 5000);
+            check(ordering.size() == graph.size(), "an ordering misses nodes");
+            for (int n = 0; n < ordering.size(); n++)
+                for (DependencyNode dependency : ordering.get(n).getDependencies())
+                    check(ordering.indexOf(dependency) < n, ordering + " puts " + dependency + " too late");
+            orderings.add(ordering);
+        }
+        check(orderings.size() > 900, "only " + orderings.size() + " distinct orderings were sampled");
+
+        PlacementSampler.Estimate estimate = sampler.estimate(20_000, TimeUnit.MINUTES.toNanos(1), 0);
+        check(estimate.getSamples() == 20_000, "only " + estimate.getSamples() + " placements were sampled");
+        check(estimate.getObserved() == 45, estimate.getObserved() + " topologies were sampled");
+        check(estimate.getLower() <= 45 && 45 <= estimate.getUpper(),
+                "the interval " + estimate.getLower() + " to " + estimate.getUpper() + " misses 45");
+
+        System.out.printf("%d orderings; %.1f topologies estimated (%.1f to %.1f)%n", orderings.size(),
+                estimate.getEstimate(), estimate.getLower(), estimate.getUpper());
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
@@ -0,0 +1,110 @@
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that {@link ResultCache} gives back what it stored, misses on results it does not hold or cannot read, keys
+ * on the contents and the settings, and evicts the least recently used results beyond its limit.
+ */
+public class ResultCacheTest
+{
+    public static void main(String[] args) throws IOException
+    {
+        Path directory = Files.createTempDirectory("results");
+        try
+        {
+            run(directory);
+        } finally
+        {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+            {
+                for (Path file : files)
+                    Files.delete(file);
+            }
+            Files.delete(directory);
+        }
+    }
+
+    private static void run(Path directory) throws IOException
+    {
+        String first = key("a : x y\nb a : y z\n", true);
+        check(!first.equals(key("a : x y\nb a : y z\n", false)), "the settings do not change the key");
+        check(!first.equals(key("a : x y\nb a : y w\n", true)), "the dataset does not change the key");
+        check(first.equals(key("a : x y\nb a : y z\n", true)), "the same dataset and settings change the key");
+
+        ResultCache cache = new ResultCache(directory, Long.MAX_VALUE);
+        check(cache.get(first) == null, "an empty cache hit");
+
+        ResultCache.Results results = results(3);
+        cache.put(first, results);
+        ResultCache.Results read = cache.get(first);
+        check(read != null, "a stored result missed");
+        check(read.getPlacements() == results.getPlacements() && read.getTopologies().equals(results.getTopologies()),
+                "the result read back differs");
+        check(new ResultCache(directory, Long.MAX_VALUE).get(first) != null, "a new cache missed a stored result");
+
+        Path file = directory.resolve(first + ".result");
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length / 2));
+        check(cache.get(first) == null, "a truncated result hit");
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        check(cache.get(first) == null, "a foreign file hit");
+
+        // Three results fit, not four; the first, read last, outlives the second.
+        cache.put(first, results);
+        long size = Files.size(file);
+        ResultCache bounded = new ResultCache(directory, 3 * size + size / 2);
+        String second = key("second", true);
+        String third = key("third", true);
+        String fourth = key("fourth", true);
+        bounded.put(second, results);
+        bounded.put(third, results);
+        age(directory, first, 3);
+        age(directory, second, 2);
+        age(directory, third, 1);
+        check(bounded.get(first) != null, "the first result was evicted too soon");
+
+        bounded.put(fourth, results);
+        check(bounded.get(second) == null, "the least recently used result was kept");
+        check(bounded.get(first) != null && bounded.get(third) != null && bounded.get(fourth) != null,
+                "a recently used result was evicted");
+        System.out.println("4 results of " + size + " bytes within a limit of " + (3 * size + size / 2) +
+                ": the least recently used was evicted");
+    }
+
+    private static String key(String dataset, boolean simple)
+    {
+        return ResultCache.key(dataset.getBytes(StandardCharsets.UTF_8), "simpleNetwork=" + simple);
+    }
+
+    private static ResultCache.Results results(int topologies)
+    {
+        Map<String, List<String>> placements = new LinkedHashMap<>();
+        for (int t = 0; t < topologies; t++)
+            placements.put("{x=[y" + t + "]}", Arrays.asList("a > r > b > c" + t, "b > a > r > c" + t, "r > a"));
+
+        return new ResultCache.Results(7 * topologies, placements);
+    }
+
+    /**
+     * Makes the result of {@code key} look last used {@code minutes} minutes ago.
+     */
+    private static void age(Path directory, String key, int minutes) throws IOException
+    {
+        Files.setLastModifiedTime(directory.resolve(key + ".result"),
+                FileTime.fromMillis(System.currentTimeMillis() - minutes * 60_000L));
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}
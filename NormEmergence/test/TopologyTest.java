@@ -0,0 +1,77 @@
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Pins the numbers of placements and of unique topologies of the bundled datasets, and checks that {@link Topology}
+ * tells networks apart by their connections alone. Run from the root of the repository.
+ * <p>
+ * Comparing the connection maps of {@link TopologyBuilder#getTopology()}, which keep whichever direction of an
+ * undirected connection they meet first, found 11 topologies for basicpunishment and 96 for metapunishment, where
+ * there are 9 and 45.
+ */
+public class TopologyTest
+{
+    private static final String[] DATASETS = {"nopunishment", "basicpunishment", "metapunishment"};
+    private static final long[] PLACEMENTS = {6, 13, 156};
+    private static final int[] TOPOLOGIES = {5, 9, 45};
+
+    public static void main(String[] args)
+    {
+        for (int d = 0; d < DATASETS.length; d++)
+        {
+            OrderingsGenerator generator = new OrderingsGenerator();
+            HashMap<String, TopologyBuilder> all = generator.getAllConfigurations(generator.initializeGraph(
+                    "NormEmergence/datasets/" + DATASETS[d] + ".dat"));
+            HashMap<TopologyBuilder, HashSet<String>> uniques = OrderingsGenerator.seizeUniqueResults(all);
+
+            Set<Set<String>> connections = new HashSet<>();
+            for (TopologyBuilder topology : all.values())
+                connections.add(undirected(topology.getTopology()));
+
+            check(all.size() == PLACEMENTS[d], DATASETS[d] + ": " + all.size() + " placements");
+            check(uniques.size() == TOPOLOGIES[d], DATASETS[d] + ": " + uniques.size() + " topologies");
+            check(connections.size() == TOPOLOGIES[d], DATASETS[d] + ": " + connections.size() + " connection sets");
+            System.out.println(DATASETS[d] + ": " + all.size() + " placements, " + uniques.size() + " topologies");
+        }
+
+        HashMap<Character, HashSet<Character>> forward = new HashMap<>();
+        forward.put('a', new HashSet<>(Arrays.asList('b', 'c')));
+        forward.put('d', new HashSet<>());
+        HashMap<Character, HashSet<Character>> backward = new HashMap<>();
+        backward.put('b', new HashSet<>(Collections.singletonList('a')));
+        backward.put('c', new HashSet<>(Collections.singletonList('a')));
+
+        Topology simple = new Topology(Collections.singletonList(forward), true);
+        check(simple.equals(new Topology(Collections.singletonList(backward), true)) &&
+                simple.hashCode() == new Topology(Collections.singletonList(backward), true).hashCode(),
+                "the same undirected connections compare unequal");
+        check(!new Topology(Collections.singletonList(forward), false).equals(
+                new Topology(Collections.singletonList(backward), false)),
+                "reversed directed connections compare equal");
+        check(!simple.equals(new Topology(Collections.singletonList(forward), false)),
+                "a simple and a directed network compare equal");
+    }
+
+    /**
+     * @return The connections of {@code topology}, each as its two vertices in order.
+     */
+    private static Set<String> undirected(Map<Character, HashSet<Character>> topology)
+    {
+        Set<String> connections = new TreeSet<>();
+        topology.forEach((start, ends) -> ends.forEach(end ->
+                connections.add(start < end ? start + "-" + end : end + "-" + start)));
+
+        return connections;
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+            throw new AssertionError(message);
+    }
+}